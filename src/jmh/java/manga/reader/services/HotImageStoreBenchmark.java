@@ -0,0 +1,91 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.HotImageProperties;
+import manga.reader.services.HotImageStore.HotImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serving a hot page image through the heap, as {@code downloadImage} did before the off-heap store
+ * (a fresh array per image, copied out through a stream), against serving it from
+ * {@link HotImageStore} (direct buffers handed to the transport). Both write to a sink that discards
+ * the bytes. Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm}, {@code gc.count} and
+ * {@code gc.time}:
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="HotImageStoreBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx512m", "-XX:MaxDirectMemorySize=512m"})
+public class HotImageStoreBenchmark {
+
+    @Param({"200000", "2000000"})
+    public int imageSize;
+
+    // Distinct pages per chapter-sized working set
+    @Param({"60"})
+    public int images;
+
+    private byte[][] upstream;
+    private HotImageStore store;
+
+    @Setup
+    public void setUp() {
+        upstream = new byte[images][];
+        store = new HotImageStore(new HotImageProperties(true, DataSize.ofMegabytes(256), DataSize.ofMegabytes(4),
+                DataSize.ofKilobytes(64), DataSize.ofMegabytes(8)), new SimpleMeterRegistry());
+        for (int i = 0; i < images; i++) {
+            upstream[i] = new byte[imageSize];
+            ThreadLocalRandom.current().nextBytes(upstream[i]);
+            store.put(key(i), upstream[i], "image/jpeg").close();
+        }
+    }
+
+    @Benchmark
+    public long byteArrayResource() throws IOException {
+        int page = ThreadLocalRandom.current().nextInt(images);
+        Resource resource = new ByteArrayResource(upstream[page].clone());
+        try (InputStream in = resource.getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long hotImageStore() {
+        int page = ThreadLocalRandom.current().nextInt(images);
+        long written = 0;
+        try (HotImage image = store.get(key(page))) {
+            for (ByteBuffer buffer : image.buffers()) {
+                written += buffer.remaining();
+                buffer.position(buffer.limit());
+            }
+        }
+        return written;
+    }
+
+    private static String key(int page) {
+        return "https://img.example/chapter-1/" + page + ".jpg";
+    }
+}
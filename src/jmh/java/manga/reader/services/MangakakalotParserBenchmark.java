@@ -0,0 +1,126 @@
+package manga.reader.services;
+
+import manga.reader.upstream.PartialDocumentParser;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Evaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning upstream pages into results, without the network.
+ * {@code extract*} benchmarks start from an already parsed {@link Document} and measure only the
+ * selector work of {@link MangakakalotParser}; {@code parse*} benchmarks include Jsoup's HTML parse, and
+ * {@code partialParse*} parse only up to the page's required sections as scrapes do by default.
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}; {@code -prof gc} is on by default and reports
+ * allocation per operation as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MangakakalotParserBenchmark {
+
+    /** Chapter rows on the manga info page and options in the chapter selector. */
+    @Param({"1500"})
+    public int chapters;
+
+    private final MangakakalotParser parser = new MangakakalotParser(ParserFixtures.BASE_URL);
+
+    private String latestHtml;
+    private String searchHtml;
+    private String mangaInfoHtml;
+    private String chapterHtml;
+
+    private Document latestDocument;
+    private Document searchDocument;
+    private Document mangaInfoDocument;
+    private Document chapterDocument;
+
+    @Setup
+    public void setUp() {
+        latestHtml = ParserFixtures.latestManga(24);
+        searchHtml = ParserFixtures.search(20);
+        mangaInfoHtml = ParserFixtures.mangaInfo(chapters);
+        chapterHtml = ParserFixtures.chapter(60, chapters);
+
+        latestDocument = parse(latestHtml);
+        searchDocument = parse(searchHtml);
+        mangaInfoDocument = parse(mangaInfoHtml);
+        chapterDocument = parse(chapterHtml);
+    }
+
+    @Benchmark
+    public Object extractLatestManga() {
+        return parser.parseLatestManga(latestDocument);
+    }
+
+    @Benchmark
+    public Object extractSearch() {
+        return parser.parseSearch(searchDocument, "one piece");
+    }
+
+    @Benchmark
+    public Object extractMangaInfo() {
+        return parser.parseMangaInfo(mangaInfoDocument);
+    }
+
+    @Benchmark
+    public Object extractChapter() {
+        return parser.parseChapter(chapterDocument, "one-piece", "1100");
+    }
+
+    @Benchmark
+    public Object parseLatestManga() {
+        return parser.parseLatestManga(parse(latestHtml));
+    }
+
+    @Benchmark
+    public Object parseSearch() {
+        return parser.parseSearch(parse(searchHtml), "one piece");
+    }
+
+    @Benchmark
+    public Object parseMangaInfo() {
+        return parser.parseMangaInfo(parse(mangaInfoHtml));
+    }
+
+    @Benchmark
+    public Object parseChapter() {
+        return parser.parseChapter(parse(chapterHtml), "one-piece", "1100");
+    }
+
+    @Benchmark
+    public Object partialParseMangaInfo() throws IOException {
+        return parser.parseMangaInfo(partialParse(mangaInfoHtml, MangakakalotParser.MANGA_INFO_SECTIONS));
+    }
+
+    @Benchmark
+    public Object partialParseChapter() throws IOException {
+        return parser.parseChapter(partialParse(chapterHtml, MangakakalotParser.CHAPTER_SECTIONS), "one-piece", "1100");
+    }
+
+    private static Document partialParse(String html, List<Evaluator> sections) throws IOException {
+        return PartialDocumentParser.parse(new StringReader(html), ParserFixtures.BASE_URL + "/", sections);
+    }
+
+    private static Document parse(String html) {
+        return Jsoup.parse(html, ParserFixtures.BASE_URL + "/");
+    }
+}
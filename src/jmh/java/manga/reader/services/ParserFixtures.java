@@ -0,0 +1,115 @@
+package manga.reader.services;
+
+import java.util.Random;
+
+/**
+ * Synthetic upstream pages with the markup the parsers select on, at realistic sizes.
+ * Each page also carries the navigation, footer and repeated chapter selectors of the real site
+ * so that selector evaluation walks a document of comparable shape.
+ */
+final class ParserFixtures {
+
+    static final String BASE_URL = "https://www.mangakakalot.gg";
+
+    private ParserFixtures() {
+    }
+
+    static String latestManga(int items) {
+        Random random = new Random(7);
+        StringBuilder body = new StringBuilder("<div class='truyen-list'>");
+        for (int i = 0; i < items; i++) {
+            String mangaId = "manga-" + i + "-title";
+            body.append("<div class='list-truyen-item-wrap'>")
+                    .append("<a class='list-story-item' href='").append(BASE_URL).append("/manga/").append(mangaId)
+                    .append("' title='Title ").append(i).append("'><img data-src='https://img.example/thumb/").append(mangaId)
+                    .append(".jpg' src='/lazy.gif' alt='thumbnail'></a>")
+                    .append("<h3><a href='").append(BASE_URL).append("/manga/").append(mangaId).append("' title='Title ")
+                    .append(i).append("'>Title ").append(i).append("</a></h3>")
+                    .append("<a class='list-story-item-wrap-chapter' href='/chapter/").append(mangaId).append("/chapter-")
+                    .append(100 + i).append("' title='Chapter ").append(100 + i).append("'>Chapter ").append(100 + i).append("</a>")
+                    .append("<div><span class='aye_icon'>").append(random.nextInt(10_000_000)).append("</span></div>")
+                    .append("<p>").append("A long description of the story. ".repeat(12)).append("</p></div>");
+        }
+        body.append("</div>").append(pagination(1, 1750));
+        return page(body);
+    }
+
+    static String search(int items) {
+        Random random = new Random(11);
+        StringBuilder body = new StringBuilder("<div class='daily-update'><div class='panel_story_list'>");
+        for (int i = 0; i < items; i++) {
+            String mangaId = "manga-" + i + "-one-piece";
+            body.append("<div class='story_item'><a href='").append(BASE_URL).append("/manga/").append(mangaId)
+                    .append("'><img src='https://img.example/thumb/").append(mangaId).append(".jpg' alt='thumbnail'></a>")
+                    .append("<div class='story_item_right'><h3 class='story_name'><a href='").append(BASE_URL)
+                    .append("/manga/").append(mangaId).append("'>One Piece variant ").append(i).append("</a></h3>")
+                    .append("<em class='story_chapter'><a href='#'>Chapter ").append(i).append("</a></em>")
+                    .append("<span>Author(s) : Oda Eiichiro</span>")
+                    .append("<span>Updated : Jun-0").append(i % 9 + 1).append("-2025 12:00</span>")
+                    .append("<span>View : ").append(random.nextInt(100_000_000)).append("</span></div></div>");
+        }
+        body.append("</div></div>").append(pagination(1, 6));
+        return page(body);
+    }
+
+    static String mangaInfo(int chapters) {
+        Random random = new Random(13);
+        StringBuilder body = new StringBuilder()
+                .append("<div class='manga-info-top'><div class='manga-info-pic'><img src='https://img.example/thumb/one-piece.jpg' alt='One Piece'></div>")
+                .append("<ul class='manga-info-text'><li><h1>One Piece</h1><h2 class='story-alternative'>Alternative names</h2></li>")
+                .append("<li>Status : Ongoing</li><li>Last updated : Jun-01-2025 12:00:00 PM</li>")
+                .append("<li>Author(s) : <a href='").append(BASE_URL).append("/author/oda'>Oda Eiichiro</a></li>")
+                .append("<li>View : 123,456,789</li><li class='genres'>Genres : ");
+        for (String genre : new String[]{"Action", "Adventure", "Comedy", "Drama", "Fantasy", "Shounen"}) {
+            body.append("<a href='").append(BASE_URL).append("/genre/").append(genre).append("'>").append(genre).append("</a>, ");
+        }
+        body.append("</li></ul></div>")
+                .append("<script type='application/ld+json'>{\"@type\":\"Book\",\"name\":\"One Piece\",\"ratingValue\":4.7,\"ratingCount\":51234}</script>")
+                .append("<div id='contentBox'>").append("Gol D. Roger was known as the Pirate King. ".repeat(30)).append("</div>")
+                .append("<div class='chapter'><div class='manga-info-chapter'><div class='chapter-list'>");
+        for (int chapter = chapters; chapter > 0; chapter--) {
+            body.append("<div class='row'><span><a href='").append(BASE_URL).append("/manga/one-piece/chapter-").append(chapter)
+                    .append("' title='One Piece chapter ").append(chapter).append("'>Chapter ").append(chapter)
+                    .append(": The title of chapter ").append(chapter).append("</a></span>")
+                    .append("<span>").append(random.nextInt(1_000_000)).append("</span>")
+                    .append("<span title='Jun-01-2025 12:00'>Jun-01-2025</span></div>");
+        }
+        body.append("</div></div></div>");
+        return page(body);
+    }
+
+    static String chapter(int images, int chapters) {
+        StringBuilder options = new StringBuilder("<div class='chapter-selection'><select>");
+        for (int chapter = chapters; chapter > 0; chapter--) {
+            options.append("<option value='").append(BASE_URL).append("/manga/one-piece/chapter-").append(chapter)
+                    .append("'>Chapter ").append(chapter).append("</option>");
+        }
+        options.append("</select></div>");
+
+        StringBuilder body = new StringBuilder("<h1>one-piece chapter 1100</h1><h2>Read one-piece Chapter 1100 online</h2>")
+                .append(options)
+                .append("<div class='container-chapter-reader'>");
+        for (int image = 1; image <= images; image++) {
+            body.append("<img src='https://img-r1.example/one-piece/1100/").append(image).append(".jpg' ")
+                    .append("onerror=\"this.onerror=null;this.src='https://img-r2.example/one-piece/1100/").append(image)
+                    .append(".jpg';\" alt='page ").append(image).append("'>");
+        }
+        body.append("</div>").append(options);
+        return page(body);
+    }
+
+    private static String pagination(int current, int last) {
+        return "<div class='panel_page_number'><div class='group_page'><a class='page_blue' href='?page=1'>First</a>"
+                + "<a class='page_select'>" + current + "</a><a href='?page=" + (current + 1) + "'>" + (current + 1) + "</a>"
+                + "<a class='page_blue page_last' href='" + BASE_URL + "/manga-list/latest-manga?page=" + last + "'>Last(" + last + ")</a></div></div>";
+    }
+
+    private static String page(CharSequence body) {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><meta charset='utf-8'><title>MangaKakalot</title></head><body><div class='header'><nav>");
+        for (int i = 0; i < 40; i++) {
+            html.append("<a href='").append(BASE_URL).append("/genre/").append(i).append("'>Genre ").append(i).append("</a>");
+        }
+        html.append("</nav></div>").append(body).append("<div class='footer'>").append("<p>Footer text</p>".repeat(20)).append("</div></body></html>");
+        return html.toString();
+    }
+}
@@ -2,8 +2,10 @@ package manga.reader;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class ReaderApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(ReaderApplication.class, args);
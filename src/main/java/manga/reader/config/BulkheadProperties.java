@@ -0,0 +1,45 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Adaptive concurrency limits for upstream requests, with page scrapes and image fetches in
+ * separate bulkheads so that one kind of traffic cannot starve the other.
+ * Each limit grows by about one per round of quick, successful requests and shrinks by {@code backoffRatio}
+ * when one fails, is throttled (429, 5xx) or takes longer than {@code slowCallThreshold}, at most once
+ * per round.
+ *
+ * @param scrape limits of HTML page scrapes
+ * @param image limits of image downloads
+ * @param backoffRatio factor applied to a limit when upstream shows signs of overload
+ * @param slowCallThreshold time to response headers above which a request counts as a sign of overload
+ * @param retryAfter Retry-After sent with a 503 when a bulkhead is full
+ */
+@ConfigurationProperties(prefix = "reader.bulkhead")
+public record BulkheadProperties(
+        @DefaultValue Bulkhead scrape,
+        @DefaultValue Bulkhead image,
+        @DefaultValue("0.9") double backoffRatio,
+        @DefaultValue("5s") Duration slowCallThreshold,
+        @DefaultValue("5s") Duration retryAfter
+) {
+
+    /**
+     * @param initialLimit concurrent requests allowed at startup
+     * @param minLimit lowest the limit shrinks to
+     * @param maxLimit highest the limit grows to
+     * @param maxQueue requests waiting for a slot beyond which new ones are rejected at once
+     * @param queueTimeout how long a request waits for a slot before it is rejected
+     */
+    public record Bulkhead(
+            @DefaultValue("16") int initialLimit,
+            @DefaultValue("2") int minLimit,
+            @DefaultValue("64") int maxLimit,
+            @DefaultValue("128") int maxQueue,
+            @DefaultValue("5s") Duration queueTimeout
+    ) {
+    }
+}
@@ -0,0 +1,19 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the chapter bundle (CBZ) endpoint.
+ *
+ * @param window number of pages fetched ahead of the page currently being written
+ * @param pageTimeout how long to wait for a page (including its fallback) before leaving it out
+ */
+@ConfigurationProperties(prefix = "reader.bundle")
+public record BundleProperties(
+        @DefaultValue("8") int window,
+        @DefaultValue("30s") Duration pageTimeout
+) {
+}
@@ -0,0 +1,41 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Per-endpoint settings for the in-process scrape response cache.
+ * An endpoint without configuration is treated as disabled.
+ */
+@ConfigurationProperties(prefix = "reader.cache")
+public record CacheProperties(
+        Endpoint latest,
+        Endpoint search,
+        Endpoint mangaInfo,
+        Endpoint chapter
+) {
+
+    public CacheProperties {
+        latest = latest != null ? latest : Endpoint.DISABLED;
+        search = search != null ? search : Endpoint.DISABLED;
+        mangaInfo = mangaInfo != null ? mangaInfo : Endpoint.DISABLED;
+        chapter = chapter != null ? chapter : Endpoint.DISABLED;
+    }
+
+    /**
+     * @param enabled whether responses of this endpoint are cached at all
+     * @param maximumSize approximate heap budget of the cached responses
+     * @param expireAfterWrite hard TTL after which an entry is dropped
+     * @param refreshAfterWrite age after which an entry is still served but reloaded in the background
+     */
+    public record Endpoint(
+            boolean enabled,
+            DataSize maximumSize,
+            Duration expireAfterWrite,
+            Duration refreshAfterWrite
+    ) {
+        static final Endpoint DISABLED = new Endpoint(false, null, null, null);
+    }
+}
@@ -0,0 +1,25 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the background crawl of the latest manga feed.
+ *
+ * @param enabled whether the feed is crawled and served from the crawl
+ * @param maxPages deepest feed page crawled and materialized
+ * @param pageDelay pause between two page fetches of a crawl
+ * @param reservedConnections upstream connection slots kept free for live requests; the crawl waits otherwise
+ * @param serveFor how long after the last completed crawl its pages are still served
+ */
+@ConfigurationProperties(prefix = "reader.crawler")
+public record CrawlerProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("20") int maxPages,
+        @DefaultValue("1s") Duration pageDelay,
+        @DefaultValue("4") int reservedConnections,
+        @DefaultValue("15m") Duration serveFor
+) {
+}
@@ -0,0 +1,27 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for fetching chapter images from the secondary mirror when the primary one is slow or down.
+ *
+ * @param enabled whether images with a known mirror are fetched hedged
+ * @param percentile latency percentile of image fetches after which the mirror is asked as well
+ * @param minDelay lower bound of the hedge delay
+ * @param initialDelay hedge delay used until enough fetches have been timed
+ * @param failureThreshold consecutive failures after which a host is skipped
+ * @param openDuration how long a failing host is skipped before it is tried again
+ */
+@ConfigurationProperties(prefix = "reader.hedging")
+public record HedgingProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("0.9") double percentile,
+        @DefaultValue("50ms") Duration minDelay,
+        @DefaultValue("1s") Duration initialDelay,
+        @DefaultValue("5") int failureThreshold,
+        @DefaultValue("30s") Duration openDuration
+) {
+}
@@ -0,0 +1,25 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for the off-heap store of recently downloaded images, which keeps the bytes of images
+ * proxied without the disk cache out of the Java heap.
+ *
+ * @param enabled whether downloaded images are kept off-heap and served from there
+ * @param capacity direct memory the store may use; counts against {@code -XX:MaxDirectMemorySize}
+ * @param slabSize size of each direct buffer allocated from the JVM, rounded down to whole chunks
+ * @param chunkSize unit images are stored in; an image occupies its size rounded up to whole chunks
+ * @param maxImageSize larger images are not stored and stay on the heap while they are served
+ */
+@ConfigurationProperties(prefix = "reader.hot-images")
+public record HotImageProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("256MB") DataSize capacity,
+        @DefaultValue("4MB") DataSize slabSize,
+        @DefaultValue("64KB") DataSize chunkSize,
+        @DefaultValue("8MB") DataSize maxImageSize
+) {
+}
@@ -0,0 +1,28 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Cache-Control sent to clients with the manga API responses.
+ *
+ * @param latest max-age of latest manga pages
+ * @param search max-age of search results
+ * @param mangaInfo max-age of manga details and chapter lists
+ * @param chapter max-age of chapter image lists
+ * @param staleWhileRevalidate how long past max-age a client may use a response while revalidating it
+ * @param shared whether shared caches (proxies, CDNs) may store the responses; they require authentication,
+ *               so by default only the client's own cache may
+ */
+@ConfigurationProperties(prefix = "reader.http-cache")
+public record HttpCacheProperties(
+        @DefaultValue("30s") Duration latest,
+        @DefaultValue("5m") Duration search,
+        @DefaultValue("1m") Duration mangaInfo,
+        @DefaultValue("1d") Duration chapter,
+        @DefaultValue("1m") Duration staleWhileRevalidate,
+        @DefaultValue("false") boolean shared
+) {
+}
@@ -0,0 +1,27 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for the persistent on-disk image cache.
+ *
+ * @param enabled whether {@code /api/images/download} goes through the disk cache
+ * @param directory root directory holding the blobs and the index
+ * @param maximumSize total size of the cached blobs before least recently used ones are evicted
+ * @param freshFor how long a cached image is served without revalidating it upstream
+ * @param clientMaxAge max-age sent to clients for images served from the cache
+ */
+@ConfigurationProperties(prefix = "reader.image-cache")
+public record ImageCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("data/image-cache") Path directory,
+        @DefaultValue("2GB") DataSize maximumSize,
+        @DefaultValue("1d") Duration freshFor,
+        @DefaultValue("7d") Duration clientMaxAge
+) {
+}
@@ -0,0 +1,18 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for how {@code /api/images/download} proxies images that are not served from the disk cache.
+ *
+ * @param streaming pipe upstream bytes straight to the client instead of buffering the whole image
+ * @param streamBufferSize size of the copy buffer used while streaming
+ */
+@ConfigurationProperties(prefix = "reader.images")
+public record ImageProxyProperties(
+        @DefaultValue("true") boolean streaming,
+        @DefaultValue("8KB") DataSize streamBufferSize
+) {
+}
@@ -0,0 +1,14 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for how scrape results are rendered as JSON.
+ *
+ * @param legacyShape keep the original response layout (pagination folded into {@code results}
+ *                    or a {@code pages} array) instead of the typed {@code pageInfo} object
+ */
+@ConfigurationProperties(prefix = "reader.json")
+public record JsonProperties(@DefaultValue("true") boolean legacyShape) {
+}
@@ -0,0 +1,16 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for verifying bearer tokens.
+ *
+ * @param tokenCacheSize verified tokens remembered until they expire, so repeated requests skip the
+ *                       signature check; 0 verifies every request
+ */
+@ConfigurationProperties(prefix = "reader.jwt")
+public record JwtProperties(
+        @DefaultValue("10000") int tokenCacheSize
+) {
+}
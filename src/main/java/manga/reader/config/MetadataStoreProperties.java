@@ -0,0 +1,24 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for the persistent store of scraped manga pages.
+ *
+ * @param enabled whether manga pages are stored and served from the store
+ * @param file store file, created on first use
+ * @param freshFor how long a stored manga page is served without scraping it again
+ * @param maxStale how long a stored manga page may still be served while it is scraped again in the background
+ */
+@ConfigurationProperties(prefix = "reader.metadata-store")
+public record MetadataStoreProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("data/metadata.mv.db") Path file,
+        @DefaultValue("10m") Duration freshFor,
+        @DefaultValue("30d") Duration maxStale
+) {
+}
@@ -0,0 +1,19 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the multi-page latest and search endpoints.
+ *
+ * @param maxPages most pages one request may ask for
+ * @param deadline how long a request waits for its pages; pages still loading are reported as timed out
+ */
+@ConfigurationProperties(prefix = "reader.page-range")
+public record PageRangeProperties(
+        @DefaultValue("10") int maxPages,
+        @DefaultValue("10s") Duration deadline
+) {
+}
@@ -0,0 +1,14 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for parsing scraped pages.
+ *
+ * @param earlyTermination stop reading manga and chapter pages once the sections the parser needs
+ *                         have been received, instead of downloading and parsing the whole page
+ */
+@ConfigurationProperties(prefix = "reader.parser")
+public record ParserProperties(@DefaultValue("true") boolean earlyTermination) {
+}
@@ -0,0 +1,25 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for warming the caches after a chapter has been opened.
+ *
+ * @param enabled whether opening a chapter schedules any read-ahead work
+ * @param images number of leading page images of the chapter to warm into the image cache
+ * @param nextChapter whether to warm the scrape of the following chapter
+ * @param threads worker threads running prefetch tasks
+ * @param queueCapacity pending prefetch tasks; when full the oldest pending task is dropped
+ * @param reservedConnections upstream connection slots kept free for live requests
+ */
+@ConfigurationProperties(prefix = "reader.prefetch")
+public record PrefetchProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("5") int images,
+        @DefaultValue("true") boolean nextChapter,
+        @DefaultValue("2") int threads,
+        @DefaultValue("64") int queueCapacity,
+        @DefaultValue("4") int reservedConnections
+) {
+}
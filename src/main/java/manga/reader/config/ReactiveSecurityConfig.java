@@ -0,0 +1,46 @@
+package manga.reader.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import manga.reader.jwt.JwtUtil;
+import manga.reader.jwt.ReactiveJwtAuthenticationFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+/**
+ * Reactive counterpart of {@link SecurityConfig}, with the same rules: stateless bearer token
+ * authentication and 403 for requests without valid credentials.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http, JwtUtil jwtUtil,
+                                                            MeterRegistry meterRegistry) {
+        return http.csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers("/api/auth/login").permitAll()
+                        .pathMatchers("/api/images/**").permitAll()
+                        .pathMatchers("/api/mangas/**").hasAuthority("READER")
+                        .anyExchange().authenticated()
+                )
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN)))
+                .addFilterAt(new ReactiveJwtAuthenticationFilter(jwtUtil, meterRegistry), SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+}
@@ -0,0 +1,47 @@
+package manga.reader.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * WebFlux setup used when the application runs with {@code spring.main.web-application-type=reactive}.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig {
+
+    /**
+     * Tomcat is on the classpath for the servlet stack and would otherwise host the reactive one
+     * too, through its blocking servlet adapter.
+     */
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Puts {@link ScrapeResultEncoder} ahead of the default Jackson encoder.
+     */
+    @Bean
+    CodecCustomizer scrapeResultCodecCustomizer(SerializedScrapeResults serializedResults) {
+        ScrapeResultEncoder encoder = new ScrapeResultEncoder(serializedResults);
+        return configurer -> configurer.customCodecs().register(encoder);
+    }
+
+    /**
+     * Runs the blocking parts of a request (image downloads, disk cache reads, resizing, bundles)
+     * on virtual threads, off the event loop.
+     */
+    @Bean(destroyMethod = "dispose")
+    Scheduler blockingScheduler() {
+        return Schedulers.fromExecutorService(Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("reactive-blocking-", 0).factory()), "reactive-blocking");
+    }
+}
@@ -0,0 +1,32 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings for resized and transcoded image renditions ({@code width}, {@code format} and
+ * {@code quality} on {@code /api/images/download}).
+ *
+ * @param enabled whether rendition parameters are honoured; when off the original image is always served
+ * @param widths widths a requested width is rounded up to, so that few renditions exist per image
+ * @param workers threads resizing images; 0 uses one per available processor
+ * @param maxQueue images waiting for a worker; beyond it the original image is served
+ * @param cacheSize heap budget of the cached renditions
+ * @param expireAfterWrite how long a rendition is kept
+ * @param maxPixels larger images are not decoded and served as they are
+ */
+@ConfigurationProperties(prefix = "reader.renditions")
+public record RenditionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue({"150", "300", "480", "720", "1080", "1440"}) List<Integer> widths,
+        @DefaultValue("0") int workers,
+        @DefaultValue("32") int maxQueue,
+        @DefaultValue("64MB") DataSize cacheSize,
+        @DefaultValue("1d") Duration expireAfterWrite,
+        @DefaultValue("50000000") long maxPixels
+) {
+}
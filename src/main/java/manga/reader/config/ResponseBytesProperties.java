@@ -0,0 +1,20 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for the serialized and compressed bytes kept for each cached scrape result.
+ *
+ * @param compressAbove smaller responses are only kept and sent uncompressed
+ * @param brotli whether a brotli encoding is kept next to gzip, for clients accepting {@code br}
+ * @param brotliQuality brotli quality from 0 to 11; each kept result is compressed once, so a high one pays off
+ */
+@ConfigurationProperties(prefix = "reader.response-bytes")
+public record ResponseBytesProperties(
+        @DefaultValue("1KB") DataSize compressAbove,
+        @DefaultValue("true") boolean brotli,
+        @DefaultValue("9") int brotliQuality
+) {
+}
@@ -0,0 +1,37 @@
+package manga.reader.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.ScrapeResult;
+import manga.reader.dto.SearchResult;
+import manga.reader.upstream.ScrapeTimers;
+
+/**
+ * The timers of one response phase ({@code serialize}, {@code compress}) for each kind of scrape result.
+ */
+final class ResultPhaseTimers {
+
+    private final Timer latest;
+    private final Timer search;
+    private final Timer mangaInfo;
+    private final Timer chapter;
+
+    ResultPhaseTimers(MeterRegistry meterRegistry, String phase) {
+        this.latest = ScrapeTimers.phase(meterRegistry, "latest", phase);
+        this.search = ScrapeTimers.phase(meterRegistry, "search", phase);
+        this.mangaInfo = ScrapeTimers.phase(meterRegistry, "manga", phase);
+        this.chapter = ScrapeTimers.phase(meterRegistry, "chapter", phase);
+    }
+
+    Timer of(ScrapeResult result) {
+        return switch (result) {
+            case LatestMangaResult latestResult -> latest;
+            case SearchResult searchResult -> search;
+            case MangaInfoResult mangaInfoResult -> mangaInfo;
+            case ChapterResult chapterResult -> chapter;
+        };
+    }
+}
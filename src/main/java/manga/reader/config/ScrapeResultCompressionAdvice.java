@@ -0,0 +1,43 @@
+package manga.reader.config;
+
+import manga.reader.dto.ScrapeResult;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Picks the content coding of a {@link ScrapeResult} response from the request's {@code Accept-Encoding},
+ * for {@link ScrapeResultHttpMessageConverter} to write the matching precompressed bytes.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ScrapeResultCompressionAdvice implements ResponseBodyAdvice<Object> {
+
+    private final SerializedScrapeResults serializedResults;
+
+    public ScrapeResultCompressionAdvice(SerializedScrapeResults serializedResults) {
+        this.serializedResults = serializedResults;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return ScrapeResultHttpMessageConverter.class.isAssignableFrom(converterType);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof ScrapeResult result) {
+            serializedResults.of(result).negotiate(String.join(",", request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING)),
+                    response.getHeaders());
+        }
+        return body;
+    }
+}
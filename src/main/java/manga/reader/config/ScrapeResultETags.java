@@ -0,0 +1,37 @@
+package manga.reader.config;
+
+import manga.reader.dto.ScrapeResult;
+import org.springframework.stereotype.Component;
+
+/**
+ * Strong ETags for {@link ScrapeResult} responses: a SHA-256 of the JSON exactly as
+ * {@link ScrapeResultHttpMessageConverter} writes it, computed together with the response bytes by
+ * {@link SerializedScrapeResults}, so once per cached result rather than once per request. The tag
+ * depends on the content coding the request will get, so that {@code If-None-Match} is compared
+ * against the representation actually sent.
+ */
+@Component
+public class ScrapeResultETags {
+
+    private final SerializedScrapeResults serializedResults;
+
+    public ScrapeResultETags(SerializedScrapeResults serializedResults) {
+        this.serializedResults = serializedResults;
+    }
+
+    /**
+     * @param acceptEncoding the request's {@code Accept-Encoding}, null when it has none
+     * @return the quoted strong ETag of the result in the content coding sent for that request
+     */
+    public String of(ScrapeResult result, String acceptEncoding) {
+        SerializedScrapeResults.Serialized serialized = serializedResults.of(result);
+        return serialized.eTag(serialized.encoding(acceptEncoding));
+    }
+
+    /**
+     * @return whether responses with the result need {@code Vary: Accept-Encoding}
+     */
+    public boolean variesByEncoding(ScrapeResult result) {
+        return serializedResults.of(result).variesByEncoding();
+    }
+}
@@ -0,0 +1,72 @@
+package manga.reader.config;
+
+import manga.reader.dto.ScrapeResult;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reactive counterpart of {@link ScrapeResultHttpMessageConverter}: writes each {@link ScrapeResult}
+ * from the bytes kept by {@link SerializedScrapeResults}, so both stacks send identical bytes (and so
+ * the same ETags). The content coding is picked from {@code Accept-Encoding} when the response
+ * headers are prepared, and the kept bytes are wrapped rather than copied.
+ */
+public class ScrapeResultEncoder extends AbstractEncoder<ScrapeResult> implements HttpMessageEncoder<ScrapeResult> {
+
+    private static final String ACCEPT_ENCODING_HINT = ScrapeResultEncoder.class.getName() + ".acceptEncoding";
+    private static final String RESPONSE_HINT = ScrapeResultEncoder.class.getName() + ".response";
+
+    private final SerializedScrapeResults serializedResults;
+
+    public ScrapeResultEncoder(SerializedScrapeResults serializedResults) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.serializedResults = serializedResults;
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return ScrapeResult.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        return List.of();
+    }
+
+    @Override
+    public Map<String, Object> getEncodeHints(ResolvableType actualType, ResolvableType elementType, MediaType mediaType,
+                                              ServerHttpRequest request, ServerHttpResponse response) {
+        String acceptEncoding = String.join(",", request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING));
+        return Map.of(ACCEPT_ENCODING_HINT, acceptEncoding, RESPONSE_HINT, response);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends ScrapeResult> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(result -> encodeValue(result, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(ScrapeResult result, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                 MimeType mimeType, Map<String, Object> hints) {
+        SerializedScrapeResults.Serialized serialized = serializedResults.of(result);
+        byte[] body = serialized.json();
+        if (hints != null && hints.get(RESPONSE_HINT) instanceof ServerHttpResponse response) {
+            // Headers are still writable here: the body is encoded before the response is committed
+            body = serialized.negotiate((String) hints.get(ACCEPT_ENCODING_HINT), response.getHeaders());
+        }
+        return bufferFactory.wrap(body);
+    }
+}
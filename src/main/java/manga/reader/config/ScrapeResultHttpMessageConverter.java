@@ -0,0 +1,60 @@
+package manga.reader.config;
+
+import manga.reader.dto.ScrapeResult;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link ScrapeResult} responses from the bytes kept by {@link SerializedScrapeResults}, in the
+ * encoding {@link ScrapeResultCompressionAdvice} picked for the request (plain JSON without it).
+ * Registered ahead of the default Jackson converter by Spring Boot since it is a bean.
+ * The reactive stack uses {@link ScrapeResultEncoder} instead.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ScrapeResultHttpMessageConverter extends AbstractHttpMessageConverter<ScrapeResult> {
+
+    private final SerializedScrapeResults serializedResults;
+
+    public ScrapeResultHttpMessageConverter(SerializedScrapeResults serializedResults) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        this.serializedResults = serializedResults;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ScrapeResult.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ScrapeResult readInternal(Class<? extends ScrapeResult> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Scrape results are response-only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(ScrapeResult result, MediaType contentType) {
+        // Depends on the content coding, set in writeInternal
+        return null;
+    }
+
+    @Override
+    protected void writeInternal(ScrapeResult result, HttpOutputMessage outputMessage) throws IOException {
+        HttpHeaders headers = outputMessage.getHeaders();
+        byte[] body = serializedResults.of(result).body(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        headers.setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+}
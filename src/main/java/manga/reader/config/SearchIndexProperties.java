@@ -0,0 +1,20 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the local search index answering searches ahead of upstream.
+ *
+ * @param enabled whether searches are tried against the local index first
+ * @param minScore score (0 to 1) the best local match needs for the index to answer; 1 means every
+ *                 query word matched a title word exactly
+ * @param pageSize results per page of locally answered searches
+ */
+@ConfigurationProperties(prefix = "reader.search-index")
+public record SearchIndexProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("0.6") double minScore,
+        @DefaultValue("20") int pageSize
+) {
+}
@@ -0,0 +1,274 @@
+package manga.reader.config;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import manga.reader.dto.ScrapeResult;
+import manga.reader.dto.ScrapeResultJson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The response bytes of each {@link ScrapeResult}: its JSON as {@link ScrapeResultJson} writes it,
+ * gzip and brotli encodings of that JSON, and its strong ETag (a SHA-256 of the JSON). Each content
+ * coding is sent with its own ETag ({@code "<hash>-gzip"}, {@code "<hash>-br"}), since a cache must not
+ * answer a conditional request for one coding with a 304 that revalidates a stored body in another.
+ * Brotli uses the native encoder of brotli4j and is left out where it cannot be loaded.
+ * <p>
+ * Results are immutable, so the scrape caches and the latest feed crawler serialize and compress
+ * each result once, when they load it, with {@link #keep}; the bytes are then reused for every
+ * request while the result stays cached and are weighed by the cache holding it. They are looked up
+ * by result instance and held weakly, so they go away with the cached result. Results that are not
+ * kept, such as searches answered from the search index, are built per request and are written as
+ * plain JSON without being stored.
+ */
+@Component
+public class SerializedScrapeResults {
+
+    private static final Logger log = LoggerFactory.getLogger(SerializedScrapeResults.class);
+
+    // Array headers and the entry itself
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final JsonFactory jsonFactory;
+    private final JsonProperties jsonProperties;
+    private final ResponseBytesProperties properties;
+    private final Encoder.Parameters brotliParameters;
+    private final ResultPhaseTimers serializeTimers;
+    private final ResultPhaseTimers compressTimers;
+    private final Cache<ScrapeResult, Serialized> serialized;
+
+    public SerializedScrapeResults(ObjectMapper objectMapper, JsonProperties jsonProperties,
+                                   ResponseBytesProperties properties, MeterRegistry meterRegistry) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.jsonProperties = jsonProperties;
+        this.properties = properties;
+        this.brotliParameters = properties.brotli() && brotliAvailable()
+                ? new Encoder.Parameters().setQuality(properties.brotliQuality())
+                : null;
+        this.serializeTimers = new ResultPhaseTimers(meterRegistry, "serialize");
+        this.compressTimers = new ResultPhaseTimers(meterRegistry, "compress");
+        // Bounded by the caches holding the results, weak keys compare by identity
+        this.serialized = Caffeine.newBuilder()
+                .weakKeys()
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, serialized, "responses.serialized");
+    }
+
+    /**
+     * Serializes and compresses a result about to be cached, unless it already was.
+     *
+     * @return the kept bytes
+     */
+    public Serialized keep(ScrapeResult result) {
+        return serialized.get(result, this::serialize);
+    }
+
+    /**
+     * @return the kept bytes of a result, or its plain JSON, serialized for this request only, when it
+     *         was not kept
+     */
+    public Serialized of(ScrapeResult result) {
+        Serialized kept = serialized.getIfPresent(result);
+        return kept != null ? kept : json(result);
+    }
+
+    /**
+     * @return heap size of the bytes kept for a result, 0 when it was not kept
+     */
+    public int weight(ScrapeResult result) {
+        Serialized kept = serialized.getIfPresent(result);
+        return kept != null ? kept.weight() : 0;
+    }
+
+    /**
+     * @return the q-value an {@code Accept-Encoding} header value gives a content coding, 0 when the
+     *         coding is not acceptable
+     */
+    public static double quality(String acceptEncoding, String contentCoding) {
+        if (acceptEncoding == null) {
+            return 0;
+        }
+        double wildcard = 0;
+        for (String coding : StringUtils.commaDelimitedListToStringArray(acceptEncoding)) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(contentCoding) || (contentCoding.equals("gzip") && name.equalsIgnoreCase("x-gzip"))) {
+                return quality;
+            }
+            if (name.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard;
+    }
+
+    private Serialized json(ScrapeResult result) {
+        long started = System.nanoTime();
+        ByteArrayOutputStream json = new ByteArrayOutputStream(4096);
+        try (JsonGenerator generator = jsonFactory.createGenerator(json, JsonEncoding.UTF8)) {
+            ScrapeResultJson.write(generator, result, jsonProperties.legacyShape());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] body = json.toByteArray();
+        Serialized serialized = new Serialized(body, null, null, eTag(body));
+        serializeTimers.of(result).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return serialized;
+    }
+
+    private Serialized serialize(ScrapeResult result) {
+        Serialized serialized = json(result);
+        byte[] body = serialized.json();
+        if (body.length < properties.compressAbove().toBytes()) {
+            return serialized;
+        }
+        long started = System.nanoTime();
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream(body.length / 4);
+        byte[] brotli = null;
+        try {
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                out.write(body);
+            }
+            if (brotliParameters != null) {
+                brotli = Encoder.compress(body, brotliParameters);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compressTimers.of(result).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        // Incompressible JSON is not worth a Vary header
+        return new Serialized(body, gzip.size() < body.length ? gzip.toByteArray() : null,
+                brotli != null && brotli.length < body.length ? brotli : null, serialized.eTag());
+    }
+
+    private static boolean brotliAvailable() {
+        try {
+            Brotli4jLoader.ensureAvailability();
+            return true;
+        } catch (Throwable e) {
+            log.warn("Brotli encoder not available on this platform, responses are only gzipped: {}", e.toString());
+            return false;
+        }
+    }
+
+    private static String eTag(byte[] json) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        // 128 bits are plenty to tell two versions of a page apart
+        byte[] hash = digest.digest(json);
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)) + '"';
+    }
+
+    /**
+     * @param json the JSON body, never to be modified since it is shared by every response
+     * @param gzip the gzip encoding of {@code json}, null when it is not worth sending
+     * @param brotli the brotli encoding of {@code json}, null when disabled or not worth sending
+     * @param eTag quoted strong ETag of the JSON
+     */
+    public record Serialized(byte[] json, byte[] gzip, byte[] brotli, String eTag) {
+
+        /**
+         * Picks the kept encoding the client ranks highest, brotli on a tie since it is smaller.
+         *
+         * @return the content coding to send for a request's {@code Accept-Encoding}, null for none
+         */
+        public String encoding(String acceptEncoding) {
+            double br = brotli != null ? quality(acceptEncoding, "br") : 0;
+            double gz = gzip != null ? quality(acceptEncoding, "gzip") : 0;
+            if (br > 0 && br >= gz) {
+                return "br";
+            }
+            return gz > 0 ? "gzip" : null;
+        }
+
+        /**
+         * @param encoding a content coding from {@link #encoding(String)}, null for none
+         * @return quoted strong ETag of the body sent in that coding
+         */
+        public String eTag(String encoding) {
+            return encoding == null ? eTag : eTag.substring(0, eTag.length() - 1) + '-' + encoding + '"';
+        }
+
+        /**
+         * @return whether the body depends on {@code Accept-Encoding}, so responses need {@code Vary}
+         */
+        public boolean variesByEncoding() {
+            return gzip != null || brotli != null;
+        }
+
+        /**
+         * Sets {@code Vary} when the result has a compressed encoding, and {@code Content-Encoding}
+         * and the matching ETag when the client accepts it.
+         *
+         * @return the body to send for the request's {@code Accept-Encoding}
+         */
+        public byte[] negotiate(String acceptEncoding, HttpHeaders responseHeaders) {
+            if (!variesByEncoding()) {
+                return json;
+            }
+            if (!responseHeaders.getVary().contains(HttpHeaders.ACCEPT_ENCODING)) {
+                responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            String encoding = encoding(acceptEncoding);
+            if (responseHeaders.getETag() != null) {
+                responseHeaders.setETag(eTag(encoding));
+            }
+            if (encoding == null) {
+                return json;
+            }
+            responseHeaders.set(HttpHeaders.CONTENT_ENCODING, encoding);
+            return body(encoding);
+        }
+
+        /**
+         * @return the body matching the {@code Content-Encoding} already set on a response
+         */
+        public byte[] body(String contentEncoding) {
+            if ("br".equals(contentEncoding) && brotli != null) {
+                return brotli;
+            }
+            return "gzip".equals(contentEncoding) && gzip != null ? gzip : json;
+        }
+
+        int weight() {
+            return ENTRY_OVERHEAD + json.length + (gzip != null ? gzip.length : 0) + (brotli != null ? brotli.length : 0);
+        }
+    }
+}
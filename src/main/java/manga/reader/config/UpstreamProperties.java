@@ -0,0 +1,25 @@
+package manga.reader.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the shared HTTP client used for every upstream request (page scrapes and images).
+ * Concurrency is limited per bulkhead, see {@link BulkheadProperties}. The JDK client's connection
+ * pool is JVM-wide and only configurable with JVM flags ({@code -Djdk.httpclient.connectionPoolSize},
+ * {@code -Djdk.httpclient.keepalive.timeout}), which it reads once.
+ *
+ * @param connectTimeout TCP + TLS connect timeout
+ * @param readTimeout time allowed until the response headers arrive
+ * @param userAgent User-Agent sent upstream
+ */
+@ConfigurationProperties(prefix = "reader.upstream")
+public record UpstreamProperties(
+        @DefaultValue("5s") Duration connectTimeout,
+        @DefaultValue("15s") Duration readTimeout,
+        @DefaultValue("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36")
+        String userAgent
+) {
+}
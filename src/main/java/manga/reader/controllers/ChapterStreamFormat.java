@@ -0,0 +1,70 @@
+package manga.reader.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Framing of a streamed chapter: one JSON object per line, or one server-sent event per entry
+ * with the entry kind as the event name.
+ */
+enum ChapterStreamFormat {
+
+    NDJSON(MediaType.APPLICATION_NDJSON),
+    SSE(MediaType.TEXT_EVENT_STREAM);
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final MediaType mediaType;
+
+    ChapterStreamFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Server-sent events when the client accepts them explicitly, NDJSON otherwise.
+     */
+    static ChapterStreamFormat of(String accept) {
+        if (accept != null) {
+            try {
+                for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                    if (MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(mediaType)) {
+                        return SSE;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // An unparseable Accept header gets the default
+            }
+        }
+        return NDJSON;
+    }
+
+    MediaType mediaType() {
+        return mediaType;
+    }
+
+    byte[] frame(ObjectMapper objectMapper, String event, Object entry) throws JsonProcessingException {
+        byte[] json = objectMapper.writeValueAsBytes(entry);
+        if (this == NDJSON) {
+            return concat(List.of(json, NEWLINE));
+        }
+        return concat(List.of(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8), json, "\n\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] concat(List<byte[]> parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] frame = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, frame, position, part.length);
+            position += part.length;
+        }
+        return frame;
+    }
+}
@@ -1,48 +1,279 @@
 package manga.reader.controllers;
 
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import manga.reader.config.ImageCacheProperties;
+import manga.reader.config.ImageProxyProperties;
 import manga.reader.exception.BadRequestException;
+import manga.reader.services.HotImageStore.HotImage;
+import manga.reader.services.ImageDiskCache.CachedImage;
 import manga.reader.services.ImageDownloadService;
-import org.springframework.core.io.Resource;
+import manga.reader.services.ImageRenditionService;
+import manga.reader.services.ImageRenditionService.Format;
+import manga.reader.services.ImageRenditionService.Quality;
+import manga.reader.services.ImageRenditionService.Rendition;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/images")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ImageDownloadController {
 
+    // Tomcat sends files of at least this size with sendfile, smaller ones are cheaper to copy
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    // Widths above this are rejected rather than rounded down
+    static final int MAX_WIDTH = 10_000;
+
     private final ImageDownloadService imageDownloadService;
+    private final ImageRenditionService imageRenditionService;
+    private final ImageCacheProperties imageCacheProperties;
+    private final ImageProxyProperties imageProxyProperties;
 
-    public ImageDownloadController(ImageDownloadService imageDownloadService) {
+    public ImageDownloadController(ImageDownloadService imageDownloadService,
+                                   ImageRenditionService imageRenditionService,
+                                   ImageCacheProperties imageCacheProperties,
+                                   ImageProxyProperties imageProxyProperties) {
         this.imageDownloadService = imageDownloadService;
+        this.imageRenditionService = imageRenditionService;
+        this.imageCacheProperties = imageCacheProperties;
+        this.imageProxyProperties = imageProxyProperties;
     }
 
     @Operation(
             summary = "Download image from URL",
-            description = "Downloads an image given its URL and an optional referer."
+            description = "Downloads an image given its URL and an optional referer. Supports single byte Range requests. "
+                    + "With stream=true the image is piped from upstream without going through the disk cache. "
+                    + "width, format (jpeg, png, webp) and quality (low, medium, high) return a resized or transcoded "
+                    + "rendition instead; widths are rounded up to a few fixed steps and images are never scaled up."
     )
     @GetMapping("/download")
-    public ResponseEntity<Resource> downloadImage(
+    public void downloadImage(
             @RequestParam("url") String imageUrl,
-            @RequestParam(value = "referer", defaultValue = "https://www.mangakakalot.gg/") String referer) throws IOException {
+            @RequestParam(value = "referer", defaultValue = "https://www.mangakakalot.gg/") String referer,
+            @RequestParam(value = "stream", required = false) Boolean stream,
+            @RequestParam(value = "width", required = false) Integer width,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "quality", required = false) String quality,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
         if (imageUrl == null || imageUrl.trim().isEmpty()) {
             throw new BadRequestException("Image URL cannot be empty");
         }
 
-        Resource imageResource = imageDownloadService.downloadImage(imageUrl, referer);
-        String contentType = determineContentType(imageUrl);
+        if ((width != null || format != null || quality != null) && imageRenditionService.isEnabled()) {
+            if (width != null && (width < 1 || width > MAX_WIDTH)) {
+                throw new BadRequestException("Width must be between 1 and " + MAX_WIDTH);
+            }
+            Format targetFormat = format != null
+                    ? Format.of(format).orElseThrow(() -> new BadRequestException("Unsupported image format: " + format))
+                    : null;
+            Quality targetQuality = quality != null
+                    ? Quality.of(quality).orElseThrow(() -> new BadRequestException("Unsupported image quality: " + quality))
+                    : null;
+            writeRendition(imageUrl, imageRenditionService.render(imageUrl, referer, width, targetFormat, targetQuality),
+                    request, response);
+            return;
+        }
+
+        boolean streamRequested = Boolean.TRUE.equals(stream);
+        if (!streamRequested && imageDownloadService.isDiskCacheEnabled()) {
+            CachedImage cachedImage = imageDownloadService.downloadImageWithCaching(imageUrl, referer);
+            try {
+                writeCachedImage(imageUrl, cachedImage, request, response);
+                return;
+            } catch (NoSuchFileException e) {
+                // The blob vanished underneath the index, fall back to a direct download
+                imageDownloadService.invalidateCachedImage(imageUrl);
+            }
+        }
+
+        if (streamRequested || (stream == null && imageProxyProperties.streaming())) {
+            streamImage(imageUrl, referer, request, response);
+            return;
+        }
+
+        try (HotImage image = imageDownloadService.openImage(imageUrl, referer)) {
+            writeImage(imageUrl, image, response);
+        }
+    }
+
+    private static void writeImage(String imageUrl, HotImage image, HttpServletResponse response) throws IOException {
+        response.setContentType(image.contentType() != null ? image.contentType() : determineContentType(imageUrl));
+        response.setContentLength(image.size());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + extractFilename(imageUrl) + "\"");
+        OutputStream out = response.getOutputStream();
+        if (out instanceof CoyoteOutputStream tomcat) {
+            // Tomcat takes the direct buffers as they are
+            for (ByteBuffer buffer : image.buffers()) {
+                tomcat.write(buffer);
+            }
+            return;
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        for (ByteBuffer buffer : image.buffers()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Pipes the upstream response to the client through a fixed-size buffer, forwarding the upstream
+     * status and entity headers. Range and If-Range are passed through to upstream.
+     */
+    private void streamImage(String imageUrl, String referer, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        imageDownloadService.streamImage(imageUrl, referer,
+                request.getHeader(HttpHeaders.RANGE), request.getHeader(HttpHeaders.IF_RANGE),
+                (status, headers, body) -> {
+                    response.setStatus(status.value());
+                    MediaType contentType = headers.getContentType();
+                    response.setContentType(contentType != null ? contentType.toString() : determineContentType(imageUrl));
+                    if (headers.getContentLength() >= 0) {
+                        response.setContentLengthLong(headers.getContentLength());
+                    }
+                    for (String name : List.of(HttpHeaders.CONTENT_RANGE, HttpHeaders.ACCEPT_RANGES,
+                            HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL)) {
+                        String value = headers.getFirst(name);
+                        if (value != null) {
+                            response.setHeader(name, value);
+                        }
+                    }
+                    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + extractFilename(imageUrl) + "\"");
+
+                    byte[] buffer = new byte[(int) imageProxyProperties.streamBufferSize().toBytes()];
+                    OutputStream out = response.getOutputStream();
+                    int read;
+                    while ((read = body.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                });
+    }
+
+    private void writeRendition(String imageUrl, Rendition rendition, HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(imageCacheProperties.clientMaxAge()).cachePublic().getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(rendition.eTag())) {
+            return;
+        }
+        response.setContentType(rendition.contentType() != null ? rendition.contentType() : determineContentType(imageUrl));
+        response.setContentLength(rendition.body().length);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + extractFilename(imageUrl) + "\"");
+        response.getOutputStream().write(rendition.body());
+    }
+
+    /**
+     * Serves an image from the disk cache. Whole images the off-heap store can hold are written from
+     * there, others and byte ranges without copying them through the heap: through Tomcat's sendfile
+     * support when available, otherwise through {@link FileChannel#transferTo}.
+     * A single byte range is answered with 206, multiple ranges are ignored and the full image is sent.
+     */
+    private void writeCachedImage(String imageUrl, CachedImage image, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        HttpRange range = requestedRange(request.getHeader(HttpHeaders.RANGE),
+                request.getHeader(HttpHeaders.IF_RANGE), image.sha256());
+        if (range == null) {
+            try (HotImage hot = imageDownloadService.openCachedImage(image)) {
+                if (hot != null) {
+                    if (!checkNotModified(image, request, response)) {
+                        writeImage(imageUrl, hot, response);
+                    }
+                    return;
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(image.path(), StandardOpenOption.READ)) {
+            if (checkNotModified(image, request, response)) {
+                return;
+            }
+
+            long size = channel.size();
+            long start = 0;
+            long end = size;
+            if (range != null) {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size) + 1;
+                if (start >= size || start >= end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+            }
+
+            response.setContentType(image.contentType() != null ? image.contentType() : determineContentType(imageUrl));
+            response.setContentLengthLong(end - start);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + extractFilename(imageUrl) + "\"");
+
+            if (end - start >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+                request.setAttribute("org.apache.tomcat.sendfile.filename", image.path().toRealPath().toString());
+                request.setAttribute("org.apache.tomcat.sendfile.start", start);
+                request.setAttribute("org.apache.tomcat.sendfile.end", end);
+                return;
+            }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + extractFilename(imageUrl) + "\"")
-                .body(imageResource);
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    /**
+     * Sets the caching headers of a disk-cached image.
+     *
+     * @return true if the client's copy is current and a 304 was sent
+     */
+    private boolean checkNotModified(CachedImage image, HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(imageCacheProperties.clientMaxAge()).cachePublic().getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        return new ServletWebRequest(request, response).checkNotModified(image.sha256());
+    }
+
+    /**
+     * @return the single range the client asked for, or null to send the whole image
+     */
+    static HttpRange requestedRange(String rangeHeader, String ifRange, String sha256) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        if (ifRange != null && !ifRange.equals("\"" + sha256 + "\"")) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
-    private String determineContentType(String imageUrl) {
+    static String determineContentType(String imageUrl) {
         if (imageUrl.endsWith(".webp")) {
             return "image/webp";
         } else if (imageUrl.endsWith(".jpg") || imageUrl.endsWith(".jpeg")) {
@@ -56,11 +287,11 @@ public class ImageDownloadController {
         }
     }
 
-    private String extractFilename(String imageUrl) {
+    static String extractFilename(String imageUrl) {
         int lastSlashIndex = imageUrl.lastIndexOf('/');
         if (lastSlashIndex >= 0 && lastSlashIndex < imageUrl.length() - 1) {
             return imageUrl.substring(lastSlashIndex + 1);
         }
         return "image";
     }
-}
\ No newline at end of file
+}
@@ -1,41 +1,78 @@
 package manga.reader.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import manga.reader.exception.BadRequestException;
 import manga.reader.exception.ResourceNotFoundException;
-import manga.reader.services.MangakakalotService;
+import jakarta.servlet.http.HttpServletResponse;
+import manga.reader.config.HttpCacheProperties;
+import manga.reader.config.ScrapeResultETags;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.ChapterSummary;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.PageRangeResult;
+import manga.reader.dto.ScrapeResult;
+import manga.reader.dto.SearchResult;
+import manga.reader.services.CachedMangakakalotService;
+import manga.reader.services.ChapterBundleService;
+import manga.reader.services.ChapterPrefetcher;
+import manga.reader.services.PageRangeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.util.Map;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/mangas")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class MangaController {
 
-    private final MangakakalotService mangakakalotService;
+    private final CachedMangakakalotService mangakakalotService;
+    private final ChapterPrefetcher chapterPrefetcher;
+    private final ChapterBundleService chapterBundleService;
+    private final PageRangeService pageRangeService;
+    private final ScrapeResultETags eTags;
+    private final HttpCacheProperties httpCacheProperties;
+    private final ObjectMapper objectMapper;
 
-    public MangaController(MangakakalotService mangakakalotService) {
+    public MangaController(CachedMangakakalotService mangakakalotService, ChapterPrefetcher chapterPrefetcher,
+                           ChapterBundleService chapterBundleService, PageRangeService pageRangeService,
+                           ScrapeResultETags eTags, HttpCacheProperties httpCacheProperties, ObjectMapper objectMapper) {
         this.mangakakalotService = mangakakalotService;
+        this.chapterPrefetcher = chapterPrefetcher;
+        this.chapterBundleService = chapterBundleService;
+        this.pageRangeService = pageRangeService;
+        this.eTags = eTags;
+        this.httpCacheProperties = httpCacheProperties;
+        this.objectMapper = objectMapper;
     }
 
     @Operation(summary = "Get latest manga list", description = "Returns the latest manga releases.")
     @GetMapping("/")
-    public ResponseEntity<Map<String, Object>> getLatestManga(
-            @RequestParam(value = "page", defaultValue = "1") int page) throws IOException {
+    public ResponseEntity<LatestMangaResult> getLatestManga(
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
         if (page < 1) {
             throw new BadRequestException("Page number must be greater than 0");
         }
-        Map<String, Object> result = mangakakalotService.latestManga(page);
-        return ResponseEntity.ok(result);
+        LatestMangaResult result = mangakakalotService.latestManga(page);
+        return cacheable(result, httpCacheProperties.latest(), acceptEncoding);
     }
 
     @Operation(summary = "Search manga", description = "Search for manga by keyword.")
     @GetMapping("/search")
-    public ResponseEntity<Map<String, Object>> searchManga(
+    public ResponseEntity<SearchResult> searchManga(
             @RequestParam(value = "query") String query,
-            @RequestParam(value = "page", defaultValue = "1") int page) throws IOException {
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
         if (query == null || query.trim().isEmpty()) {
             throw new BadRequestException("Search query cannot be empty");
         }
@@ -43,29 +80,56 @@ public class MangaController {
             throw new BadRequestException("Page number must be greater than 0");
         }
 
-        Map<String, Object> result = mangakakalotService.search(query, page);
-        return ResponseEntity.ok(result);
+        SearchResult result = mangakakalotService.search(query, page);
+        return cacheable(result, httpCacheProperties.search(), acceptEncoding);
+    }
+
+    @Operation(summary = "Get several pages of the latest manga list",
+            description = "Loads pages from..to concurrently and merges them, each manga once. Pages that fail or do not "
+                    + "load within the deadline are left out and reported under \"pages\".")
+    @GetMapping("/latest/pages")
+    public PageRangeResult<LatestMangaResult.Manga> getLatestMangaPages(
+            @RequestParam(value = "from", defaultValue = "1") int from,
+            @RequestParam(value = "to") int to) throws IOException {
+        return pageRangeService.latestManga(from, to);
+    }
+
+    @Operation(summary = "Search several pages",
+            description = "Loads search pages from..to concurrently and merges them, each manga once. Pages that fail or do "
+                    + "not load within the deadline are left out and reported under \"pages\".")
+    @GetMapping("/search/pages")
+    public PageRangeResult<SearchResult.Manga> searchMangaPages(
+            @RequestParam(value = "query") String query,
+            @RequestParam(value = "from", defaultValue = "1") int from,
+            @RequestParam(value = "to") int to) throws IOException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new BadRequestException("Search query cannot be empty");
+        }
+        return pageRangeService.search(query, from, to);
     }
 
     @Operation(summary = "Get manga info", description = "Get detailed information about a manga.")
     @GetMapping("/{mangaId}")
-    public ResponseEntity<Map<String, Object>> getMangaInfo(@PathVariable String mangaId) throws IOException {
+    public ResponseEntity<MangaInfoResult> getMangaInfo(
+            @PathVariable String mangaId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
         if (mangaId == null || mangaId.trim().isEmpty()) {
             throw new BadRequestException("Manga ID cannot be empty");
         }
         
-        Map<String, Object> result = mangakakalotService.mangaInfo(mangaId);
-        if (result.isEmpty()) {
+        MangaInfoResult result = mangakakalotService.mangaInfo(mangaId);
+        if (result.title().isEmpty()) {
             throw new ResourceNotFoundException("Manga not found with ID: " + mangaId);
         }
-        return ResponseEntity.ok(result);
+        return cacheable(result, httpCacheProperties.mangaInfo(), acceptEncoding);
     }
 
     @Operation(summary = "Get chapter images", description = "Fetch images for a specific manga chapter.")
     @GetMapping("/chapter/{mangaId}/{chapterId}")
-    public ResponseEntity<Map<String, Object>> getChapter(
+    public ResponseEntity<ChapterResult> getChapter(
             @PathVariable String mangaId,
-            @PathVariable String chapterId) throws IOException {
+            @PathVariable String chapterId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
         if (mangaId == null || mangaId.trim().isEmpty()) {
             throw new BadRequestException("Manga ID cannot be empty");
         }
@@ -73,10 +137,102 @@ public class MangaController {
             throw new BadRequestException("Chapter ID cannot be empty");
         }
         
-        Map<String, Object> result = mangakakalotService.fetchChapter(mangaId + "/" + chapterId);
-        if (result.isEmpty()) {
+        ChapterResult result = mangakakalotService.fetchChapter(mangaId + "/" + chapterId);
+        if (result.primaryImgs().isEmpty()) {
+            throw new ResourceNotFoundException("Chapter not found for manga ID: " + mangaId + " and chapter ID: " + chapterId);
+        }
+        chapterPrefetcher.prefetchAfter(mangaId, result);
+        return cacheable(result, httpCacheProperties.chapter(), acceptEncoding);
+    }
+
+    @Operation(summary = "Download chapter as CBZ", description = "Stream all images of a chapter as one CBZ (ZIP) archive, in page order.")
+    @GetMapping("/chapter/{mangaId}/{chapterId}/bundle")
+    public void getChapterBundle(
+            @PathVariable String mangaId,
+            @PathVariable String chapterId,
+            HttpServletResponse response) throws IOException {
+        if (mangaId == null || mangaId.trim().isEmpty()) {
+            throw new BadRequestException("Manga ID cannot be empty");
+        }
+        if (chapterId == null || chapterId.trim().isEmpty()) {
+            throw new BadRequestException("Chapter ID cannot be empty");
+        }
+
+        ChapterResult result = mangakakalotService.fetchChapter(mangaId + "/" + chapterId);
+        if (result.primaryImgs().isEmpty()) {
             throw new ResourceNotFoundException("Chapter not found for manga ID: " + mangaId + " and chapter ID: " + chapterId);
         }
-        return ResponseEntity.ok(result);
+
+        response.setContentType("application/vnd.comicbook+zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(mangaId + "-" + chapterId + ".cbz")
+                .build()
+                .toString());
+        OutputStream out = response.getOutputStream();
+        chapterBundleService.writeBundle(result, out);
+    }
+
+    @Operation(summary = "Stream chapter images",
+            description = "Streams the page images of a chapter while the chapter is still being scraped, one entry per page, "
+                    + "then a closing entry with the title and chapter list. NDJSON by default, server-sent events "
+                    + "(events \"page\" and \"chapter\") with Accept: text/event-stream.")
+    @GetMapping("/chapter/{mangaId}/{chapterId}/stream")
+    public void streamChapter(
+            @PathVariable String mangaId,
+            @PathVariable String chapterId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) throws IOException {
+        if (mangaId == null || mangaId.trim().isEmpty()) {
+            throw new BadRequestException("Manga ID cannot be empty");
+        }
+        if (chapterId == null || chapterId.trim().isEmpty()) {
+            throw new BadRequestException("Chapter ID cannot be empty");
+        }
+
+        // The response only starts with the first page, so that failures before it still get an error status
+        ChapterStreamFormat format = ChapterStreamFormat.of(accept);
+        ChapterResult result;
+        try {
+            result = mangakakalotService.streamChapter(mangaId + "/" + chapterId, page -> {
+                try {
+                    writeFrame(response, format, "page", page);
+                    response.flushBuffer();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (result.primaryImgs().isEmpty()) {
+            throw new ResourceNotFoundException("Chapter not found for manga ID: " + mangaId + " and chapter ID: " + chapterId);
+        }
+        chapterPrefetcher.prefetchAfter(mangaId, result);
+        writeFrame(response, format, "chapter", ChapterSummary.of(result, result.primaryImgs().size()));
+    }
+
+    private void writeFrame(HttpServletResponse response, ChapterStreamFormat format, String event, Object entry) throws IOException {
+        if (response.getContentType() == null) {
+            response.setContentType(format.mediaType().toString());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        response.getOutputStream().write(format.frame(objectMapper, event, entry));
+    }
+
+    /**
+     * Adds a strong ETag and Cache-Control to a response. Spring answers a GET whose
+     * If-None-Match matches the ETag with 304 and no body. The ETag is the one of the content
+     * coding the request's Accept-Encoding will get.
+     */
+    private <T extends ScrapeResult> ResponseEntity<T> cacheable(T result, Duration maxAge, String acceptEncoding) {
+        CacheControl cacheControl = CacheControl.maxAge(maxAge)
+                .staleWhileRevalidate(httpCacheProperties.staleWhileRevalidate());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(eTags.of(result, acceptEncoding))
+                .cacheControl(httpCacheProperties.shared() ? cacheControl.cachePublic() : cacheControl.cachePrivate());
+        if (eTags.variesByEncoding(result)) {
+            response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        return response.body(result);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,291 @@
+package manga.reader.controllers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.swagger.v3.oas.annotations.Operation;
+import manga.reader.config.ImageCacheProperties;
+import manga.reader.config.ImageProxyProperties;
+import manga.reader.exception.BadRequestException;
+import manga.reader.services.HotImageStore.HotImage;
+import manga.reader.services.ImageDiskCache.CachedImage;
+import manga.reader.services.ImageDownloadService;
+import manga.reader.services.ImageRenditionService;
+import manga.reader.services.ImageRenditionService.Format;
+import manga.reader.services.ImageRenditionService.Quality;
+import manga.reader.services.ImageRenditionService.Rendition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reactive counterpart of {@link ImageDownloadController}. Streamed images flow from upstream to the
+ * client without blocking, with the client's demand throttling the upstream read; downloads through
+ * the disk cache and renditions block on virtual threads.
+ */
+@RestController
+@RequestMapping("/api/images")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveImageDownloadController {
+
+    // Buffer size for reading cached images when the server cannot send files directly
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final ImageDownloadService imageDownloadService;
+    private final ImageRenditionService imageRenditionService;
+    private final ImageCacheProperties imageCacheProperties;
+    private final ImageProxyProperties imageProxyProperties;
+    private final Scheduler blockingScheduler;
+
+    public ReactiveImageDownloadController(ImageDownloadService imageDownloadService,
+                                           ImageRenditionService imageRenditionService,
+                                           ImageCacheProperties imageCacheProperties,
+                                           ImageProxyProperties imageProxyProperties,
+                                           Scheduler blockingScheduler) {
+        this.imageDownloadService = imageDownloadService;
+        this.imageRenditionService = imageRenditionService;
+        this.imageCacheProperties = imageCacheProperties;
+        this.imageProxyProperties = imageProxyProperties;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    @Operation(
+            summary = "Download image from URL",
+            description = "Downloads an image given its URL and an optional referer. Supports single byte Range requests. "
+                    + "With stream=true the image is piped from upstream without going through the disk cache. "
+                    + "width, format (jpeg, png, webp) and quality (low, medium, high) return a resized or transcoded "
+                    + "rendition instead; widths are rounded up to a few fixed steps and images are never scaled up."
+    )
+    @GetMapping("/download")
+    public Mono<Void> downloadImage(
+            @RequestParam("url") String imageUrl,
+            @RequestParam(value = "referer", defaultValue = "https://www.mangakakalot.gg/") String referer,
+            @RequestParam(value = "stream", required = false) Boolean stream,
+            @RequestParam(value = "width", required = false) Integer width,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "quality", required = false) String quality,
+            ServerWebExchange exchange) {
+        if (imageUrl == null || imageUrl.trim().isEmpty()) {
+            throw new BadRequestException("Image URL cannot be empty");
+        }
+
+        if ((width != null || format != null || quality != null) && imageRenditionService.isEnabled()) {
+            if (width != null && (width < 1 || width > ImageDownloadController.MAX_WIDTH)) {
+                throw new BadRequestException("Width must be between 1 and " + ImageDownloadController.MAX_WIDTH);
+            }
+            Format targetFormat = format != null
+                    ? Format.of(format).orElseThrow(() -> new BadRequestException("Unsupported image format: " + format))
+                    : null;
+            Quality targetQuality = quality != null
+                    ? Quality.of(quality).orElseThrow(() -> new BadRequestException("Unsupported image quality: " + quality))
+                    : null;
+            return Mono.fromCallable(() -> imageRenditionService.render(imageUrl, referer, width, targetFormat, targetQuality))
+                    .subscribeOn(blockingScheduler)
+                    .flatMap(rendition -> writeRendition(imageUrl, rendition, exchange));
+        }
+
+        boolean streamRequested = Boolean.TRUE.equals(stream);
+        boolean streaming = streamRequested || (stream == null && imageProxyProperties.streaming());
+        Mono<Void> uncached = streaming
+                ? streamImage(imageUrl, referer, exchange)
+                : bufferImage(imageUrl, referer, exchange.getResponse());
+        if (streamRequested || !imageDownloadService.isDiskCacheEnabled()) {
+            return uncached;
+        }
+        return Mono.fromCallable(() -> imageDownloadService.downloadImageWithCaching(imageUrl, referer))
+                .subscribeOn(blockingScheduler)
+                .flatMap(cachedImage -> writeCachedImage(imageUrl, cachedImage, exchange))
+                // The blob vanished underneath the index, fall back to a direct download
+                .onErrorResume(NoSuchFileException.class, e -> Mono
+                        .fromRunnable(() -> imageDownloadService.invalidateCachedImage(imageUrl))
+                        .subscribeOn(blockingScheduler)
+                        .then(uncached));
+    }
+
+    /**
+     * Forwards the upstream status and entity headers, then writes the upstream body as it arrives.
+     * Range and If-Range are passed through to upstream.
+     */
+    private Mono<Void> streamImage(String imageUrl, String referer, ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        return imageDownloadService.streamImage(imageUrl, referer,
+                        request.getHeaders().getFirst(HttpHeaders.RANGE), request.getHeaders().getFirst(HttpHeaders.IF_RANGE),
+                        response.bufferFactory())
+                .flatMap(upstream -> {
+                    response.setStatusCode(upstream.status());
+                    HttpHeaders headers = response.getHeaders();
+                    MediaType contentType = upstream.headers().getContentType();
+                    headers.setContentType(contentType != null
+                            ? contentType
+                            : MediaType.parseMediaType(ImageDownloadController.determineContentType(imageUrl)));
+                    if (upstream.headers().getContentLength() >= 0) {
+                        headers.setContentLength(upstream.headers().getContentLength());
+                    }
+                    for (String name : List.of(HttpHeaders.CONTENT_RANGE, HttpHeaders.ACCEPT_RANGES,
+                            HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL)) {
+                        String value = upstream.headers().getFirst(name);
+                        if (value != null) {
+                            headers.set(name, value);
+                        }
+                    }
+                    headers.set(HttpHeaders.CONTENT_DISPOSITION, inline(imageUrl));
+                    return response.writeWith(upstream.body());
+                });
+    }
+
+    /**
+     * Writes a downloaded image from the off-heap store. The request's own handle is closed once the
+     * response completes or is cancelled, while the body holds a separate one, see {@link #body}.
+     */
+    private Mono<Void> bufferImage(String imageUrl, String referer, ServerHttpResponse response) {
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> imageDownloadService.openImage(imageUrl, referer)).subscribeOn(blockingScheduler),
+                image -> writeImage(imageUrl, image, response),
+                image -> Mono.fromRunnable(image::close));
+    }
+
+    private static Mono<Void> writeImage(String imageUrl, HotImage image, ServerHttpResponse response) {
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaType.parseMediaType(image.contentType() != null
+                ? image.contentType() : ImageDownloadController.determineContentType(imageUrl)));
+        headers.setContentLength(image.size());
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, inline(imageUrl));
+        return response.writeWith(Mono.fromSupplier(() -> body(image, response.bufferFactory())));
+    }
+
+    /**
+     * The image as a single response buffer. On Netty it wraps the store's direct buffers as they are
+     * and holds its own handle on the image, closed when Netty releases the buffer after writing or
+     * dropping it, so the chunks are not reused while still queued for the socket. Other servers get
+     * a copy, since nothing tells when they are done with a wrapped buffer.
+     */
+    private static DataBuffer body(HotImage image, DataBufferFactory bufferFactory) {
+        if (bufferFactory instanceof NettyDataBufferFactory nettyBufferFactory) {
+            HotImage shared = image.share();
+            ByteBuf[] chunks = shared.buffers().stream().map(Unpooled::wrappedBuffer).toArray(ByteBuf[]::new);
+            return nettyBufferFactory.wrap(new CompositeByteBuf(UnpooledByteBufAllocator.DEFAULT, true, chunks.length, chunks) {
+                @Override
+                protected void deallocate() {
+                    try {
+                        super.deallocate();
+                    } finally {
+                        shared.close();
+                    }
+                }
+            });
+        }
+        DataBuffer copy = bufferFactory.allocateBuffer(image.size());
+        image.buffers().forEach(copy::write);
+        return copy;
+    }
+
+    private Mono<Void> writeRendition(String imageUrl, Rendition rendition, ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().setCacheControl(CacheControl.maxAge(imageCacheProperties.clientMaxAge()).cachePublic());
+        if (exchange.checkNotModified(rendition.eTag())) {
+            return response.setComplete();
+        }
+        response.getHeaders().setContentType(MediaType.parseMediaType(rendition.contentType() != null
+                ? rendition.contentType()
+                : ImageDownloadController.determineContentType(imageUrl)));
+        response.getHeaders().setContentLength(rendition.body().length);
+        response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION, inline(imageUrl));
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(rendition.body())));
+    }
+
+    /**
+     * Serves an image from the disk cache. Whole images the off-heap store can hold are written from
+     * there, others and byte ranges with the server's zero-copy file transfer when it has one.
+     * A single byte range is answered with 206, multiple ranges are ignored and the full image is sent.
+     */
+    private Mono<Void> writeCachedImage(String imageUrl, CachedImage image, ServerWebExchange exchange) {
+        HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+        HttpRange range = ImageDownloadController.requestedRange(requestHeaders.getFirst(HttpHeaders.RANGE),
+                requestHeaders.getFirst(HttpHeaders.IF_RANGE), image.sha256());
+        if (range != null) {
+            return writeCachedFile(imageUrl, image, range, exchange);
+        }
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> Optional.ofNullable(imageDownloadService.openCachedImage(image)))
+                        .subscribeOn(blockingScheduler),
+                hot -> hot.isEmpty() ? writeCachedFile(imageUrl, image, null, exchange)
+                        : checkNotModified(image, exchange) ? exchange.getResponse().setComplete()
+                        : writeImage(imageUrl, hot.get(), exchange.getResponse()),
+                hot -> Mono.fromRunnable(() -> hot.ifPresent(HotImage::close)));
+    }
+
+    private Mono<Void> writeCachedFile(String imageUrl, CachedImage image, HttpRange range, ServerWebExchange exchange) {
+        return Mono.fromCallable(() -> Files.size(image.path()))
+                .subscribeOn(blockingScheduler)
+                .flatMap(size -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    HttpHeaders headers = response.getHeaders();
+                    if (checkNotModified(image, exchange)) {
+                        return response.setComplete();
+                    }
+
+                    long start = 0;
+                    long end = size;
+                    if (range != null) {
+                        start = range.getRangeStart(size);
+                        end = range.getRangeEnd(size) + 1;
+                        if (start >= size || start >= end) {
+                            response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                            return response.setComplete();
+                        }
+                        response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+                        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+                    }
+
+                    headers.setContentType(MediaType.parseMediaType(image.contentType() != null
+                            ? image.contentType()
+                            : ImageDownloadController.determineContentType(imageUrl)));
+                    headers.setContentLength(end - start);
+                    headers.set(HttpHeaders.CONTENT_DISPOSITION, inline(imageUrl));
+
+                    if (response instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+                        return zeroCopy.writeWith(image.path(), start, end - start);
+                    }
+                    return response.writeWith(DataBufferUtils.skipUntilByteCount(DataBufferUtils.takeUntilByteCount(
+                            DataBufferUtils.read(image.path(), response.bufferFactory(), READ_BUFFER_SIZE), end), start));
+                });
+    }
+
+    /**
+     * Sets the caching headers of a disk-cached image.
+     *
+     * @return true if the client's copy is current and the response is a 304
+     */
+    private boolean checkNotModified(CachedImage image, ServerWebExchange exchange) {
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        headers.setCacheControl(CacheControl.maxAge(imageCacheProperties.clientMaxAge()).cachePublic());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        return exchange.checkNotModified(image.sha256());
+    }
+
+    private static String inline(String imageUrl) {
+        return "inline; filename=\"" + ImageDownloadController.extractFilename(imageUrl) + "\"";
+    }
+}
@@ -0,0 +1,269 @@
+package manga.reader.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import manga.reader.config.HttpCacheProperties;
+import manga.reader.config.ScrapeResultETags;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.ChapterSummary;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.PageRangeResult;
+import manga.reader.dto.ScrapeResult;
+import manga.reader.dto.SearchResult;
+import manga.reader.exception.BadRequestException;
+import manga.reader.exception.ResourceNotFoundException;
+import manga.reader.services.CachedMangakakalotService;
+import manga.reader.services.ChapterBundleService;
+import manga.reader.services.ChapterPrefetcher;
+import manga.reader.services.PageRangeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * Reactive counterpart of {@link MangaController}. Scrapes still block, but on the cache's loader
+ * threads: the event loop only waits on the returned futures.
+ */
+@RestController
+@RequestMapping("/api/mangas")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveMangaController {
+
+    private static final MediaType CBZ = MediaType.parseMediaType("application/vnd.comicbook+zip");
+
+    private final CachedMangakakalotService mangakakalotService;
+    private final ChapterPrefetcher chapterPrefetcher;
+    private final ChapterBundleService chapterBundleService;
+    private final PageRangeService pageRangeService;
+    private final ScrapeResultETags eTags;
+    private final HttpCacheProperties httpCacheProperties;
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+
+    public ReactiveMangaController(CachedMangakakalotService mangakakalotService, ChapterPrefetcher chapterPrefetcher,
+                                   ChapterBundleService chapterBundleService, PageRangeService pageRangeService,
+                                   ScrapeResultETags eTags, HttpCacheProperties httpCacheProperties,
+                                   ObjectMapper objectMapper, Scheduler blockingScheduler) {
+        this.mangakakalotService = mangakakalotService;
+        this.chapterPrefetcher = chapterPrefetcher;
+        this.chapterBundleService = chapterBundleService;
+        this.pageRangeService = pageRangeService;
+        this.eTags = eTags;
+        this.httpCacheProperties = httpCacheProperties;
+        this.objectMapper = objectMapper;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    @Operation(summary = "Get latest manga list", description = "Returns the latest manga releases.")
+    @GetMapping("/")
+    public Mono<ResponseEntity<LatestMangaResult>> getLatestManga(
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (page < 1) {
+            throw new BadRequestException("Page number must be greater than 0");
+        }
+        return Mono.fromFuture(() -> mangakakalotService.latestMangaAsync(page))
+                .map(result -> cacheable(result, httpCacheProperties.latest(), acceptEncoding));
+    }
+
+    @Operation(summary = "Search manga", description = "Search for manga by keyword.")
+    @GetMapping("/search")
+    public Mono<ResponseEntity<SearchResult>> searchManga(
+            @RequestParam(value = "query") String query,
+            @RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new BadRequestException("Search query cannot be empty");
+        }
+        if (page < 1) {
+            throw new BadRequestException("Page number must be greater than 0");
+        }
+        return Mono.fromFuture(() -> mangakakalotService.searchAsync(query, page))
+                .map(result -> cacheable(result, httpCacheProperties.search(), acceptEncoding));
+    }
+
+    @Operation(summary = "Get several pages of the latest manga list",
+            description = "Loads pages from..to concurrently and merges them, each manga once. Pages that fail or do not "
+                    + "load within the deadline are left out and reported under \"pages\".")
+    @GetMapping("/latest/pages")
+    public Mono<PageRangeResult<LatestMangaResult.Manga>> getLatestMangaPages(
+            @RequestParam(value = "from", defaultValue = "1") int from,
+            @RequestParam(value = "to") int to) {
+        return Mono.fromFuture(() -> pageRangeService.latestMangaAsync(from, to));
+    }
+
+    @Operation(summary = "Search several pages",
+            description = "Loads search pages from..to concurrently and merges them, each manga once. Pages that fail or do "
+                    + "not load within the deadline are left out and reported under \"pages\".")
+    @GetMapping("/search/pages")
+    public Mono<PageRangeResult<SearchResult.Manga>> searchMangaPages(
+            @RequestParam(value = "query") String query,
+            @RequestParam(value = "from", defaultValue = "1") int from,
+            @RequestParam(value = "to") int to) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new BadRequestException("Search query cannot be empty");
+        }
+        return Mono.fromFuture(() -> pageRangeService.searchAsync(query, from, to));
+    }
+
+    @Operation(summary = "Get manga info", description = "Get detailed information about a manga.")
+    @GetMapping("/{mangaId}")
+    public Mono<ResponseEntity<MangaInfoResult>> getMangaInfo(
+            @PathVariable String mangaId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (mangaId == null || mangaId.trim().isEmpty()) {
+            throw new BadRequestException("Manga ID cannot be empty");
+        }
+        return Mono.fromFuture(() -> mangakakalotService.mangaInfoAsync(mangaId))
+                .map(result -> {
+                    if (result.title().isEmpty()) {
+                        throw new ResourceNotFoundException("Manga not found with ID: " + mangaId);
+                    }
+                    return cacheable(result, httpCacheProperties.mangaInfo(), acceptEncoding);
+                });
+    }
+
+    @Operation(summary = "Get chapter images", description = "Fetch images for a specific manga chapter.")
+    @GetMapping("/chapter/{mangaId}/{chapterId}")
+    public Mono<ResponseEntity<ChapterResult>> getChapter(
+            @PathVariable String mangaId,
+            @PathVariable String chapterId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return chapter(mangaId, chapterId)
+                .map(result -> {
+                    chapterPrefetcher.prefetchAfter(mangaId, result);
+                    return cacheable(result, httpCacheProperties.chapter(), acceptEncoding);
+                });
+    }
+
+    @Operation(summary = "Download chapter as CBZ", description = "Stream all images of a chapter as one CBZ (ZIP) archive, in page order.")
+    @GetMapping("/chapter/{mangaId}/{chapterId}/bundle")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getChapterBundle(
+            @PathVariable String mangaId,
+            @PathVariable String chapterId) {
+        return chapter(mangaId, chapterId)
+                .map(result -> {
+                    // The archive is written on a virtual thread, which blocks whenever the client lags behind
+                    Flux<DataBuffer> body = Flux.from(DataBufferUtils.outputStreamPublisher(out -> {
+                        try {
+                            chapterBundleService.writeBundle(result, out);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, DefaultDataBufferFactory.sharedInstance, blockingScheduler::schedule));
+                    return ResponseEntity.ok()
+                            .contentType(CBZ)
+                            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                    .filename(mangaId + "-" + chapterId + ".cbz")
+                                    .build()
+                                    .toString())
+                            .body(body);
+                });
+    }
+
+    @Operation(summary = "Stream chapter images",
+            description = "Streams the page images of a chapter while the chapter is still being scraped, one entry per page, "
+                    + "then a closing entry with the title and chapter list. NDJSON by default, server-sent events "
+                    + "(events \"page\" and \"chapter\") with Accept: text/event-stream.")
+    @GetMapping("/chapter/{mangaId}/{chapterId}/stream")
+    public Mono<Void> streamChapter(
+            @PathVariable String mangaId,
+            @PathVariable String chapterId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            ServerHttpResponse response) {
+        if (mangaId == null || mangaId.trim().isEmpty()) {
+            throw new BadRequestException("Manga ID cannot be empty");
+        }
+        if (chapterId == null || chapterId.trim().isEmpty()) {
+            throw new BadRequestException("Chapter ID cannot be empty");
+        }
+
+        // The scrape blocks on a virtual thread and pushes each frame as soon as it is parsed. Nothing is
+        // committed before the first frame, so failures before it still reach the exception handler.
+        ChapterStreamFormat format = ChapterStreamFormat.of(accept);
+        Flux<byte[]> frames = Flux.create(sink -> {
+            Disposable scrape = blockingScheduler.schedule(() -> {
+                try {
+                    ChapterResult result = mangakakalotService.streamChapter(mangaId + "/" + chapterId,
+                            page -> sink.next(frame(format, "page", page)));
+                    if (result.primaryImgs().isEmpty()) {
+                        sink.error(new ResourceNotFoundException("Chapter not found for manga ID: " + mangaId + " and chapter ID: " + chapterId));
+                        return;
+                    }
+                    chapterPrefetcher.prefetchAfter(mangaId, result);
+                    sink.next(frame(format, "chapter", ChapterSummary.of(result, result.primaryImgs().size())));
+                    sink.complete();
+                } catch (IOException | RuntimeException e) {
+                    sink.error(e);
+                }
+            });
+            // A client going away stops its replay, the shared scrape still completes into the chapter cache
+            sink.onDispose(scrape);
+        });
+        return response.writeWith(frames.map(frame -> {
+            if (response.getHeaders().getContentType() == null) {
+                response.getHeaders().setContentType(format.mediaType());
+                response.getHeaders().setCacheControl(CacheControl.noCache());
+            }
+            return response.bufferFactory().wrap(frame);
+        }));
+    }
+
+    private byte[] frame(ChapterStreamFormat format, String event, Object entry) {
+        try {
+            return format.frame(objectMapper, event, entry);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Mono<ChapterResult> chapter(String mangaId, String chapterId) {
+        if (mangaId == null || mangaId.trim().isEmpty()) {
+            throw new BadRequestException("Manga ID cannot be empty");
+        }
+        if (chapterId == null || chapterId.trim().isEmpty()) {
+            throw new BadRequestException("Chapter ID cannot be empty");
+        }
+        return Mono.fromFuture(() -> mangakakalotService.fetchChapterAsync(mangaId + "/" + chapterId))
+                .map(result -> {
+                    if (result.primaryImgs().isEmpty()) {
+                        throw new ResourceNotFoundException("Chapter not found for manga ID: " + mangaId + " and chapter ID: " + chapterId);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Same as {@link MangaController}: WebFlux answers a GET whose If-None-Match matches the ETag
+     * with 304 and no body.
+     */
+    private <T extends ScrapeResult> ResponseEntity<T> cacheable(T result, Duration maxAge, String acceptEncoding) {
+        CacheControl cacheControl = CacheControl.maxAge(maxAge)
+                .staleWhileRevalidate(httpCacheProperties.staleWhileRevalidate());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(eTags.of(result, acceptEncoding))
+                .cacheControl(httpCacheProperties.shared() ? cacheControl.cachePublic() : cacheControl.cachePrivate());
+        if (eTags.variesByEncoding(result)) {
+            response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        return response.body(result);
+    }
+}
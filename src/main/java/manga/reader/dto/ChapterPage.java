@@ -0,0 +1,16 @@
+package manga.reader.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One page image of a chapter with the fallback mirror listed by the same {@code <img>}. Streamed
+ * while the chapter page is still being parsed, and kept in {@link ChapterResult#pages()}.
+ *
+ * @param page 1-based position in reading order
+ * @param primaryImg page image URL
+ * @param secondaryImg fallback mirror of the page image, null when the reader lists none
+ */
+public record ChapterPage(int page,
+                          @JsonProperty("primary_img") String primaryImg,
+                          @JsonProperty("secondary_img") String secondaryImg) {
+}
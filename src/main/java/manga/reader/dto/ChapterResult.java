@@ -0,0 +1,49 @@
+package manga.reader.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Page images of a chapter and the chapter numbers available next to it.
+ *
+ * @param primaryImgs page images in reading order
+ * @param secondaryImgs distinct fallback mirrors of the page images; not index-aligned with
+ *                      {@code primaryImgs}, use {@code pages} to pair a page with its mirror
+ * @param chapters chapter numbers of the manga, highest first
+ * @param currentChapter number of this chapter
+ * @param pages each page image with the mirror its own {@code <img>} lists, in reading order
+ */
+public record ChapterResult(String title,
+                            @JsonProperty("primary_imgs") List<String> primaryImgs,
+                            @JsonProperty("secondary_imgs") List<String> secondaryImgs,
+                            List<String> chapters,
+                            String currentChapter,
+                            @JsonIgnore List<ChapterPage> pages) implements ScrapeResult {
+
+    public ChapterResult(String title, List<ChapterPage> pages, List<String> chapters, String currentChapter) {
+        this(title, primaryImgs(pages), secondaryImgs(pages), chapters, currentChapter, pages);
+    }
+
+    private static List<String> primaryImgs(List<ChapterPage> pages) {
+        List<String> primary = new ArrayList<>(pages.size());
+        for (ChapterPage page : pages) {
+            primary.add(page.primaryImg());
+        }
+        return primary;
+    }
+
+    private static List<String> secondaryImgs(List<ChapterPage> pages) {
+        Set<String> secondary = new LinkedHashSet<>(pages.size() * 2);
+        for (ChapterPage page : pages) {
+            if (page.secondaryImg() != null) {
+                secondary.add(page.secondaryImg());
+            }
+        }
+        return new ArrayList<>(secondary);
+    }
+}
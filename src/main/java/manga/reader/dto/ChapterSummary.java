@@ -0,0 +1,17 @@
+package manga.reader.dto;
+
+import java.util.List;
+
+/**
+ * Closing entry of a streamed chapter, sent once the whole chapter page has been parsed.
+ *
+ * @param pages number of pages streamed before it
+ * @param chapters chapter numbers of the manga, highest first
+ * @param currentChapter number of this chapter
+ */
+public record ChapterSummary(String title, int pages, List<String> chapters, String currentChapter) {
+
+    public static ChapterSummary of(ChapterResult chapter, int pages) {
+        return new ChapterSummary(chapter.title(), pages, chapter.chapters(), chapter.currentChapter());
+    }
+}
@@ -0,0 +1,13 @@
+package manga.reader.dto;
+
+import java.util.List;
+
+/**
+ * One page of the latest manga listing.
+ */
+public record LatestMangaResult(List<Manga> results, PageInfo pageInfo) implements ScrapeResult {
+
+    public record Manga(String mangaID, String img, String title, String latestChapter, String chapterID,
+                        String view, String description) {
+    }
+}
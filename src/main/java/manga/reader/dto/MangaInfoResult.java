@@ -0,0 +1,17 @@
+package manga.reader.dto;
+
+import java.util.List;
+
+/**
+ * Details and chapter list of a manga.
+ */
+public record MangaInfoResult(String img, String title, List<String> authors, String status, String lastUpdate,
+                              String view, List<String> genres, Rating rating, String summary,
+                              List<Chapter> chapters) implements ScrapeResult {
+
+    public record Rating(double score, int outOf, int votes) {
+    }
+
+    public record Chapter(String chapterName, String chapterID, String views, String timeUploaded) {
+    }
+}
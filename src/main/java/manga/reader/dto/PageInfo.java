@@ -0,0 +1,11 @@
+package manga.reader.dto;
+
+/**
+ * Pagination of a listing page.
+ *
+ * @param page current page as shown by upstream
+ * @param totalPage number of the last page
+ * @param searchKey query the page belongs to, null for non-search listings
+ */
+public record PageInfo(String page, String totalPage, String searchKey) {
+}
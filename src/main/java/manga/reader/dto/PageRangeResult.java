@@ -0,0 +1,29 @@
+package manga.reader.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Several pages of a listing merged into one, with duplicates dropped.
+ *
+ * @param results entries of every loaded page in page order, each manga once
+ * @param totalPage number of the last page, as reported by the first loaded page; null if none loaded
+ * @param pages outcome of each requested page
+ */
+public record PageRangeResult<T>(List<T> results, String totalPage, List<PageStatus> pages) {
+
+    /**
+     * @param error why the page failed, null unless {@code status} is {@link Status#FAILED}
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PageStatus(int page, Status status, String error) {
+    }
+
+    public enum Status {
+        @JsonProperty("ok") OK,
+        @JsonProperty("timeout") TIMEOUT,
+        @JsonProperty("failed") FAILED
+    }
+}
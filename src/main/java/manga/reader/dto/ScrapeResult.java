@@ -0,0 +1,8 @@
+package manga.reader.dto;
+
+/**
+ * A parsed upstream page, as returned by the scraper endpoints.
+ * Written to responses by {@link ScrapeResultJson} rather than through reflective Jackson binding.
+ */
+public sealed interface ScrapeResult permits LatestMangaResult, SearchResult, MangaInfoResult, ChapterResult {
+}
@@ -0,0 +1,138 @@
+package manga.reader.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streams scrape results as JSON straight into a {@link JsonGenerator}, without building an
+ * intermediate tree or going through bean introspection.
+ * <p>
+ * The legacy shape is the one the API has always returned: the latest listing appends its
+ * pagination object as the last element of {@code results}, and search wraps it in a one-element
+ * {@code pages} array. The typed shape mirrors the DTOs and puts pagination under {@code pageInfo}.
+ * Manga info and chapter responses are the same in both shapes.
+ */
+public final class ScrapeResultJson {
+
+    private ScrapeResultJson() {
+    }
+
+    public static void write(JsonGenerator generator, ScrapeResult result, boolean legacyShape) throws IOException {
+        generator.writeStartObject();
+        switch (result) {
+            case LatestMangaResult latest -> writeLatest(generator, latest, legacyShape);
+            case SearchResult search -> writeSearch(generator, search, legacyShape);
+            case MangaInfoResult mangaInfo -> writeMangaInfo(generator, mangaInfo);
+            case ChapterResult chapter -> writeChapter(generator, chapter);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeLatest(JsonGenerator generator, LatestMangaResult latest, boolean legacyShape) throws IOException {
+        generator.writeArrayFieldStart("results");
+        for (LatestMangaResult.Manga manga : latest.results()) {
+            generator.writeStartObject();
+            generator.writeStringField("mangaID", manga.mangaID());
+            generator.writeStringField("img", manga.img());
+            generator.writeStringField("title", manga.title());
+            generator.writeStringField("latestChapter", manga.latestChapter());
+            generator.writeStringField("chapterID", manga.chapterID());
+            generator.writeStringField("view", manga.view());
+            generator.writeStringField("description", manga.description());
+            generator.writeEndObject();
+        }
+        if (legacyShape) {
+            writePageInfo(generator, latest.pageInfo());
+            generator.writeEndArray();
+        } else {
+            generator.writeEndArray();
+            generator.writeFieldName("pageInfo");
+            writePageInfo(generator, latest.pageInfo());
+        }
+    }
+
+    private static void writeSearch(JsonGenerator generator, SearchResult search, boolean legacyShape) throws IOException {
+        generator.writeArrayFieldStart("results");
+        for (SearchResult.Manga manga : search.results()) {
+            generator.writeStartObject();
+            generator.writeStringField("id", manga.id());
+            generator.writeStringField("img", manga.img());
+            generator.writeStringField("title", manga.title());
+            generator.writeStringField("author", manga.author());
+            generator.writeStringField("update", manga.update());
+            generator.writeStringField("view", manga.view());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        if (legacyShape) {
+            generator.writeArrayFieldStart("pages");
+            writePageInfo(generator, search.pageInfo());
+            generator.writeEndArray();
+        } else {
+            generator.writeFieldName("pageInfo");
+            writePageInfo(generator, search.pageInfo());
+        }
+    }
+
+    private static void writePageInfo(JsonGenerator generator, PageInfo pageInfo) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("page", pageInfo.page());
+        generator.writeStringField("totalPage", pageInfo.totalPage());
+        if (pageInfo.searchKey() != null) {
+            generator.writeStringField("searchKey", pageInfo.searchKey());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeMangaInfo(JsonGenerator generator, MangaInfoResult mangaInfo) throws IOException {
+        generator.writeObjectFieldStart("results");
+        generator.writeStringField("img", mangaInfo.img());
+        generator.writeStringField("title", mangaInfo.title());
+        writeStrings(generator, "authors", mangaInfo.authors());
+        generator.writeStringField("status", mangaInfo.status());
+        generator.writeStringField("lastUpdate", mangaInfo.lastUpdate());
+        generator.writeStringField("view", mangaInfo.view());
+        writeStrings(generator, "genres", mangaInfo.genres());
+
+        MangaInfoResult.Rating rating = mangaInfo.rating();
+        generator.writeObjectFieldStart("rating");
+        generator.writeNumberField("score", rating.score());
+        generator.writeNumberField("outOf", rating.outOf());
+        generator.writeNumberField("votes", rating.votes());
+        generator.writeEndObject();
+
+        generator.writeStringField("summary", mangaInfo.summary());
+        generator.writeArrayFieldStart("chapters");
+        for (MangaInfoResult.Chapter chapter : mangaInfo.chapters()) {
+            generator.writeStartObject();
+            generator.writeStringField("chapterName", chapter.chapterName());
+            generator.writeStringField("chapterID", chapter.chapterID());
+            generator.writeStringField("views", chapter.views());
+            generator.writeStringField("timeUploaded", chapter.timeUploaded());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeChapter(JsonGenerator generator, ChapterResult chapter) throws IOException {
+        generator.writeObjectFieldStart("results");
+        generator.writeStringField("title", chapter.title());
+        writeStrings(generator, "primary_imgs", chapter.primaryImgs());
+        writeStrings(generator, "secondary_imgs", chapter.secondaryImgs());
+        writeStrings(generator, "chapters", chapter.chapters());
+        generator.writeStringField("currentChapter", chapter.currentChapter());
+        generator.writeEndObject();
+    }
+
+    private static void writeStrings(JsonGenerator generator, String fieldName, List<String> values) throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,12 @@
+package manga.reader.dto;
+
+import java.util.List;
+
+/**
+ * One page of search results.
+ */
+public record SearchResult(List<Manga> results, PageInfo pageInfo) implements ScrapeResult {
+
+    public record Manga(String id, String img, String title, String author, String update, String view) {
+    }
+}
@@ -1,6 +1,9 @@
 package manga.reader.exception;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -14,6 +17,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
     @ExceptionHandler(ResourceNotFoundException.class)
@@ -36,18 +40,39 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return buildErrorResponse(ex, HttpStatus.FORBIDDEN, request);
     }
 
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<Object> handleUpstreamOverloadedException(UpstreamOverloadedException ex, WebRequest request) {
+        ResponseEntity<Object> response = buildErrorResponse(ex, HttpStatus.SERVICE_UNAVAILABLE, request);
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(ex.getRetryAfter().toSeconds(), 1)))
+                .body(response.getBody());
+    }
+
     @ExceptionHandler(IOException.class)
     public ResponseEntity<Object> handleIOException(IOException ex, WebRequest request) {
         return buildErrorResponse(ex, HttpStatus.INTERNAL_SERVER_ERROR, request);
     }
 
+    /**
+     * Error bodies are always JSON, also for requests that only accept a streaming format.
+     */
     private ResponseEntity<Object> buildErrorResponse(Exception ex, HttpStatus status, WebRequest request) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorBody(ex, status, request.getDescription(false).replace("uri=", "")));
+    }
+
+    /**
+     * The error body shared with {@link ReactiveExceptionHandler}.
+     */
+    static Map<String, Object> errorBody(Exception ex, HttpStatus status, String path) {
         Map<String, Object> body = new HashMap<>();
         body.put("timestamp", LocalDateTime.now());
         body.put("status", status.value());
         body.put("error", status.getReasonPhrase());
         body.put("message", ex.getMessage());
-        body.put("path", request.getDescription(false).replace("uri=", ""));
-        return new ResponseEntity<>(body, status);
+        body.put("path", path);
+        return body;
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package manga.reader.exception;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.io.IOException;
+
+/**
+ * Reactive counterpart of {@link GlobalExceptionHandler}, mapping the same exceptions to the same
+ * statuses and error bodies.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveExceptionHandler extends ResponseEntityExceptionHandler {
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<Object> handleResourceNotFoundException(ResourceNotFoundException ex, ServerWebExchange exchange) {
+        return buildErrorResponse(ex, HttpStatus.NOT_FOUND, exchange);
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<Object> handleBadRequestException(BadRequestException ex, ServerWebExchange exchange) {
+        return buildErrorResponse(ex, HttpStatus.BAD_REQUEST, exchange);
+    }
+
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<Object> handleAuthenticationException(AuthenticationException ex, ServerWebExchange exchange) {
+        return buildErrorResponse(ex, HttpStatus.UNAUTHORIZED, exchange);
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<Object> handleAccessDeniedException(AccessDeniedException ex, ServerWebExchange exchange) {
+        return buildErrorResponse(ex, HttpStatus.FORBIDDEN, exchange);
+    }
+
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<Object> handleUpstreamOverloadedException(UpstreamOverloadedException ex, ServerWebExchange exchange) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(ex.getRetryAfter().toSeconds(), 1)))
+                .body(GlobalExceptionHandler.errorBody(ex, HttpStatus.SERVICE_UNAVAILABLE, path(exchange)));
+    }
+
+    @ExceptionHandler(IOException.class)
+    public ResponseEntity<Object> handleIOException(IOException ex, ServerWebExchange exchange) {
+        return buildErrorResponse(ex, HttpStatus.INTERNAL_SERVER_ERROR, exchange);
+    }
+
+    private ResponseEntity<Object> buildErrorResponse(Exception ex, HttpStatus status, ServerWebExchange exchange) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GlobalExceptionHandler.errorBody(ex, status, path(exchange)));
+    }
+
+    private static String path(ServerWebExchange exchange) {
+        return exchange.getRequest().getPath().value();
+    }
+}
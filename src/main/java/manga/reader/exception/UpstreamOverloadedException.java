@@ -0,0 +1,22 @@
+package manga.reader.exception;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * An upstream request was rejected because its bulkhead is full. An {@link IOException} so that it
+ * takes the same paths as any other failed upstream request (stale fallbacks, missing pages).
+ */
+public class UpstreamOverloadedException extends IOException {
+
+    private final Duration retryAfter;
+
+    public UpstreamOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
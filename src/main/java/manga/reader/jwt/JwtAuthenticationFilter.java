@@ -1,27 +1,34 @@
 package manga.reader.jwt;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
+    private final Timer authenticatedTimer;
+    private final Timer rejectedTimer;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, MeterRegistry meterRegistry) {
         this.jwtUtil = jwtUtil;
+        this.authenticatedTimer = timer(meterRegistry, "authenticated");
+        this.rejectedTimer = timer(meterRegistry, "rejected");
     }
 
     @Override
@@ -33,33 +40,37 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        String jwtToken = requestTokenHeader.substring(7);
-        if (!jwtUtil.validateToken(jwtToken)) {
+        boolean authenticationIsSet = SecurityContextHolder.getContext().getAuthentication() != null;
+        if (authenticationIsSet) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        String username = jwtUtil.getUsernameFromToken(jwtToken);
-        String role = jwtUtil.getRoleFromToken(jwtToken);
-        boolean authenticationIsSet = SecurityContextHolder.getContext().getAuthentication() != null;
-        if (username == null || authenticationIsSet) {
+        // Only the filter's own work is timed, not the rest of the chain
+        long started = System.nanoTime();
+        // One signature check per token, not per request: repeated tokens come from the verified cache
+        Optional<VerifiedToken> verified = jwtUtil.verify(requestTokenHeader.substring(7));
+        if (verified.isEmpty()) {
+            rejectedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
             filterChain.doFilter(request, response);
             return;
         }
 
-        // Create authorities list based on role
-        List<SimpleGrantedAuthority> authorities = new ArrayList<>();
-        if (role != null && !role.isEmpty()) {
-            authorities.add(new SimpleGrantedAuthority(role.toUpperCase()));
-        }
-
-        UsernamePasswordAuthenticationToken authToken =
-                new UsernamePasswordAuthenticationToken(username, null, authorities);
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                verified.get().username(), null, verified.get().authorities());
         authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
         // After setting the Authentication in the context, we specify
         // that the current user is authenticated. So it passes the Spring Security Configurations successfully.
         SecurityContextHolder.getContext().setAuthentication(authToken);
+        authenticatedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         filterChain.doFilter(request, response);
     }
+
+    static Timer timer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("auth.jwt.filter")
+                .description("Time to verify a bearer token and set the authentication")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
\ No newline at end of file
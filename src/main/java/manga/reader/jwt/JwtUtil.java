@@ -1,15 +1,27 @@
 package manga.reader.jwt;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import manga.reader.config.JwtProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 @Component
@@ -18,8 +30,78 @@ public class JwtUtil {
     private static final String SECRET = "mySecretKeymySecretKeymySecretKeymySecretKey"; // 256-bit key
     private static final int JWT_TOKEN_VALIDITY = 1 * 60; // 30 minutes (configurable timeout)
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(SECRET.getBytes());
+    // Both are immutable and thread-safe, so they are built once rather than per token
+    private final Key signingKey = Keys.hmacShaKeyFor(SECRET.getBytes());
+    private final JwtParser parser;
+    private final Clock clock;
+
+    /** Verified tokens until they expire, null when disabled. */
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    @Autowired
+    public JwtUtil(JwtProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    JwtUtil(JwtProperties properties, Clock clock) {
+        this.clock = clock;
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .setClock(() -> Date.from(clock.instant()))
+                .build();
+        this.verifiedTokens = properties.tokenCacheSize() > 0
+                ? Caffeine.newBuilder()
+                        .maximumSize(properties.tokenCacheSize())
+                        .expireAfter(new UntilTokenExpiry(clock))
+                        .build()
+                : null;
+    }
+
+    /**
+     * Checks the signature and expiry of a bearer token with a single parse, or not at all when the
+     * same token was verified before and has not expired since.
+     *
+     * @return the token's principal, or empty if the token is invalid, expired or has no subject
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        if (verifiedTokens != null) {
+            VerifiedToken cached = verifiedTokens.getIfPresent(token);
+            if (cached != null) {
+                // Entries are dropped at expiry, this covers a lookup racing the cleanup
+                return cached.expiresAt().isAfter(clock.instant()) ? Optional.of(cached) : Optional.empty();
+            }
+        }
+
+        Claims claims;
+        try {
+            claims = getAllClaimsFromToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (claims.getSubject() == null || claims.getExpiration() == null) {
+            return Optional.empty();
+        }
+
+        String role = claims.get("role", String.class);
+        List<SimpleGrantedAuthority> authorities = role != null && !role.isEmpty()
+                ? List.of(new SimpleGrantedAuthority(role.toUpperCase()))
+                : List.of();
+        VerifiedToken verified = new VerifiedToken(claims.getSubject(), authorities, claims.getExpiration().toInstant());
+        if (verifiedTokens != null) {
+            verifiedTokens.put(token, verified);
+        }
+        return Optional.of(verified);
+    }
+
+    /**
+     * @return number of verified tokens currently remembered
+     */
+    long cachedTokens() {
+        if (verifiedTokens == null) {
+            return 0;
+        }
+        verifiedTokens.cleanUp();
+        return verifiedTokens.estimatedSize();
     }
 
     public String getUsernameFromToken(String token) {
@@ -36,11 +118,7 @@ public class JwtUtil {
     }
 
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
     private Boolean isTokenExpired(String token) {
@@ -69,7 +147,7 @@ public class JwtUtil {
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY * 1000))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -85,4 +163,22 @@ public class JwtUtil {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    private record UntilTokenExpiry(Clock clock) implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String token, VerifiedToken verified, long currentTime) {
+            return Math.max(Duration.between(clock.instant(), verified.expiresAt()).toNanos(), 0);
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, verified, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package manga.reader.jwt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reactive counterpart of {@link JwtAuthenticationFilter}. Verification only touches the token
+ * cache or checks an HMAC, so it runs on the event loop. Not a bean, so that WebFlux does not also
+ * add it to its own filter chain.
+ */
+public class ReactiveJwtAuthenticationFilter implements WebFilter {
+
+    private final JwtUtil jwtUtil;
+    private final Timer authenticatedTimer;
+    private final Timer rejectedTimer;
+
+    public ReactiveJwtAuthenticationFilter(JwtUtil jwtUtil, MeterRegistry meterRegistry) {
+        this.jwtUtil = jwtUtil;
+        this.authenticatedTimer = JwtAuthenticationFilter.timer(meterRegistry, "authenticated");
+        this.rejectedTimer = JwtAuthenticationFilter.timer(meterRegistry, "rejected");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String requestTokenHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (requestTokenHeader == null || !requestTokenHeader.startsWith("Bearer ")) {
+            return chain.filter(exchange);
+        }
+
+        long started = System.nanoTime();
+        Optional<VerifiedToken> verified = jwtUtil.verify(requestTokenHeader.substring(7));
+        if (verified.isEmpty()) {
+            rejectedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return chain.filter(exchange);
+        }
+
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                verified.get().username(), null, verified.get().authorities());
+        authenticatedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return chain.filter(exchange).contextWrite(ReactiveSecurityContextHolder.withAuthentication(authToken));
+    }
+}
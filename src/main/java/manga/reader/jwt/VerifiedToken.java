@@ -0,0 +1,16 @@
+package manga.reader.jwt;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Principal of a bearer token whose signature and expiry have been checked.
+ *
+ * @param username token subject
+ * @param authorities granted from the token's role claim
+ * @param expiresAt when the token stops being accepted
+ */
+public record VerifiedToken(String username, List<SimpleGrantedAuthority> authorities, Instant expiresAt) {
+}
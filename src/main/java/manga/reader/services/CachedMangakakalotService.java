@@ -0,0 +1,369 @@
+package manga.reader.services;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.CacheProperties;
+import manga.reader.config.SerializedScrapeResults;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.ScrapeResult;
+import manga.reader.dto.SearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.reflect.RecordComponent;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Caching front for {@link MangakakalotService}.
+ * Each endpoint gets its own bounded cache (W-TinyLFU eviction weighted by the approximate
+ * heap size of the response and of its serialized bytes) with its own TTL. Entries older than the
+ * refresh interval are still served while a background reload replaces them (stale-while-revalidate).
+ * Loads serialize and compress the result before it is cached, see {@link SerializedScrapeResults}.
+ * Loads run on virtual threads and callers wait on the returned future, so a blocking scrape
+ * never runs inside the cache's internal locks and never pins a carrier thread.
+ * Every successful load also feeds the {@link MangaSearchIndex}, which answers searches it is
+ * confident about before they reach the search cache or upstream. Latest feed pages are served
+ * from the {@link LatestMangaCrawler} while its last crawl is recent enough.
+ * Manga pages missing from the cache are read from the {@link MangaMetadataStore} before going
+ * upstream; a stored page past its freshness is still returned while it is scraped again in the background.
+ * The {@code ...Async} variants return the load's future instead of waiting, for the reactive stack.
+ */
+@Service
+public class CachedMangakakalotService {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedMangakakalotService.class);
+
+    private final MangakakalotService mangakakalotService;
+    private final MangaSearchIndex searchIndex;
+    private final LatestMangaCrawler latestMangaCrawler;
+    private final MangaMetadataStore metadataStore;
+    private final ImageMirrors imageMirrors;
+    private final SerializedScrapeResults serializedResults;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final ExecutorService loadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AsyncLoadingCache<Integer, LatestMangaResult> latestCache;
+    private final AsyncLoadingCache<SearchKey, SearchResult> searchCache;
+    private final AsyncLoadingCache<String, MangaInfoResult> mangaInfoCache;
+    private final AsyncLoadingCache<String, ChapterResult> chapterCache;
+
+    public CachedMangakakalotService(MangakakalotService mangakakalotService,
+                                     MangaSearchIndex searchIndex,
+                                     LatestMangaCrawler latestMangaCrawler,
+                                     MangaMetadataStore metadataStore,
+                                     ImageMirrors imageMirrors,
+                                     SerializedScrapeResults serializedResults,
+                                     CacheProperties properties,
+                                     MeterRegistry meterRegistry) {
+        this.mangakakalotService = mangakakalotService;
+        this.searchIndex = searchIndex;
+        this.latestMangaCrawler = latestMangaCrawler;
+        this.metadataStore = metadataStore;
+        this.imageMirrors = imageMirrors;
+        this.serializedResults = serializedResults;
+
+        this.latestCache = buildCache("manga.latest", properties.latest(), meterRegistry, this::loadLatest);
+        this.searchCache = buildCache("manga.search", properties.search(), meterRegistry, this::loadSearch);
+        this.mangaInfoCache = buildCache("manga.info", properties.mangaInfo(), meterRegistry, this::loadMangaInfo);
+        this.chapterCache = buildCache("manga.chapter", properties.chapter(), meterRegistry, this::loadChapter);
+    }
+
+    public LatestMangaResult latestManga(int page) throws IOException {
+        Optional<LatestMangaResult> crawled = latestMangaCrawler.page(page);
+        if (crawled.isPresent()) {
+            return crawled.get();
+        }
+        return get(latestCache, page, this::loadLatest);
+    }
+
+    public SearchResult search(String query, int page) throws IOException {
+        page = Math.max(page, 1);
+        Optional<SearchResult> indexed = searchIndex.search(query, page);
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
+        return get(searchCache, new SearchKey(query, page), this::loadSearch);
+    }
+
+    public MangaInfoResult mangaInfo(String mangaId) throws IOException {
+        return get(mangaInfoCache, mangaId, this::loadMangaInfo);
+    }
+
+    public ChapterResult fetchChapter(String chapterPath) throws IOException {
+        return get(chapterCache, chapterPath, this::loadChapter);
+    }
+
+    public CompletableFuture<LatestMangaResult> latestMangaAsync(int page) {
+        Optional<LatestMangaResult> crawled = latestMangaCrawler.page(page);
+        if (crawled.isPresent()) {
+            return CompletableFuture.completedFuture(crawled.get());
+        }
+        return getAsync(latestCache, page, this::loadLatest);
+    }
+
+    public CompletableFuture<SearchResult> searchAsync(String query, int page) {
+        int searchPage = Math.max(page, 1);
+        Optional<SearchResult> indexed = searchIndex.search(query, searchPage);
+        if (indexed.isPresent()) {
+            return CompletableFuture.completedFuture(indexed.get());
+        }
+        return getAsync(searchCache, new SearchKey(query, searchPage), this::loadSearch);
+    }
+
+    public CompletableFuture<MangaInfoResult> mangaInfoAsync(String mangaId) {
+        return getAsync(mangaInfoCache, mangaId, this::loadMangaInfo);
+    }
+
+    /**
+     * Same as {@link #fetchChapter}, handing each page to {@code pages} as it becomes available. A
+     * cached chapter is replayed from the cache. Otherwise the chapter's scrape is started or joined,
+     * and registered as the chapter cache's load for the chapter, so that concurrent streams and
+     * fetches of it share one scrape; mirrors are registered page by page as the pages are handed over.
+     */
+    public ChapterResult streamChapter(String chapterPath, Consumer<ChapterPage> pages) throws IOException {
+        CompletableFuture<ChapterResult> cached = chapterCache != null ? chapterCache.getIfPresent(chapterPath) : null;
+        if (cached != null && cached.isDone()) {
+            ChapterResult chapter = get(chapterCache, chapterPath, this::loadChapter);
+            chapter.pages().forEach(pages);
+            return chapter;
+        }
+
+        MangakakalotService.ChapterStream stream = mangakakalotService.streamChapter(chapterPath);
+        if (chapterCache != null) {
+            chapterCache.asMap().putIfAbsent(chapterPath, stream.result().thenApply(chapter -> {
+                registerMirrors(chapter);
+                serializedResults.keep(chapter);
+                return chapter;
+            }));
+        }
+        return stream.replay(page -> {
+            imageMirrors.register(page.primaryImg(), page.secondaryImg());
+            pages.accept(page);
+        });
+    }
+
+    public CompletableFuture<ChapterResult> fetchChapterAsync(String chapterPath) {
+        return getAsync(chapterCache, chapterPath, this::loadChapter);
+    }
+
+    private ChapterResult loadChapter(String chapterPath) throws IOException {
+        return registerMirrors(mangakakalotService.fetchChapter(chapterPath));
+    }
+
+    private ChapterResult registerMirrors(ChapterResult chapter) {
+        for (ChapterPage page : chapter.pages()) {
+            imageMirrors.register(page.primaryImg(), page.secondaryImg());
+        }
+        return chapter;
+    }
+
+    private LatestMangaResult loadLatest(int page) throws IOException {
+        LatestMangaResult latest = mangakakalotService.latestManga(page);
+        searchIndex.addLatest(latest);
+        return latest;
+    }
+
+    private SearchResult loadSearch(SearchKey key) throws IOException {
+        SearchResult search = mangakakalotService.search(key.query(), key.page());
+        searchIndex.addSearchResults(search);
+        return search;
+    }
+
+    private MangaInfoResult loadMangaInfo(String mangaId) throws IOException {
+        Optional<MangaMetadataStore.Stored> stored = metadataStore.get(mangaId);
+        if (stored.isPresent() && metadataStore.isServable(stored.get())) {
+            if (!metadataStore.isFresh(stored.get())) {
+                revalidateMangaInfo(mangaId);
+            }
+            return stored.get().mangaInfo();
+        }
+        return scrapeMangaInfo(mangaId);
+    }
+
+    private MangaInfoResult scrapeMangaInfo(String mangaId) throws IOException {
+        MangaInfoResult mangaInfo = mangakakalotService.mangaInfo(mangaId);
+        if (!mangaInfo.title().isEmpty()) {
+            searchIndex.addMangaInfo(mangaId, mangaInfo);
+            metadataStore.put(mangaId, mangaInfo);
+        }
+        return mangaInfo;
+    }
+
+    private void revalidateMangaInfo(String mangaId) {
+        if (!revalidating.add(mangaId)) {
+            return;
+        }
+        loadExecutor.execute(() -> {
+            try {
+                MangaInfoResult mangaInfo = scrapeMangaInfo(mangaId);
+                if (mangaInfoCache != null && !mangaInfo.title().isEmpty()) {
+                    serializedResults.keep(mangaInfo);
+                    mangaInfoCache.synchronous().put(mangaId, mangaInfo);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Revalidating stored manga {} failed: {}", mangaId, e.getMessage());
+            } finally {
+                revalidating.remove(mangaId);
+            }
+        });
+    }
+
+    /**
+     * Indexes the stored manga for search once the application is serving, without delaying readiness.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!metadataStore.isEnabled()) {
+            return;
+        }
+        loadExecutor.execute(() -> {
+            long started = System.nanoTime();
+            int[] count = new int[1];
+            try {
+                metadataStore.forEach((mangaId, stored) -> {
+                    searchIndex.addMangaInfo(mangaId, stored.mangaInfo());
+                    count[0]++;
+                });
+                log.info("Indexed {} stored manga in {} ms", count[0], (System.nanoTime() - started) / 1_000_000);
+            } catch (RuntimeException e) {
+                log.warn("Loading stored manga failed after {} entries: {}", count[0], e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loadExecutor.shutdownNow();
+    }
+
+    private <K, V extends ScrapeResult> AsyncLoadingCache<K, V> buildCache(String name,
+                                                     CacheProperties.Endpoint endpoint,
+                                                     MeterRegistry meterRegistry,
+                                                     Loader<K, V> loader) {
+        if (!endpoint.enabled()) {
+            return null;
+        }
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .executor(loadExecutor)
+                .recordStats();
+        if (endpoint.maximumSize() != null) {
+            builder.maximumWeight(endpoint.maximumSize().toBytes())
+                    .weigher((Object key, Object value) -> (int) Math.min(
+                            estimateSize(value) + serializedResults.weight((ScrapeResult) value), Integer.MAX_VALUE));
+        }
+        if (endpoint.expireAfterWrite() != null) {
+            builder.expireAfterWrite(endpoint.expireAfterWrite());
+        }
+        if (endpoint.refreshAfterWrite() != null) {
+            builder.refreshAfterWrite(endpoint.refreshAfterWrite());
+        }
+
+        // Serialized before the result is weighed and inserted, and never on a request thread
+        AsyncLoadingCache<K, V> cache = builder.buildAsync(key -> {
+            V value = loader.load(key);
+            serializedResults.keep(value);
+            return value;
+        });
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), name);
+        return cache;
+    }
+
+    private <K, V> V get(AsyncLoadingCache<K, V> cache, K key, Loader<K, V> loader) throws IOException {
+        if (cache == null) {
+            return loader.load(key);
+        }
+
+        try {
+            return cache.get(key).join();
+        } catch (CompletionException e) {
+            // Caffeine wraps checked loader exceptions
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #get} without waiting; an uncached endpoint is loaded on a virtual thread.
+     * Loader exceptions complete the future wrapped in a {@link CompletionException}.
+     */
+    private <K, V> CompletableFuture<V> getAsync(AsyncLoadingCache<K, V> cache, K key, Loader<K, V> loader) {
+        if (cache != null) {
+            return cache.get(key);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader.load(key);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, loadExecutor);
+    }
+
+    /**
+     * Rough retained size in bytes of a scraped response made of records, maps, lists, strings and numbers.
+     */
+    static long estimateSize(Object value) {
+        if (value instanceof String string) {
+            return 40L + 2L * string.length();
+        }
+        if (value instanceof Record record) {
+            RecordComponent[] components = record.getClass().getRecordComponents();
+            long size = 16L + 8L * components.length;
+            for (RecordComponent component : components) {
+                try {
+                    size += estimateSize(component.getAccessor().invoke(record));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot read " + component, e);
+                }
+            }
+            return size;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = 48L + 36L * map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = 40L + 8L * collection.size();
+            for (Object element : collection) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 16L;
+    }
+
+    @FunctionalInterface
+    private interface Loader<K, V> {
+        V load(K key) throws IOException;
+    }
+
+    private record SearchKey(String query, int page) {}
+}
@@ -0,0 +1,179 @@
+package manga.reader.services;
+
+import manga.reader.config.BundleProperties;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.services.HotImageStore.HotImage;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams all pages of a chapter as a single CBZ (ZIP) archive.
+ * Pages are fetched in parallel but written in page order, with at most {@code reader.bundle.window}
+ * pages fetched ahead, so memory use does not grow with the chapter length. A page whose primary
+ * image fails is taken from the chapter's secondary image list instead.
+ */
+@Service
+public class ChapterBundleService {
+
+    private final ImageDownloadService imageDownloadService;
+    private final BundleProperties properties;
+
+    public ChapterBundleService(ImageDownloadService imageDownloadService, BundleProperties properties) {
+        this.imageDownloadService = imageDownloadService;
+        this.properties = properties;
+    }
+
+    /**
+     * Writes the chapter's pages as a CBZ archive. Pages that cannot be fetched from either mirror
+     * are left out and listed in a trailing {@code MISSING.txt} entry.
+     *
+     * @param chapter the {@code fetchChapter} result
+     * @param out stream receiving the archive
+     * @throws IOException if writing to {@code out} fails
+     */
+    public void writeBundle(ChapterResult chapter, OutputStream out) throws IOException {
+        List<ChapterPage> chapterPages = chapter.pages();
+        int pages = chapterPages.size();
+        int digits = Math.max(3, String.valueOf(pages).length());
+        int window = Math.max(properties.window(), 1);
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // Page images are already compressed, deflating them again only costs CPU
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        List<Integer> missing = new ArrayList<>();
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Deque<PendingPage> inFlight = new ArrayDeque<>(window);
+        try {
+            // Pages are written from the store's buffers, through the channel's small copy buffer
+            WritableByteChannel entry = Channels.newChannel(zip);
+            int submitted = 0;
+            for (int page = 0; page < pages; page++) {
+                while (submitted < pages && submitted < page + window) {
+                    ChapterPage chapterPage = chapterPages.get(submitted);
+                    inFlight.add(new PendingPage(executor,
+                            () -> fetchPage(chapterPage.primaryImg(), chapterPage.secondaryImg())));
+                    submitted++;
+                }
+
+                HotImage image = open(inFlight.poll());
+                if (image == null) {
+                    missing.add(page + 1);
+                    continue;
+                }
+                try (image) {
+                    zip.putNextEntry(new ZipEntry(pageName(page + 1, digits, chapterPages.get(page).primaryImg())));
+                    for (ByteBuffer buffer : image.buffers()) {
+                        while (buffer.hasRemaining()) {
+                            entry.write(buffer);
+                        }
+                    }
+                    zip.closeEntry();
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                zip.putNextEntry(new ZipEntry("MISSING.txt"));
+                zip.write(("Pages that could not be downloaded: " + missing + "\n").getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            // Stops outstanding fetches when the client went away midway
+            inFlight.forEach(PendingPage::abandon);
+            executor.shutdownNow();
+        }
+    }
+
+    private HotImage fetchPage(String primaryUrl, String fallbackUrl) throws IOException {
+        try {
+            return imageDownloadService.downloadImage(primaryUrl, ImageDownloadService.DEFAULT_REFERER);
+        } catch (IOException e) {
+            if (fallbackUrl == null) {
+                throw e;
+            }
+            return imageDownloadService.downloadImage(fallbackUrl, ImageDownloadService.DEFAULT_REFERER);
+        }
+    }
+
+    /**
+     * @return the page's image, which the caller must close, or null if the page could not be fetched in time
+     */
+    private HotImage open(PendingPage page) throws IOException {
+        try {
+            return page.image.get(properties.pageTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            page.abandon();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while bundling chapter");
+        } catch (TimeoutException e) {
+            page.abandon();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private static String pageName(int page, int digits, String imageUrl) {
+        String extension = "jpg";
+        int dot = imageUrl.lastIndexOf('.');
+        if (dot > imageUrl.lastIndexOf('/') && imageUrl.length() - dot <= 5) {
+            extension = imageUrl.substring(dot + 1).toLowerCase();
+        }
+        return String.format("%0" + digits + "d.%s", page, extension);
+    }
+
+    /**
+     * A page being fetched. Its image is closed by whichever side finishes last: the bundle once the
+     * page is written, or the fetch when the bundle already gave up on the page.
+     */
+    private static final class PendingPage {
+
+        final CompletableFuture<HotImage> image = new CompletableFuture<>();
+        private final Future<?> fetch;
+
+        PendingPage(ExecutorService executor, Callable<HotImage> fetchPage) {
+            this.fetch = executor.submit(() -> {
+                try {
+                    HotImage fetched = fetchPage.call();
+                    if (!image.complete(fetched)) {
+                        fetched.close();
+                    }
+                } catch (Exception e) {
+                    image.completeExceptionally(e);
+                }
+            });
+        }
+
+        void abandon() {
+            fetch.cancel(true);
+            if (!image.cancel(false) && !image.isCompletedExceptionally()) {
+                image.join().close();
+            }
+        }
+    }
+}
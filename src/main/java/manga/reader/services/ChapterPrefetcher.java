@@ -0,0 +1,158 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.PrefetchProperties;
+import manga.reader.dto.ChapterResult;
+import manga.reader.upstream.UpstreamClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-ahead for chapters: once a reader opens a chapter, the first page images are warmed into
+ * the image cache and the next chapter's scrape into the response cache.
+ * Work runs on a few low-priority threads behind a bounded queue. A task only touches upstream when
+ * no live request is waiting for a connection slot, and when the queue is full the oldest pending
+ * task is dropped in favour of the newest chapter.
+ */
+@Service
+public class ChapterPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ChapterPrefetcher.class);
+
+    private final PrefetchProperties properties;
+    private final CachedMangakakalotService mangakakalotService;
+    private final ImageDownloadService imageDownloadService;
+    private final UpstreamClient upstreamClient;
+    private final ThreadPoolExecutor executor;
+
+    private final Counter completed;
+    private final Counter failed;
+    private final Counter skipped;
+    private final Counter dropped;
+
+    public ChapterPrefetcher(PrefetchProperties properties,
+                             CachedMangakakalotService mangakakalotService,
+                             ImageDownloadService imageDownloadService,
+                             UpstreamClient upstreamClient,
+                             MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.mangakakalotService = mangakakalotService;
+        this.imageDownloadService = imageDownloadService;
+        this.upstreamClient = upstreamClient;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.threads(), properties.threads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(properties.queueCapacity(), 1)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chapter-prefetch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                this::dropOldest);
+
+        this.completed = Counter.builder("prefetch.tasks").tag("outcome", "completed").register(meterRegistry);
+        this.failed = Counter.builder("prefetch.tasks").tag("outcome", "failed").register(meterRegistry);
+        this.skipped = Counter.builder("prefetch.tasks").tag("outcome", "skipped").register(meterRegistry);
+        this.dropped = Counter.builder("prefetch.tasks").tag("outcome", "dropped").register(meterRegistry);
+        Gauge.builder("prefetch.queue.size", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+    }
+
+    /**
+     * Schedules read-ahead for a chapter that has just been served.
+     *
+     * @param mangaId manga the chapter belongs to
+     * @param chapter the {@code fetchChapter} result
+     */
+    public void prefetchAfter(String mangaId, ChapterResult chapter) {
+        if (!properties.enabled()) {
+            return;
+        }
+
+        if (imageDownloadService.isDiskCacheEnabled()) {
+            List<String> images = chapter.primaryImgs();
+            for (String imageUrl : images.subList(0, Math.min(properties.images(), images.size()))) {
+                submit(UpstreamClient.Bulkhead.IMAGE, () -> imageDownloadService.downloadImageWithCaching(imageUrl, ImageDownloadService.DEFAULT_REFERER));
+            }
+        }
+
+        if (properties.nextChapter()) {
+            nextChapter(chapter.chapters(), chapter.currentChapter())
+                    .ifPresent(next -> submit(UpstreamClient.Bulkhead.SCRAPE, () -> mangakakalotService.fetchChapter(mangaId + "/chapter-" + next)));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the lowest chapter number above the current one, chapters being sorted in descending order
+     */
+    static Optional<String> nextChapter(List<String> chapters, String currentChapter) {
+        if (chapters == null || currentChapter == null) {
+            return Optional.empty();
+        }
+        float current;
+        try {
+            current = Float.parseFloat(currentChapter);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        String next = null;
+        for (String chapter : chapters) {
+            if (Float.parseFloat(chapter) <= current) {
+                break;
+            }
+            next = chapter;
+        }
+        return Optional.ofNullable(next);
+    }
+
+    private void submit(UpstreamClient.Bulkhead bulkhead, PrefetchTask task) {
+        executor.execute(() -> {
+            if (!upstreamClient.hasSpareCapacity(bulkhead, properties.reservedConnections())) {
+                skipped.increment();
+                return;
+            }
+            try {
+                task.run();
+                completed.increment();
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+                log.debug("Prefetch failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    private void dropOldest(Runnable task, ThreadPoolExecutor pool) {
+        if (pool.isShutdown()) {
+            return;
+        }
+        if (pool.getQueue().poll() != null) {
+            dropped.increment();
+        }
+        if (!pool.getQueue().offer(task)) {
+            dropped.increment();
+        }
+    }
+
+    @FunctionalInterface
+    private interface PrefetchTask {
+        void run() throws IOException;
+    }
+}
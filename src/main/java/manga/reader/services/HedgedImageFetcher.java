@@ -0,0 +1,320 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.HedgingProperties;
+import manga.reader.exception.UpstreamOverloadedException;
+import manga.reader.upstream.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Fetches chapter images from whichever of their two mirrors answers first.
+ * <p>
+ * The primary URL is fetched first. If it has not completed after the configured percentile of
+ * recent image fetch times, the secondary mirror from {@link ImageMirrors} is fetched as well, the
+ * first successful response wins and the other request is cancelled. A primary that fails outright
+ * falls back to the secondary, like the reader page's {@code onerror} handler does.
+ * <p>
+ * Each host has a {@link CircuitBreaker}: a host that keeps failing is skipped in favour of the
+ * other mirror until it has had time to recover.
+ */
+@Component
+public class HedgedImageFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgedImageFetcher.class);
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_SAMPLES = 20;
+
+    private final HedgingProperties properties;
+    private final ImageMirrors mirrors;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final Timer fetchTimer;
+    private final Counter hedges;
+    private final Counter secondaryWins;
+    private final Counter fallbacks;
+    private final Counter skippedHosts;
+    private final MeterRegistry meterRegistry;
+
+    private volatile long hedgeDelayNanos;
+    private volatile long hedgeDelayComputedAt = System.nanoTime() - DELAY_REFRESH_NANOS;
+
+    public HedgedImageFetcher(HedgingProperties properties, ImageMirrors mirrors, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.mirrors = mirrors;
+        this.meterRegistry = meterRegistry;
+        this.fetchTimer = Timer.builder("images.fetch")
+                .description("Time to fetch a whole image from one mirror")
+                .publishPercentiles(properties.percentile())
+                .register(meterRegistry);
+        this.hedges = Counter.builder("images.hedge").tag("event", "hedged").register(meterRegistry);
+        this.secondaryWins = Counter.builder("images.hedge").tag("event", "secondary-won").register(meterRegistry);
+        this.fallbacks = Counter.builder("images.hedge").tag("event", "fallback").register(meterRegistry);
+        this.skippedHosts = Counter.builder("images.hedge").tag("event", "host-skipped").register(meterRegistry);
+    }
+
+    /**
+     * Whether an image has a known secondary mirror to hedge with.
+     */
+    public boolean hasMirror(String imageUrl) {
+        return properties.enabled() && mirrors.secondaryOf(imageUrl) != null;
+    }
+
+    /**
+     * Fetches an image, hedged across its mirrors when one is known.
+     *
+     * @param imageUrl primary image URL
+     * @param fetch single fetch of one URL; must be interruptible so that the losing request can be cancelled
+     */
+    public <T> T fetch(String imageUrl, Fetch<T> fetch) throws IOException {
+        return fetch(imageUrl, fetch, value -> {
+        });
+    }
+
+    /**
+     * Same as {@link #fetch(String, Fetch)} for results that hold resources: a losing request that
+     * still completes has its result handed to {@code discard} instead of dropping it.
+     */
+    public <T> T fetch(String imageUrl, Fetch<T> fetch, Consumer<? super T> discard) throws IOException {
+        String secondaryUrl = properties.enabled() ? mirrors.secondaryOf(imageUrl) : null;
+        CircuitBreaker primaryBreaker = breaker(imageUrl);
+        if (secondaryUrl == null) {
+            // Nothing to fall back to, the breaker is only kept up to date
+            primaryBreaker.tryAcquire();
+            return run(imageUrl, fetch, primaryBreaker);
+        }
+
+        CircuitBreaker secondaryBreaker = breaker(secondaryUrl);
+        if (!primaryBreaker.tryAcquire()) {
+            skippedHosts.increment();
+            secondaryBreaker.tryAcquire();
+            return run(secondaryUrl, fetch, secondaryBreaker);
+        }
+
+        Outcomes<T> outcomes = new Outcomes<>(discard);
+        Future<?> primary = race(imageUrl, fetch, primaryBreaker, false, outcomes);
+        Future<?> secondary = null;
+        try {
+            Outcome<T> outcome = outcomes.poll(hedgeDelayNanos());
+            if (outcome == null) {
+                if (secondaryBreaker.tryAcquire()) {
+                    hedges.increment();
+                    secondary = race(secondaryUrl, fetch, secondaryBreaker, true, outcomes);
+                } else {
+                    skippedHosts.increment();
+                }
+                outcome = outcomes.take();
+            } else if (outcome.failure() != null) {
+                if (secondaryBreaker.tryAcquire()) {
+                    fallbacks.increment();
+                    secondary = race(secondaryUrl, fetch, secondaryBreaker, true, outcomes);
+                } else {
+                    skippedHosts.increment();
+                }
+            }
+
+            int pending = secondary != null ? 1 : 0;
+            Exception failure = null;
+            while (true) {
+                if (outcome.failure() == null) {
+                    if (outcome.secondary()) {
+                        secondaryWins.increment();
+                    }
+                    return outcome.value();
+                }
+                if (failure == null) {
+                    failure = outcome.failure();
+                } else {
+                    failure.addSuppressed(outcome.failure());
+                }
+                if (pending-- == 0) {
+                    throw rethrow(failure);
+                }
+                outcome = outcomes.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + imageUrl);
+        } finally {
+            // Interrupts the request still running, which aborts its exchange
+            primary.cancel(true);
+            if (secondary != null) {
+                secondary.cancel(true);
+            }
+            outcomes.settle();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Future<?> race(String url, Fetch<T> fetch, CircuitBreaker breaker, boolean secondary,
+                               Outcomes<T> outcomes) {
+        return executor.submit(() -> {
+            T value;
+            try {
+                value = run(url, fetch, breaker);
+            } catch (IOException | RuntimeException e) {
+                outcomes.add(new Outcome<>(null, e, secondary));
+                return;
+            }
+            outcomes.add(new Outcome<>(value, null, secondary));
+        });
+    }
+
+    private <T> T run(String url, Fetch<T> fetch, CircuitBreaker breaker) throws IOException {
+        long started = System.nanoTime();
+        try {
+            T result = fetch.fetch(url);
+            fetchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            breaker.onSuccess();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() || !isHostFailure(e)) {
+                breaker.onIgnored();
+            } else if (breaker.onFailure()) {
+                log.warn("Image host {} is failing, skipping it for {}", host(url), properties.openDuration());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Client errors other than 429 (a missing page, a bad URL) and our own bulkhead being full say
+     * nothing about the host's health.
+     */
+    private static boolean isHostFailure(Exception e) {
+        if (e instanceof UpstreamOverloadedException) {
+            return false;
+        }
+        if (e instanceof HttpClientErrorException clientError) {
+            return clientError.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return true;
+    }
+
+    private long hedgeDelayNanos() {
+        long now = System.nanoTime();
+        if (now - hedgeDelayComputedAt < DELAY_REFRESH_NANOS) {
+            return hedgeDelayNanos;
+        }
+
+        long delay = properties.initialDelay().toNanos();
+        if (fetchTimer.count() >= MIN_SAMPLES) {
+            for (ValueAtPercentile value : fetchTimer.takeSnapshot().percentileValues()) {
+                if (value.value() > 0) {
+                    delay = (long) value.value(TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        hedgeDelayNanos = Math.max(delay, properties.minDelay().toNanos());
+        hedgeDelayComputedAt = now;
+        return hedgeDelayNanos;
+    }
+
+    private CircuitBreaker breaker(String url) {
+        return breakers.computeIfAbsent(host(url), host -> {
+            CircuitBreaker breaker = new CircuitBreaker(properties.failureThreshold(), properties.openDuration());
+            meterRegistry.gauge("images.host.open", Tags.of("host", host), breaker,
+                    b -> b.state() == CircuitBreaker.State.OPEN ? 1 : 0);
+            return breaker;
+        });
+    }
+
+    private static String host(String url) {
+        try {
+            String host = URI.create(url.trim()).getHost();
+            return host != null ? host : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private static IOException rethrow(Exception failure) {
+        if (failure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return (IOException) failure;
+    }
+
+    @FunctionalInterface
+    public interface Fetch<T> {
+        T fetch(String url) throws IOException;
+    }
+
+    private record Outcome<T>(T value, Exception failure, boolean secondary) {
+    }
+
+    /**
+     * Results of one hedged fetch. Once the fetch has returned, results still arriving or left
+     * untaken are discarded.
+     */
+    private static final class Outcomes<T> {
+
+        private final BlockingQueue<Outcome<T>> queue = new LinkedBlockingQueue<>();
+        private final Consumer<? super T> discard;
+        private boolean settled;
+
+        Outcomes(Consumer<? super T> discard) {
+            this.discard = discard;
+        }
+
+        void add(Outcome<T> outcome) {
+            synchronized (this) {
+                if (!settled) {
+                    queue.add(outcome);
+                    return;
+                }
+            }
+            if (outcome.failure() == null) {
+                discard.accept(outcome.value());
+            }
+        }
+
+        Outcome<T> poll(long timeoutNanos) throws InterruptedException {
+            return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        Outcome<T> take() throws InterruptedException {
+            return queue.take();
+        }
+
+        void settle() {
+            List<Outcome<T>> left = new ArrayList<>();
+            synchronized (this) {
+                settled = true;
+                queue.drainTo(left);
+            }
+            for (Outcome<T> outcome : left) {
+                if (outcome.failure() == null) {
+                    discard.accept(outcome.value());
+                }
+            }
+        }
+    }
+}
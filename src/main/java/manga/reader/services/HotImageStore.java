@@ -0,0 +1,466 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import manga.reader.config.HotImageProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Off-heap store of recently downloaded images. Image bytes live in direct buffers ("slabs")
+ * allocated up to {@code reader.hot-images.capacity} and split into fixed-size chunks, so hot images
+ * neither sit in the old generation nor get copied again when they are served.
+ *
+ * <p>Each image holds a reference count: the store owns one reference while the image is indexed and
+ * every {@link HotImage} handed out owns another. Evicted images leave the index at once, their chunks
+ * return to the free list when the last reader closes its handle. Eviction is a clock over the stored
+ * images: an image read since the hand last passed gets a second chance.
+ */
+@Component
+public class HotImageStore {
+
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int chunksPerSlab;
+    private final long maxImageSize;
+    private final ByteBuffer[] slabs;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Guarded by lock
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+    private final int[] freeChunks;
+    private int freeCount;
+    private int allocatedSlabs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicInteger usedChunks = new AtomicInteger();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public HotImageStore(HotImageProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.chunkSize = (int) properties.chunkSize().toBytes();
+        this.chunksPerSlab = Math.max(1, (int) (properties.slabSize().toBytes() / chunkSize));
+        this.maxImageSize = properties.maxImageSize().toBytes();
+        long slabBytes = (long) chunksPerSlab * chunkSize;
+        this.slabs = new ByteBuffer[enabled ? (int) Math.max(1, properties.capacity().toBytes() / slabBytes) : 0];
+        this.freeChunks = new int[slabs.length * chunksPerSlab];
+
+        this.hits = lookups(meterRegistry, "hit");
+        this.misses = lookups(meterRegistry, "miss");
+        this.evictions = Counter.builder("images.hot.evictions")
+                .description("Images evicted from the off-heap store to make room")
+                .register(meterRegistry);
+        Gauge.builder("images.hot.used", usedChunks, used -> (double) used.get() * chunkSize)
+                .description("Direct memory holding images, including evicted images still being sent")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("images.hot.capacity", this, store -> (double) store.freeChunks.length * store.chunkSize)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("images.hot.entries", entries, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the stored image, which the caller must close, or null if it is not stored
+     */
+    public HotImage get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.retain()) {
+            entry.referenced = true;
+            hits.increment();
+            return new HotImage(entry, null, null);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Copies an image into the store, evicting others as needed. If the key is already stored the
+     * stored copy is returned. Images the store cannot take (too large, or all memory held by images
+     * still being sent) are returned as heap-backed handles.
+     *
+     * @return a handle the caller must close
+     */
+    public HotImage put(String key, byte[] body, String contentType) {
+        if (!fits(body.length)) {
+            return HotImage.onHeap(body, contentType);
+        }
+        lock.lock();
+        try {
+            HotImage existing = retainStored(key);
+            if (existing != null) {
+                return existing;
+            }
+            int[] allocated = allocate(chunks(body.length));
+            if (allocated == null) {
+                return HotImage.onHeap(body, contentType);
+            }
+            for (int i = 0; i < allocated.length; i++) {
+                int offset = i * chunkSize;
+                int length = Math.min(chunkSize, body.length - offset);
+                chunk(allocated[i], length).put(body, offset, length);
+            }
+            return index(key, contentType, body.length, allocated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads an image of known length from upstream straight into free chunks, so that it is never
+     * buffered on the heap. If the key is already stored the stored copy is returned and the body is
+     * left unread.
+     *
+     * @param length the announced length of the body
+     * @return a handle the caller must close, or null if the store cannot take an image of this length
+     * @throws IOException if the body cannot be read or is not as long as announced
+     */
+    public HotImage receive(String key, InputStream body, long length, String contentType) throws IOException {
+        return receive(key, Channels.newChannel(body), length, contentType);
+    }
+
+    /**
+     * Reads a file into the store, like {@link #receive} does with an upstream body. The file is
+     * read through its channel, so its bytes go straight into the chunks.
+     *
+     * @return a handle the caller must close, or null if the store cannot take a file of this size
+     * @throws IOException if the file cannot be read
+     */
+    public HotImage load(String key, Path file, String contentType) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return receive(key, channel, channel.size(), contentType);
+        }
+    }
+
+    private HotImage receive(String key, ReadableByteChannel body, long length, String contentType) throws IOException {
+        if (!fits(length)) {
+            return null;
+        }
+        int[] allocated;
+        lock.lock();
+        try {
+            HotImage existing = retainStored(key);
+            if (existing != null) {
+                return existing;
+            }
+            allocated = allocate(chunks(length));
+        } finally {
+            lock.unlock();
+        }
+        if (allocated == null) {
+            return null;
+        }
+
+        // The chunks are not indexed yet, so they are filled without holding the lock
+        try {
+            for (int i = 0; i < allocated.length; i++) {
+                ByteBuffer chunk = chunk(allocated[i], (int) Math.min(chunkSize, length - (long) i * chunkSize));
+                while (chunk.hasRemaining()) {
+                    if (body.read(chunk) < 0) {
+                        throw new EOFException("Image ended before its announced " + length + " bytes");
+                    }
+                }
+            }
+            if (body.read(ByteBuffer.allocate(1)) > 0) {
+                throw new IOException("Image is longer than its announced " + length + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            free(allocated);
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            HotImage existing = retainStored(key);
+            if (existing != null) {
+                free(allocated);
+                return existing;
+            }
+            return index(key, contentType, (int) length, allocated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long length) {
+        return enabled && length > 0 && length <= maxImageSize && chunks(length) <= freeChunks.length;
+    }
+
+    private int chunks(long length) {
+        return (int) ((length + chunkSize - 1) / chunkSize);
+    }
+
+    private ByteBuffer chunk(int chunk, int length) {
+        return slabs[chunk / chunksPerSlab].slice((chunk % chunksPerSlab) * chunkSize, length);
+    }
+
+    private HotImage retainStored(String key) {
+        Entry existing = entries.get(key);
+        if (existing != null && existing.retain()) {
+            existing.referenced = true;
+            return new HotImage(existing, null, null);
+        }
+        return null;
+    }
+
+    private HotImage index(String key, String contentType, int size, int[] chunks) {
+        Entry entry = new Entry(key, contentType, size, chunks);
+        entry.retain();
+        entries.put(key, entry);
+        clock.offer(entry);
+        return new HotImage(entry, null, null);
+    }
+
+    private int[] allocate(int chunks) {
+        while (freeCount < chunks) {
+            if (allocatedSlabs < slabs.length) {
+                slabs[allocatedSlabs] = ByteBuffer.allocateDirect(chunksPerSlab * chunkSize);
+                for (int i = chunksPerSlab - 1; i >= 0; i--) {
+                    freeChunks[freeCount++] = allocatedSlabs * chunksPerSlab + i;
+                }
+                allocatedSlabs++;
+            } else if (!evictOne()) {
+                return null;
+            }
+        }
+        int[] allocated = new int[chunks];
+        for (int i = 0; i < chunks; i++) {
+            allocated[i] = freeChunks[--freeCount];
+        }
+        usedChunks.addAndGet(chunks);
+        return allocated;
+    }
+
+    private boolean evictOne() {
+        Entry entry;
+        while ((entry = clock.poll()) != null) {
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(entry);
+                continue;
+            }
+            entries.remove(entry.key, entry);
+            evictions.increment();
+            entry.release();
+            return true;
+        }
+        return false;
+    }
+
+    private void free(int[] chunks) {
+        lock.lock();
+        try {
+            for (int chunk : chunks) {
+                freeChunks[freeCount++] = chunk;
+            }
+            usedChunks.addAndGet(-chunks.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("images.hot.lookups")
+                .description("Lookups of downloaded images in the off-heap store")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private final class Entry {
+
+        final String key;
+        final String contentType;
+        final int size;
+        final int[] chunks;
+        final AtomicInteger references = new AtomicInteger(1);
+        volatile boolean referenced;
+
+        Entry(String key, String contentType, int size, int[] chunks) {
+            this.key = key;
+            this.contentType = contentType;
+            this.size = size;
+            this.chunks = chunks;
+        }
+
+        boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                free(chunks);
+            }
+        }
+
+        List<ByteBuffer> buffers() {
+            List<ByteBuffer> buffers = new ArrayList<>(chunks.length);
+            for (int i = 0; i < chunks.length; i++) {
+                buffers.add(chunk(chunks[i], Math.min(chunkSize, size - i * chunkSize)).asReadOnlyBuffer());
+            }
+            return buffers;
+        }
+    }
+
+    /**
+     * One reader's reference to an image. The buffers stay valid until the handle is closed, and
+     * cannot be taken from a closed handle.
+     */
+    public static final class HotImage implements AutoCloseable {
+
+        private final HotImageStore.Entry entry;
+        private final byte[] heapBody;
+        private final String heapContentType;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private HotImage(HotImageStore.Entry entry, byte[] heapBody, String heapContentType) {
+            this.entry = entry;
+            this.heapBody = heapBody;
+            this.heapContentType = heapContentType;
+        }
+
+        static HotImage onHeap(byte[] body, String contentType) {
+            return new HotImage(null, body, contentType);
+        }
+
+        public boolean isOffHeap() {
+            return entry != null;
+        }
+
+        public int size() {
+            return entry != null ? entry.size : heapBody.length;
+        }
+
+        /**
+         * @return upstream content type, or null if upstream did not send one
+         */
+        public String contentType() {
+            return entry != null ? entry.contentType : heapContentType;
+        }
+
+        /**
+         * @return read-only views of the image in order, direct buffers when the image is off-heap
+         */
+        public List<ByteBuffer> buffers() {
+            checkOpen();
+            return entry != null ? entry.buffers() : List.of(ByteBuffer.wrap(heapBody).asReadOnlyBuffer());
+        }
+
+        /**
+         * @return the image as a stream over its buffers, valid while this handle is open
+         */
+        public InputStream inputStream() {
+            List<ByteBuffer> buffers = buffers();
+            return new InputStream() {
+
+                private int index;
+
+                @Override
+                public int read() {
+                    ByteBuffer buffer = current();
+                    return buffer != null ? buffer.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) {
+                    Objects.checkFromIndexSize(offset, length, bytes.length);
+                    if (length == 0) {
+                        return 0;
+                    }
+                    ByteBuffer buffer = current();
+                    if (buffer == null) {
+                        return -1;
+                    }
+                    int read = Math.min(length, buffer.remaining());
+                    buffer.get(bytes, offset, read);
+                    return read;
+                }
+
+                private ByteBuffer current() {
+                    for (; index < buffers.size(); index++) {
+                        if (buffers.get(index).hasRemaining()) {
+                            return buffers.get(index);
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+
+        /**
+         * @return another handle on the image, which keeps its buffers valid until it is closed
+         *         itself, whenever this one is closed
+         */
+        public HotImage share() {
+            checkOpen();
+            if (entry == null) {
+                return onHeap(heapBody, heapContentType);
+            }
+            // Cannot fail, this open handle holds a reference
+            entry.retain();
+            return new HotImage(entry, null, null);
+        }
+
+        /**
+         * Copies the image onto the heap, for callers that need a byte array.
+         */
+        public byte[] toByteArray() {
+            checkOpen();
+            if (entry == null) {
+                return heapBody;
+            }
+            byte[] body = new byte[entry.size];
+            int offset = 0;
+            for (ByteBuffer buffer : entry.buffers()) {
+                int length = buffer.remaining();
+                buffer.get(body, offset, length);
+                offset += length;
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true) && entry != null) {
+                entry.release();
+            }
+        }
+
+        private void checkOpen() {
+            if (closed.get()) {
+                throw new IllegalStateException("Image handle is already closed");
+            }
+        }
+    }
+}
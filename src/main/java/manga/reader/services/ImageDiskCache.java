@@ -0,0 +1,334 @@
+package manga.reader.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.ImageCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Persistent, content-addressed image store.
+ * Image bytes are stored once per SHA-256 under {@code blobs/}, and an index maps every
+ * upstream URL to its blob together with the upstream validators (ETag / Last-Modified)
+ * needed for conditional revalidation. The index is kept in LRU order, flushed to disk
+ * periodically and reloaded on startup, and blobs are evicted once the size cap is exceeded.
+ */
+@Component
+public class ImageDiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageDiskCache.class);
+    private static final String INDEX_FILE = "index.json";
+
+    private final ImageCacheProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Path blobDirectory;
+    private final Path tempDirectory;
+    private final Path indexFile;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Integer> blobReferences = new HashMap<>();
+    private long totalBytes;
+    private boolean dirty;
+
+    public ImageDiskCache(ImageCacheProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.blobDirectory = properties.directory().resolve("blobs");
+        this.tempDirectory = properties.directory().resolve("tmp");
+        this.indexFile = properties.directory().resolve(INDEX_FILE);
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    public Duration freshFor() {
+        return properties.freshFor();
+    }
+
+    /**
+     * @return the cached image for the normalized URL, or null when it is not cached
+     */
+    public CachedImage lookup(String url) {
+        lock.lock();
+        try {
+            Entry entry = index.get(url);
+            return entry != null ? toCachedImage(entry) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Streams an upstream body into the cache and indexes it under the given URL. Room is made by
+     * evicting other images only, so the returned image is on disk even when it alone exceeds the
+     * size cap; it is then the first to go on the next store.
+     */
+    public CachedImage store(String url, InputStream body, String contentType, String eTag, String lastModified) throws IOException {
+        Path tempFile = Files.createTempFile(tempDirectory, "download-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (DigestInputStream in = new DigestInputStream(body, digest)) {
+                size = Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Entry entry = new Entry(url, hash, size, contentType, eTag, lastModified, System.currentTimeMillis());
+
+            lock.lock();
+            try {
+                if (blobReferences.containsKey(hash)) {
+                    Files.delete(tempFile);
+                } else {
+                    Path blob = blobPath(hash);
+                    Files.createDirectories(blob.getParent());
+                    Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    totalBytes += size;
+                }
+                blobReferences.merge(hash, 1, Integer::sum);
+
+                Entry previous = index.put(url, entry);
+                if (previous != null) {
+                    release(previous.sha256());
+                }
+                evictIfNeeded(url);
+                dirty = true;
+                return toCachedImage(entry);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Records a successful revalidation (upstream answered 304) of a cached image.
+     *
+     * @return the refreshed image, or null if it was evicted in the meantime
+     */
+    public CachedImage markRevalidated(String url, String eTag, String lastModified) {
+        lock.lock();
+        try {
+            Entry entry = index.get(url);
+            if (entry == null) {
+                return null;
+            }
+            Entry refreshed = new Entry(url, entry.sha256(), entry.size(), entry.contentType(),
+                    eTag != null ? eTag : entry.eTag(),
+                    lastModified != null ? lastModified : entry.lastModified(),
+                    System.currentTimeMillis());
+            index.put(url, refreshed);
+            dirty = true;
+            return toCachedImage(refreshed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a URL whose blob turned out to be unreadable.
+     */
+    public void invalidate(String url) {
+        lock.lock();
+        try {
+            Entry entry = index.remove(url);
+            if (entry != null) {
+                release(entry.sha256());
+                dirty = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!properties.enabled()) {
+            return;
+        }
+        Files.createDirectories(blobDirectory);
+        Files.createDirectories(tempDirectory);
+        try (Stream<Path> leftovers = Files.list(tempDirectory)) {
+            for (Path leftover : (Iterable<Path>) leftovers::iterator) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+
+        List<Entry> entries = List.of();
+        if (Files.exists(indexFile)) {
+            try {
+                entries = objectMapper.readValue(indexFile.toFile(), new TypeReference<List<Entry>>() {});
+            } catch (IOException e) {
+                log.warn("Discarding unreadable image cache index {}: {}", indexFile, e.getMessage());
+            }
+        }
+
+        lock.lock();
+        try {
+            // Entries are persisted least recently used first, so re-inserting keeps the LRU order
+            for (Entry entry : entries) {
+                Path blob = blobPath(entry.sha256());
+                if (!Files.isRegularFile(blob)) {
+                    continue;
+                }
+                if (!blobReferences.containsKey(entry.sha256())) {
+                    totalBytes += entry.size();
+                }
+                blobReferences.merge(entry.sha256(), 1, Integer::sum);
+                index.put(entry.url(), entry);
+            }
+            deleteUnreferencedBlobs();
+            evictIfNeeded(null);
+        } finally {
+            lock.unlock();
+        }
+        log.info("Image cache loaded {} entries ({} bytes) from {}", index.size(), totalBytes, properties.directory());
+    }
+
+    @Scheduled(fixedDelayString = "${reader.image-cache.index-flush-interval:30s}")
+    public void flushIndex() throws IOException {
+        if (!properties.enabled()) {
+            return;
+        }
+
+        List<Entry> snapshot;
+        lock.lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            snapshot = new ArrayList<>(index.values());
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+
+        Path tempIndex = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        objectMapper.writeValue(tempIndex.toFile(), snapshot);
+        Files.move(tempIndex, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        flushIndex();
+    }
+
+    /**
+     * @param keep URL that must stay indexed, the one just stored, or null
+     */
+    private void evictIfNeeded(String keep) {
+        long limit = properties.maximumSize().toBytes();
+        Iterator<Entry> eldestFirst = index.values().iterator();
+        while (totalBytes > limit && eldestFirst.hasNext()) {
+            Entry eldest = eldestFirst.next();
+            if (eldest.url().equals(keep)) {
+                continue;
+            }
+            eldestFirst.remove();
+            release(eldest.sha256());
+            dirty = true;
+        }
+    }
+
+    private void release(String hash) {
+        Integer remaining = blobReferences.computeIfPresent(hash, (key, count) -> count > 1 ? count - 1 : null);
+        if (remaining != null) {
+            return;
+        }
+        Path blob = blobPath(hash);
+        try {
+            totalBytes -= Files.size(blob);
+            Files.delete(blob);
+        } catch (IOException e) {
+            log.warn("Could not delete evicted image blob {}: {}", blob, e.getMessage());
+        }
+    }
+
+    private void deleteUnreferencedBlobs() throws IOException {
+        try (Stream<Path> blobs = Files.walk(blobDirectory)) {
+            for (Path blob : (Iterable<Path>) blobs.filter(Files::isRegularFile)::iterator) {
+                if (!blobReferences.containsKey(blob.getFileName().toString())) {
+                    Files.deleteIfExists(blob);
+                }
+            }
+        }
+    }
+
+    private Path blobPath(String hash) {
+        return blobDirectory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private CachedImage toCachedImage(Entry entry) {
+        return new CachedImage(blobPath(entry.sha256()), entry.size(), entry.contentType(),
+                entry.sha256(), entry.eTag(), entry.lastModified(), entry.fetchedAt());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Persisted index record.
+     */
+    record Entry(
+            String url,
+            String sha256,
+            long size,
+            String contentType,
+            String eTag,
+            String lastModified,
+            long fetchedAt
+    ) {}
+
+    /**
+     * A cached image on disk.
+     *
+     * @param path blob holding the image bytes
+     * @param sha256 content hash, also used as the strong ETag towards clients
+     * @param upstreamETag ETag returned by the upstream server, if any
+     * @param upstreamLastModified Last-Modified returned by the upstream server, if any
+     * @param fetchedAt epoch millis of the last download or successful revalidation
+     */
+    public record CachedImage(
+            Path path,
+            long size,
+            String contentType,
+            String sha256,
+            String upstreamETag,
+            String upstreamLastModified,
+            long fetchedAt
+    ) {
+        public boolean isFresh(Duration freshFor) {
+            return System.currentTimeMillis() - fetchedAt < freshFor.toMillis();
+        }
+    }
+}
@@ -1,83 +1,445 @@
 package manga.reader.services;
 
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import manga.reader.services.HotImageStore.HotImage;
+import manga.reader.services.ImageDiskCache.CachedImage;
+import manga.reader.exception.UpstreamOverloadedException;
+import manga.reader.upstream.SingleFlight;
+import manga.reader.upstream.UpstreamClient;
+import manga.reader.upstream.UpstreamUrls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.time.Duration;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class ImageDownloadService {
 
+    private static final Logger log = LoggerFactory.getLogger(ImageDownloadService.class);
+    /** Referer the image hosts expect for pages of the scraped site. */
+    public static final String DEFAULT_REFERER = "https://www.mangakakalot.gg/";
+
+    private final UpstreamClient upstreamClient;
     private final RestTemplate restTemplate;
+    private final ImageDiskCache imageDiskCache;
+    private final HedgedImageFetcher hedgedImageFetcher;
+    private final HotImageStore hotImageStore;
+    private final SingleFlight<String, Received> inFlightImages = new SingleFlight<>();
+    private final SingleFlight<String, CachedImage> inFlightRevalidations = new SingleFlight<>();
+
+    private final Timer bufferedTimer;
+    private final Timer cachedTimer;
+    private final Timer streamedTimer;
+    private final DistributionSummary downloadedBytes;
 
-    public ImageDownloadService() {
-        this.restTemplate = new RestTemplate();
-        // Set timeouts if needed
-        // SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        // requestFactory.setConnectTimeout(Duration.ofSeconds(2).toMillis());
-        // requestFactory.setReadTimeout(Duration.ofSeconds(2).toMillis());
-        // this.restTemplate = new RestTemplate(requestFactory);
+    public ImageDownloadService(UpstreamClient upstreamClient, ImageDiskCache imageDiskCache, HedgedImageFetcher hedgedImageFetcher,
+                                HotImageStore hotImageStore, MeterRegistry meterRegistry) {
+        this.upstreamClient = upstreamClient;
+        this.imageDiskCache = imageDiskCache;
+        this.hedgedImageFetcher = hedgedImageFetcher;
+        this.hotImageStore = hotImageStore;
+        // Pooled, keep-alive client with the timeouts from reader.upstream.*
+        this.restTemplate = upstreamClient.restTemplate();
+
+        this.bufferedTimer = timer(meterRegistry, "buffered");
+        this.cachedTimer = timer(meterRegistry, "cached");
+        this.streamedTimer = timer(meterRegistry, "stream");
+        this.downloadedBytes = DistributionSummary.builder("images.download.size")
+                .description("Size of images received from upstream")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("images.downloads.in.flight", this,
+                        service -> service.inFlightImages.inFlight() + service.inFlightRevalidations.inFlight())
+                .description("Distinct images being downloaded or revalidated")
+                .register(meterRegistry);
     }
 
     /**
-     * Downloads an image from the given URL
+     * Downloads an image for callers that read its bytes, like renditions and bundles. With the disk
+     * cache enabled the image goes through it and is read from the off-heap store, see
+     * {@link #openCachedImage(CachedImage)}, otherwise it is opened as by {@link #openImage}.
      *
      * @param imageUrl URL of the image to download
      * @param referer Referer header to use in the request
-     * @return Resource containing the image data
+     * @return the image, to be closed once its bytes have been read
      * @throws IOException If the image cannot be downloaded
      */
-    public Resource downloadImage(String imageUrl, String referer) throws IOException {
+    public HotImage downloadImage(String imageUrl, String referer) throws IOException {
+        if (imageDiskCache.isEnabled()) {
+            CachedImage cached = downloadImageWithCaching(imageUrl, referer);
+            try {
+                HotImage image = openCachedImage(cached);
+                // Only images the store cannot take are read onto the heap
+                return image != null ? image : HotImage.onHeap(Files.readAllBytes(cached.path()), cached.contentType());
+            } catch (NoSuchFileException e) {
+                // The blob vanished underneath the index, fall back to a direct download
+                invalidateCachedImage(imageUrl);
+            }
+        }
+        return openImage(imageUrl, referer);
+    }
+
+    /**
+     * Reads an image from the disk cache through the off-heap store, so that hot images are served
+     * from memory rather than from their blob. Stored copies are keyed by content hash: an image
+     * that changed upstream is never answered with its previous bytes.
+     *
+     * @return the image, to be closed once its buffers have been written, or null if the store is
+     *         disabled or cannot take the image
+     * @throws NoSuchFileException if the blob is missing
+     */
+    public HotImage openCachedImage(CachedImage cached) throws IOException {
+        if (!hotImageStore.isEnabled()) {
+            return null;
+        }
+        String key = "sha256:" + cached.sha256();
+        HotImage stored = hotImageStore.get(key);
+        return stored != null ? stored : hotImageStore.load(key, cached.path(), cached.contentType());
+    }
+
+    /**
+     * Downloads an image, or returns it from the off-heap store of recently downloaded images.
+     * Concurrent downloads of the same URL share a single upstream request, which is hedged
+     * against the image's secondary mirror when one is known. Images announcing their length are
+     * received straight into the store's chunks, only others are buffered on the heap first.
+     *
+     * @param imageUrl URL of the image to download
+     * @param referer Referer header to use in the request
+     * @return the image, to be closed once its buffers have been written
+     * @throws IOException If the image cannot be downloaded
+     */
+    public HotImage openImage(String imageUrl, String referer) throws IOException {
+        long started = System.nanoTime();
         try {
-            // Set up headers similar to the Python version
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Accept", "image/webp,image/apng,*/*;q=0.8");
-            headers.set("Referer", referer);
-            headers.set("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            // Make the request
-            ResponseEntity<byte[]> response = restTemplate.exchange(
-                    imageUrl,
-                    HttpMethod.GET,
-                    entity,
-                    byte[].class
-            );
-
-            // Check if we got a successful response
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return new ByteArrayResource(response.getBody());
-            } else {
-                throw new IOException("Failed to download image, status code: " + response.getStatusCodeValue());
+            String key = UpstreamUrls.normalize(imageUrl);
+            HotImage stored = hotImageStore.isEnabled() ? hotImageStore.get(key) : null;
+            if (stored != null) {
+                return stored;
+            }
+            HotImage[] own = new HotImage[1];
+            Received received = inFlightImages.execute(key, () -> {
+                own[0] = receiveImage(imageUrl, key, referer);
+                return Received.of(own[0]);
+            });
+            if (own[0] != null) {
+                return own[0];
+            }
+            // Joined another caller's download
+            if (received.heapBody() != null) {
+                return HotImage.onHeap(received.heapBody(), received.contentType());
             }
+            HotImage shared = hotImageStore.get(key);
+            // null when it was evicted again before this caller got to it
+            return shared != null ? shared : receiveImage(imageUrl, key, referer);
+        } finally {
+            bufferedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private HotImage receiveImage(String imageUrl, String key, String referer) throws IOException {
+        return hedged(imageUrl, url -> receive(url, key, referer), HotImage::close);
+    }
 
+    private <T> T hedged(String imageUrl, HedgedImageFetcher.Fetch<T> fetch, Consumer<? super T> discard) throws IOException {
+        try {
+            return hedgedImageFetcher.fetch(imageUrl, fetch, discard);
         } catch (HttpClientErrorException | HttpServerErrorException e) {
             throw new IOException("HTTP error while downloading image: " + e.getStatusCode() + " - " + e.getStatusText());
         } catch (ResourceAccessException e) {
-            throw new IOException("Network error while downloading image: " + e.getMessage());
+            throw networkError(e);
+        } catch (UpstreamOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unexpected error while downloading image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Downloads one URL whole. RestTemplate's exceptions are left for the caller, so the hedged
+     * fetcher can tell a missing image from a failing host.
+     */
+    private Fetched download(String url, String referer) throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        applyImageHeaders(requestHeaders, referer);
+
+        ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(requestHeaders), byte[].class);
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            throw new IOException("Failed to download image, status code: " + response.getStatusCode().value());
+        }
+        downloadedBytes.record(response.getBody().length);
+        HttpHeaders headers = response.getHeaders();
+        MediaType contentType = headers.getContentType();
+        return new Fetched(response.getBody(), contentType != null ? contentType.toString() : null,
+                headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    /**
+     * Receives one URL into the off-heap store, or onto the heap when upstream does not announce
+     * the length or the store cannot take it. Exceptions are left for the caller like in
+     * {@link #download(String, String)}.
+     */
+    private HotImage receive(String url, String key, String referer) {
+        return restTemplate.execute(url, HttpMethod.GET, request -> applyImageHeaders(request.getHeaders(), referer), response -> {
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                throw new IOException("Failed to download image, status code: " + response.getStatusCode().value());
+            }
+            HttpHeaders headers = response.getHeaders();
+            MediaType mediaType = headers.getContentType();
+            String contentType = mediaType != null ? mediaType.toString() : null;
+            long length = headers.getContentLength();
+            HotImage image = length >= 0 ? hotImageStore.receive(key, response.getBody(), length, contentType) : null;
+            if (image == null) {
+                byte[] body = length >= 0 && length < Integer.MAX_VALUE
+                        ? response.getBody().readNBytes((int) length)
+                        : response.getBody().readAllBytes();
+                image = hotImageStore.put(key, body, contentType);
+            }
+            downloadedBytes.record(image.size());
+            return image;
+        });
+    }
+
+    /**
+     * Streams an image from upstream without buffering it: the handler receives the upstream
+     * status, headers and body stream while the request is still open. Range requests are
+     * forwarded, so upstream answers 206 for partial content and 416 for unsatisfiable ranges.
+     *
+     * @param imageUrl URL of the image to download
+     * @param referer Referer header to use in the request
+     * @param range client Range header, or null
+     * @param ifRange client If-Range header, or null
+     * @param handler consumer of the upstream response
+     * @throws IOException If the image cannot be downloaded
+     */
+    public void streamImage(String imageUrl, String referer, String range, String ifRange, ImageStreamHandler handler) throws IOException {
+        long started = System.nanoTime();
+        try {
+            restTemplate.execute(imageUrl, HttpMethod.GET, request -> {
+                HttpHeaders headers = request.getHeaders();
+                applyImageHeaders(headers, referer);
+                if (range != null) {
+                    headers.set(HttpHeaders.RANGE, range);
+                }
+                if (ifRange != null) {
+                    headers.set(HttpHeaders.IF_RANGE, ifRange);
+                }
+            }, response -> {
+                long length = response.getHeaders().getContentLength();
+                if (length >= 0) {
+                    downloadedBytes.record(length);
+                }
+                handler.handle(response.getStatusCode(), response.getHeaders(), response.getBody());
+                return null;
+            });
+        } catch (HttpClientErrorException e) {
+            if (!e.getStatusCode().isSameCodeAs(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)) {
+                throw new IOException("HTTP error while downloading image: " + e.getStatusCode() + " - " + e.getStatusText());
+            }
+            HttpHeaders headers = e.getResponseHeaders() != null ? e.getResponseHeaders() : new HttpHeaders();
+            handler.handle(e.getStatusCode(), headers, InputStream.nullInputStream());
+        } catch (HttpServerErrorException e) {
+            throw new IOException("HTTP error while downloading image: " + e.getStatusCode() + " - " + e.getStatusText());
+        } catch (ResourceAccessException e) {
+            throw networkError(e);
         } catch (Exception e) {
             throw new IOException("Unexpected error while downloading image: " + e.getMessage());
+        } finally {
+            streamedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         }
     }
 
     /**
-     * Cache-aware image download that can handle HTTP 304 responses
-     * This would require implementing caching logic which is beyond the scope of a simple example
+     * Non-blocking variant of {@link #streamImage(String, String, String, String, ImageStreamHandler)}
+     * for the reactive stack: upstream status and headers are forwarded as they are, including 4xx/5xx,
+     * and the body is read from upstream as the client consumes it. The body must always be subscribed,
+     * it holds an upstream slot until it completes.
+     *
+     * @param bufferFactory factory wrapping the received buffers, normally the response's
      */
-    public Resource downloadImageWithCaching(String imageUrl, String referer, String eTag, String lastModified) throws IOException {
-        // Implementation would handle 304 responses and caching
-        // This is left as a future enhancement
-        return downloadImage(imageUrl, referer);
+    public Mono<UpstreamClient.StreamedResponse> streamImage(String imageUrl, String referer, String range, String ifRange,
+                                                              DataBufferFactory bufferFactory) {
+        HttpHeaders headers = new HttpHeaders();
+        applyImageHeaders(headers, referer);
+        if (range != null) {
+            headers.set(HttpHeaders.RANGE, range);
+        }
+        if (ifRange != null) {
+            headers.set(HttpHeaders.IF_RANGE, ifRange);
+        }
+        long started = System.nanoTime();
+        return upstreamClient.stream(imageUrl, headers, bufferFactory)
+                .map(response -> {
+                    long length = response.headers().getContentLength();
+                    if (length >= 0) {
+                        downloadedBytes.record(length);
+                    }
+                    return new UpstreamClient.StreamedResponse(response.status(), response.headers(), response.body()
+                            .doFinally(signal -> streamedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS)));
+                });
+    }
+
+    public boolean isDiskCacheEnabled() {
+        return imageDiskCache.isEnabled();
+    }
+
+    /**
+     * Cache-aware image download backed by the on-disk image cache.
+     * Fresh entries are served without contacting upstream. Stale entries are revalidated with a
+     * conditional GET, so an unchanged image (HTTP 304) is not transferred again. If upstream fails
+     * while a stale copy exists, the stale copy is served.
+     *
+     * @param imageUrl URL of the image to download
+     * @param referer Referer header to use in the request
+     * @return the image as stored on disk
+     * @throws IOException If the image is not cached and cannot be downloaded
+     */
+    public CachedImage downloadImageWithCaching(String imageUrl, String referer) throws IOException {
+        long started = System.nanoTime();
+        try {
+            String key = UpstreamUrls.normalize(imageUrl);
+            CachedImage cached = imageDiskCache.lookup(key);
+            if (cached != null && cached.isFresh(imageDiskCache.freshFor())) {
+                return cached;
+            }
+
+            try {
+                return inFlightRevalidations.execute(key, () -> revalidate(imageUrl, key, referer, imageDiskCache.lookup(key)));
+            } catch (IOException e) {
+                if (cached == null) {
+                    throw e;
+                }
+                log.warn("Serving stale cached image {}: {}", imageUrl, e.getMessage());
+                return cached;
+            }
+        } finally {
+            cachedTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Forgets the cached copy of an image, e.g. after its blob turned out to be missing.
+     */
+    public void invalidateCachedImage(String imageUrl) {
+        imageDiskCache.invalidate(UpstreamUrls.normalize(imageUrl));
+    }
+
+    private CachedImage revalidate(String imageUrl, String key, String referer, CachedImage cached) throws IOException {
+        if (cached == null && hedgedImageFetcher.hasMirror(imageUrl)) {
+            // Nothing to revalidate, so the download can be raced across both mirrors
+            try {
+                Fetched fetched = hedgedImageFetcher.fetch(imageUrl, url -> download(url, referer));
+                return imageDiskCache.store(key, new ByteArrayInputStream(fetched.body()), fetched.contentType(),
+                        fetched.eTag(), fetched.lastModified());
+            } catch (HttpClientErrorException | HttpServerErrorException e) {
+                throw new IOException("HTTP error while downloading image: " + e.getStatusCode() + " - " + e.getStatusText());
+            } catch (ResourceAccessException e) {
+                throw networkError(e);
+            }
+        }
+
+        CachedImage result;
+        try {
+            result = restTemplate.execute(imageUrl, HttpMethod.GET, request -> {
+                HttpHeaders headers = request.getHeaders();
+                applyImageHeaders(headers, referer);
+                if (cached != null && cached.upstreamETag() != null) {
+                    headers.setIfNoneMatch(cached.upstreamETag());
+                }
+                if (cached != null && cached.upstreamLastModified() != null) {
+                    headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.upstreamLastModified());
+                }
+            }, response -> {
+                HttpHeaders headers = response.getHeaders();
+                if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cached != null) {
+                    // null when the entry was evicted meanwhile, then it is downloaded again below
+                    return imageDiskCache.markRevalidated(key, headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+                }
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    throw new IOException("Failed to download image, status code: " + response.getStatusCode().value());
+                }
+                MediaType contentType = headers.getContentType();
+                CachedImage stored = imageDiskCache.store(key, response.getBody(),
+                        contentType != null ? contentType.toString() : null,
+                        headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+                downloadedBytes.record(stored.size());
+                return stored;
+            });
+        } catch (HttpClientErrorException | HttpServerErrorException e) {
+            throw new IOException("HTTP error while downloading image: " + e.getStatusCode() + " - " + e.getStatusText());
+        } catch (ResourceAccessException e) {
+            throw networkError(e);
+        } catch (Exception e) {
+            throw new IOException("Unexpected error while downloading image: " + e.getMessage());
+        }
+
+        if (result == null) {
+            return revalidate(imageUrl, key, referer, null);
+        }
+        return result;
+    }
+
+    /**
+     * Keeps a bulkhead rejection recognisable (503 rather than 500) through RestTemplate's wrapping.
+     */
+    private static IOException networkError(ResourceAccessException e) {
+        if (e.getCause() instanceof UpstreamOverloadedException overloaded) {
+            return overloaded;
+        }
+        return new IOException("Network error while downloading image: " + e.getMessage());
+    }
+
+    private record Fetched(byte[] body, String contentType, String eTag, String lastModified) {
+    }
+
+    /**
+     * What callers joining a download get: the heap body when the image was not stored off-heap.
+     */
+    private record Received(byte[] heapBody, String contentType) {
+
+        static Received of(HotImage image) {
+            return new Received(image.isOffHeap() ? null : image.toByteArray(), image.contentType());
+        }
+    }
+
+    @FunctionalInterface
+    public interface ImageStreamHandler {
+        void handle(HttpStatusCode status, HttpHeaders headers, InputStream body) throws IOException;
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String path) {
+        return Timer.builder("images.download")
+                .description("Time to serve an image download, including cache hits")
+                .tag("path", path)
+                .register(meterRegistry);
+    }
+
+    private void applyImageHeaders(HttpHeaders headers, String referer) {
+        // Set up headers similar to the Python version
+        headers.set("Accept", "image/webp,image/apng,*/*;q=0.8");
+        headers.set("Referer", referer);
+        headers.set("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package manga.reader.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import manga.reader.upstream.UpstreamUrls;
+import org.springframework.stereotype.Component;
+
+/**
+ * Secondary mirror of each chapter image, as listed by the reader page's {@code onerror} fallbacks.
+ * Filled from the pages of every scraped chapter so that an image request for a primary URL can be hedged.
+ */
+@Component
+public class ImageMirrors {
+
+    private final Cache<String, String> secondaries = Caffeine.newBuilder()
+            .maximumSize(200_000)
+            .build();
+
+    public void register(String primaryUrl, String secondaryUrl) {
+        if (secondaryUrl != null && !secondaryUrl.isBlank() && !secondaryUrl.equals(primaryUrl)) {
+            secondaries.put(UpstreamUrls.normalize(primaryUrl), secondaryUrl);
+        }
+    }
+
+    /**
+     * @return the secondary URL of a primary image URL, or null when none is known
+     */
+    public String secondaryOf(String imageUrl) {
+        return secondaries.getIfPresent(UpstreamUrls.normalize(imageUrl));
+    }
+}
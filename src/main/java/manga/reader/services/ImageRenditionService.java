@@ -0,0 +1,378 @@
+package manga.reader.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.RenditionProperties;
+import manga.reader.services.HotImageStore.HotImage;
+import manga.reader.upstream.SingleFlight;
+import manga.reader.upstream.UpstreamUrls;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resized and transcoded versions of proxied images, e.g. 150 px wide JPEG thumbnails of covers.
+ * <p>
+ * The source image comes through {@link ImageDownloadService} (and so from the disk cache and the
+ * off-heap store when they are enabled). Decoding and encoding run on a fixed pool of CPU workers with a bounded queue; when the
+ * queue is full the original image is served instead of waiting. Renditions are cached in memory per
+ * (URL, width, format, quality), and requested widths are rounded up to the configured steps so that
+ * an image has only a handful of renditions.
+ */
+@Service
+public class ImageRenditionService {
+
+    private final RenditionProperties properties;
+    private final ImageDownloadService imageDownloadService;
+    private final List<Integer> widths;
+    private final ThreadPoolExecutor workers;
+    private final Cache<Key, Rendition> renditions;
+    private final SingleFlight<Key, Rendition> inFlight = new SingleFlight<>();
+
+    private final Timer resizeTimer;
+    private final Counter unsupported;
+    private final Counter rejected;
+
+    public ImageRenditionService(RenditionProperties properties, ImageDownloadService imageDownloadService,
+                                 MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.imageDownloadService = imageDownloadService;
+        this.widths = properties.widths().stream().filter(width -> width > 0).sorted().distinct().toList();
+
+        int threads = properties.workers() > 0 ? properties.workers() : Runtime.getRuntime().availableProcessors();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(properties.maxQueue(), 1)),
+                Thread.ofPlatform().name("image-resize-", 1).daemon().factory());
+
+        this.renditions = Caffeine.newBuilder()
+                .maximumWeight(properties.cacheSize().toBytes())
+                .weigher((Key key, Rendition rendition) -> rendition.body().length)
+                .expireAfterWrite(properties.expireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, renditions, "images.renditions");
+
+        this.resizeTimer = Timer.builder("images.resize")
+                .description("Time to decode, scale and encode one rendition")
+                .register(meterRegistry);
+        this.unsupported = Counter.builder("images.resize.skipped").tag("reason", "unsupported").register(meterRegistry);
+        this.rejected = Counter.builder("images.resize.skipped").tag("reason", "queue-full").register(meterRegistry);
+        Gauge.builder("images.resize.queued", workers, pool -> pool.getQueue().size())
+                .description("Images waiting for a resize worker")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Returns a rendition of an image.
+     *
+     * @param imageUrl URL of the original image
+     * @param referer Referer header to use when downloading the original
+     * @param width requested width, rounded up to the next configured step; null keeps the width.
+     *              Images are never scaled up.
+     * @param format requested format, null keeps JPEG and PNG sources as they are and turns others into JPEG
+     * @param quality encoder quality, null for {@link Quality#MEDIUM}
+     * @return the rendition; the original image, without content type, when it cannot be decoded or
+     * the workers are saturated
+     * @throws IOException If the original image cannot be downloaded
+     */
+    public Rendition render(String imageUrl, String referer, Integer width, Format format, Quality quality) throws IOException {
+        Key key = new Key(UpstreamUrls.normalize(imageUrl), width != null ? roundWidth(width) : 0,
+                format, quality != null ? quality : Quality.MEDIUM);
+        Rendition cached = renditions.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        return inFlight.execute(key, () -> {
+            try (HotImage source = imageDownloadService.downloadImage(imageUrl, referer)) {
+                // The worker holds its own handle, released when the task completes or is cancelled
+                HotImage shared = source.share();
+                FutureTask<Rendition> task = new FutureTask<>(() -> transform(shared, key)) {
+                    @Override
+                    protected void done() {
+                        shared.close();
+                    }
+                };
+                try {
+                    workers.execute(task);
+                } catch (RejectedExecutionException e) {
+                    shared.close();
+                    rejected.increment();
+                    return original(source);
+                }
+
+                Rendition rendition = await(task);
+                if (rendition == null) {
+                    unsupported.increment();
+                    return original(source);
+                }
+                renditions.put(key, rendition);
+                return rendition;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    int roundWidth(int width) {
+        for (int step : widths) {
+            if (step >= width) {
+                return step;
+            }
+        }
+        return widths.isEmpty() ? width : widths.getLast();
+    }
+
+    /**
+     * @return the rendition, or null when the source is not a decodable image or too large
+     */
+    private Rendition transform(HotImage source, Key key) throws IOException {
+        long started = System.nanoTime();
+        // Decodes straight from the source's buffers rather than from a copy of the whole image
+        try (ImageInputStream in = new MemoryCacheImageInputStream(source.inputStream())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if ((long) sourceWidth * sourceHeight > properties.maxPixels()) {
+                    return null;
+                }
+
+                Format sourceFormat = Format.of(reader.getFormatName()).orElse(null);
+                Format target = key.format() != null ? key.format()
+                        : sourceFormat == Format.PNG ? Format.PNG : Format.JPEG;
+                if (!target.isWritable()) {
+                    target = Format.JPEG;
+                }
+                int targetWidth = key.width() > 0 ? Math.min(key.width(), sourceWidth) : sourceWidth;
+                if (targetWidth == sourceWidth && target == sourceFormat && key.format() == null) {
+                    // Nothing to do, e.g. a thumbnail that is already small enough
+                    byte[] body = source.toByteArray();
+                    return new Rendition(body, target.contentType(), eTag(body));
+                }
+                int targetHeight = (int) Math.max(1, Math.round((double) sourceHeight * targetWidth / sourceWidth));
+
+                // Let the decoder skip pixels of much larger images, keeping twice the target width for smooth scaling
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = sourceWidth / (targetWidth * 2);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                BufferedImage decoded = reader.read(0, param);
+
+                byte[] body = encode(scale(decoded, targetWidth, targetHeight, target.hasAlpha()), target, key.quality());
+                return new Rendition(body, target.contentType(), eTag(body));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            resizeTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Scales down in steps of at most a half with bilinear interpolation, which looks close to a
+     * bicubic scale at a fraction of the cost. Transparent areas become white for formats without alpha.
+     */
+    private static BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight, boolean alpha) {
+        BufferedImage current = image;
+        int width = current.getWidth();
+        int height = current.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                if (!alpha) {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, width, height);
+                }
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, Format format, Quality quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format.formatName()).next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format != Format.PNG && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality.value());
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static Rendition original(HotImage source) {
+        byte[] body = source.toByteArray();
+        return new Rendition(body, null, eTag(body));
+    }
+
+    private static Rendition await(Future<Rendition> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resizing an image");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to resize image: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static String eTag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Output formats. WebP is only written when an ImageIO WebP writer is installed, JPEG otherwise.
+     */
+    public enum Format {
+        JPEG("jpeg", "image/jpeg", false),
+        PNG("png", "image/png", true),
+        WEBP("webp", "image/webp", true);
+
+        private final String formatName;
+        private final String contentType;
+        private final boolean alpha;
+        private final boolean writable;
+
+        Format(String formatName, String contentType, boolean alpha) {
+            this.formatName = formatName;
+            this.contentType = contentType;
+            this.alpha = alpha;
+            this.writable = ImageIO.getImageWritersByFormatName(formatName).hasNext();
+        }
+
+        public static Optional<Format> of(String name) {
+            return switch (name.toLowerCase(Locale.ROOT)) {
+                case "jpeg", "jpg" -> Optional.of(JPEG);
+                case "png" -> Optional.of(PNG);
+                case "webp" -> Optional.of(WEBP);
+                default -> Optional.empty();
+            };
+        }
+
+        String formatName() {
+            return formatName;
+        }
+
+        String contentType() {
+            return contentType;
+        }
+
+        boolean hasAlpha() {
+            return alpha;
+        }
+
+        boolean isWritable() {
+            return writable;
+        }
+    }
+
+    /**
+     * Encoder quality tiers of lossy formats.
+     */
+    public enum Quality {
+        LOW(0.5f),
+        MEDIUM(0.75f),
+        HIGH(0.9f);
+
+        private final float value;
+
+        Quality(float value) {
+            this.value = value;
+        }
+
+        public static Optional<Quality> of(String name) {
+            return Arrays.stream(values()).filter(quality -> quality.name().equalsIgnoreCase(name)).findFirst();
+        }
+
+        float value() {
+            return value;
+        }
+    }
+
+    /**
+     * An encoded image.
+     *
+     * @param body image bytes
+     * @param contentType media type, null for an original image whose type is not known
+     * @param eTag strong entity tag of the body
+     */
+    public record Rendition(byte[] body, String contentType, String eTag) {
+    }
+
+    private record Key(String url, int width, Format format, Quality quality) {
+    }
+}
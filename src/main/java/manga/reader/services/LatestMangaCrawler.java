@@ -0,0 +1,222 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import manga.reader.config.CrawlerProperties;
+import manga.reader.config.SerializedScrapeResults;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.upstream.UpstreamClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Background crawl of the latest manga feed, so {@code GET /api/mangas/} is served from memory.
+ * <p>
+ * The feed is ordered by last update, so a crawl walks it from page 1 and stops after the first page
+ * holding an entry whose latest chapter has not changed since the previous crawl: everything below is
+ * older and already known. Entries that changed move to the front of the previously crawled feed, which
+ * is then cut into ready-to-serve pages, serialized and compressed before they replace the previous
+ * feed. The first crawl walks all {@code maxPages}.
+ * <p>
+ * Crawls pause between pages and wait while live requests need the upstream connection slots.
+ */
+@Service
+public class LatestMangaCrawler {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestMangaCrawler.class);
+
+    private final CrawlerProperties properties;
+    private final MangakakalotService mangakakalotService;
+    private final MangaSearchIndex searchIndex;
+    private final UpstreamClient upstreamClient;
+    private final SerializedScrapeResults serializedResults;
+
+    private volatile Feed feed;
+    private volatile double pagesPerSecond;
+
+    private final Counter crawledPages;
+    private final Counter changedEntries;
+    private final Counter failedCrawls;
+
+    public LatestMangaCrawler(CrawlerProperties properties,
+                              MangakakalotService mangakakalotService,
+                              MangaSearchIndex searchIndex,
+                              UpstreamClient upstreamClient,
+                              SerializedScrapeResults serializedResults,
+                              MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.mangakakalotService = mangakakalotService;
+        this.searchIndex = searchIndex;
+        this.upstreamClient = upstreamClient;
+        this.serializedResults = serializedResults;
+
+        this.crawledPages = Counter.builder("crawler.latest.pages").register(meterRegistry);
+        this.changedEntries = Counter.builder("crawler.latest.changed").register(meterRegistry);
+        this.failedCrawls = Counter.builder("crawler.latest.failures").register(meterRegistry);
+        Gauge.builder("crawler.latest.lag", this, crawler -> crawler.lag().toMillis() / 1000.0)
+                .baseUnit("seconds")
+                .description("Time since the last completed crawl")
+                .register(meterRegistry);
+        Gauge.builder("crawler.latest.pages.per.second", this, crawler -> crawler.pagesPerSecond)
+                .description("Fetch rate of the last completed crawl")
+                .register(meterRegistry);
+        Gauge.builder("crawler.latest.materialized.pages", this, crawler -> crawler.feed != null ? crawler.feed.pages().size() : 0)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the materialized feed page, or empty when it was not crawled or the crawl is too old
+     */
+    public Optional<LatestMangaResult> page(int page) {
+        Feed current = feed;
+        if (!properties.enabled() || current == null || page < 1 || page > current.pages().size()
+                || lag().compareTo(properties.serveFor()) > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(current.pages().get(page - 1));
+    }
+
+    @Scheduled(fixedDelayString = "${reader.crawler.interval:2m}", initialDelayString = "${reader.crawler.initial-delay:30s}")
+    public void crawl() {
+        if (!properties.enabled()) {
+            return;
+        }
+
+        try {
+            crawlOnce();
+        } catch (IOException | RuntimeException e) {
+            failedCrawls.increment();
+            log.warn("Latest manga crawl failed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void crawlOnce() throws IOException, InterruptedException {
+        Feed previous = feed;
+        long started = System.nanoTime();
+
+        List<LatestMangaResult.Manga> crawled = new ArrayList<>();
+        Set<String> crawledIds = new HashSet<>();
+        int changed = 0;
+        int pageSize = previous != null ? previous.pageSize() : 0;
+        String totalPage = previous != null ? previous.totalPage() : null;
+        int pages = 0;
+
+        for (int page = 1; page <= properties.maxPages(); page++) {
+            if (page > 1) {
+                throttle();
+            }
+            LatestMangaResult result = mangakakalotService.latestManga(page);
+            pages++;
+            crawledPages.increment();
+            if (result.results().isEmpty()) {
+                break;
+            }
+            searchIndex.addLatest(result);
+            if (page == 1) {
+                pageSize = result.results().size();
+                totalPage = result.pageInfo().totalPage();
+            }
+
+            boolean reachedUnchanged = false;
+            for (LatestMangaResult.Manga manga : result.results()) {
+                // New entries push the feed down while it is walked, so a row can show up twice
+                if (manga.mangaID() == null || !crawledIds.add(manga.mangaID())) {
+                    continue;
+                }
+                crawled.add(manga);
+                String known = previous != null ? previous.signatures().get(manga.mangaID()) : null;
+                if (signature(manga).equals(known)) {
+                    reachedUnchanged = true;
+                } else {
+                    changed++;
+                }
+            }
+            if (reachedUnchanged || page >= parsePage(totalPage)) {
+                break;
+            }
+        }
+
+        List<LatestMangaResult.Manga> entries = new ArrayList<>(crawled);
+        if (previous != null) {
+            for (LatestMangaResult.Manga manga : previous.entries()) {
+                if (!crawledIds.contains(manga.mangaID())) {
+                    entries.add(manga);
+                }
+            }
+        }
+        if (pageSize > 0 && entries.size() > properties.maxPages() * pageSize) {
+            entries = entries.subList(0, properties.maxPages() * pageSize);
+        }
+
+        Feed crawledFeed = materialize(entries, pageSize, totalPage, Instant.now());
+        crawledFeed.pages().forEach(serializedResults::keep);
+        feed = crawledFeed;
+        changedEntries.increment(changed);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pagesPerSecond = seconds > 0 ? pages / seconds : 0;
+        log.debug("Crawled {} latest manga pages, {} entries changed", pages, changed);
+    }
+
+    Duration lag() {
+        Feed current = feed;
+        return current != null ? Duration.between(current.crawledAt(), Instant.now()) : Duration.ZERO;
+    }
+
+    private void throttle() throws InterruptedException {
+        Thread.sleep(properties.pageDelay());
+        while (!upstreamClient.hasSpareCapacity(UpstreamClient.Bulkhead.SCRAPE, properties.reservedConnections())) {
+            Thread.sleep(properties.pageDelay().isZero() ? Duration.ofMillis(50) : properties.pageDelay());
+        }
+    }
+
+    private static Feed materialize(List<LatestMangaResult.Manga> entries, int pageSize, String totalPage, Instant crawledAt) {
+        List<LatestMangaResult> pages = new ArrayList<>();
+        Map<String, String> signatures = new HashMap<>();
+        for (LatestMangaResult.Manga manga : entries) {
+            signatures.put(manga.mangaID(), signature(manga));
+        }
+        if (pageSize > 0) {
+            for (int from = 0; from < entries.size(); from += pageSize) {
+                List<LatestMangaResult.Manga> results = List.copyOf(entries.subList(from, Math.min(from + pageSize, entries.size())));
+                pages.add(new LatestMangaResult(results, new PageInfo(String.valueOf(pages.size() + 1), totalPage, null)));
+            }
+        }
+        return new Feed(List.copyOf(entries), Map.copyOf(signatures), List.copyOf(pages), pageSize, totalPage, crawledAt);
+    }
+
+    private static String signature(LatestMangaResult.Manga manga) {
+        return manga.chapterID() + '|' + manga.latestChapter();
+    }
+
+    private static int parsePage(String page) {
+        try {
+            return page != null ? Integer.parseInt(page) : Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Result of the last completed crawl. Replaced as a whole, never modified.
+     */
+    private record Feed(List<LatestMangaResult.Manga> entries, Map<String, String> signatures,
+                        List<LatestMangaResult> pages, int pageSize, String totalPage, Instant crawledAt) {
+    }
+}
@@ -0,0 +1,226 @@
+package manga.reader.services;
+
+import manga.reader.dto.MangaInfoResult;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of a stored manga page: varint lengths, UTF-8 strings, and chapter names and ids
+ * front-coded against the previous chapter, since consecutive rows ("one-piece/chapter-1100",
+ * "one-piece/chapter-1099") mostly differ in their last characters.
+ */
+final class MangaInfoCodec {
+
+    // Version 1 wrote the rating score as a varint of its bits, which took nine or ten bytes
+    private static final int VERSION = 2;
+
+    private MangaInfoCodec() {
+    }
+
+    static byte[] encode(MangaInfoResult mangaInfo, Instant storedAt) {
+        Writer out = new Writer();
+        out.varint(VERSION);
+        out.varlong(storedAt.toEpochMilli());
+        out.string(mangaInfo.img());
+        out.string(mangaInfo.title());
+        out.strings(mangaInfo.authors());
+        out.string(mangaInfo.status());
+        out.string(mangaInfo.lastUpdate());
+        out.string(mangaInfo.view());
+        out.strings(mangaInfo.genres());
+        MangaInfoResult.Rating rating = mangaInfo.rating();
+        out.varint(rating != null ? 1 : 0);
+        if (rating != null) {
+            out.fixedLong(Double.doubleToRawLongBits(rating.score()));
+            out.varint(rating.outOf());
+            out.varint(rating.votes());
+        }
+        out.string(mangaInfo.summary());
+
+        List<MangaInfoResult.Chapter> chapters = mangaInfo.chapters() != null ? mangaInfo.chapters() : List.of();
+        out.varint(chapters.size());
+        String previousName = "";
+        String previousId = "";
+        for (MangaInfoResult.Chapter chapter : chapters) {
+            out.frontCoded(chapter.chapterName(), previousName);
+            out.frontCoded(chapter.chapterID(), previousId);
+            out.string(chapter.views());
+            out.string(chapter.timeUploaded());
+            previousName = chapter.chapterName() != null ? chapter.chapterName() : "";
+            previousId = chapter.chapterID() != null ? chapter.chapterID() : "";
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are of an unknown version, truncated or corrupt
+     */
+    static MangaMetadataStore.Stored decode(byte[] bytes) {
+        try {
+            return decode(new Reader(ByteBuffer.wrap(bytes)));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | DateTimeException e) {
+            throw new IllegalArgumentException("Corrupt manga info: " + e, e);
+        }
+    }
+
+    private static MangaMetadataStore.Stored decode(Reader in) {
+        int version = in.varint();
+        if (version != VERSION && version != 1) {
+            throw new IllegalArgumentException("Unknown manga info encoding " + version);
+        }
+        Instant storedAt = Instant.ofEpochMilli(in.varlong());
+        String img = in.string();
+        String title = in.string();
+        List<String> authors = in.strings();
+        String status = in.string();
+        String lastUpdate = in.string();
+        String view = in.string();
+        List<String> genres = in.strings();
+        MangaInfoResult.Rating rating = in.varint() == 1
+                ? new MangaInfoResult.Rating(Double.longBitsToDouble(version == 1 ? in.varlong() : in.fixedLong()),
+                        in.varint(), in.varint())
+                : null;
+        String summary = in.string();
+
+        int chapterCount = in.varint();
+        List<MangaInfoResult.Chapter> chapters = new ArrayList<>(Math.min(chapterCount, in.buffer().remaining()));
+        String previousName = "";
+        String previousId = "";
+        for (int i = 0; i < chapterCount; i++) {
+            String name = in.frontCoded(previousName);
+            String id = in.frontCoded(previousId);
+            chapters.add(new MangaInfoResult.Chapter(name, id, in.string(), in.string()));
+            previousName = name != null ? name : "";
+            previousId = id != null ? id : "";
+        }
+
+        MangaInfoResult mangaInfo = new MangaInfoResult(img, title, authors, status, lastUpdate, view, genres, rating,
+                summary, chapters);
+        return new MangaMetadataStore.Stored(mangaInfo, storedAt);
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // Never split a surrogate pair
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        Writer() {
+            super(256);
+        }
+
+        void varint(int value) {
+            varlong(value & 0xFFFFFFFFL);
+        }
+
+        void varlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void fixedLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        /**
+         * Writes the byte length plus one, zero standing for null.
+         */
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        void strings(List<String> values) {
+            if (values == null) {
+                varint(0);
+                return;
+            }
+            varint(values.size() + 1);
+            for (String value : values) {
+                string(value);
+            }
+        }
+
+        void frontCoded(String value, String previous) {
+            int shared = value != null ? sharedPrefix(value, previous) : 0;
+            varint(shared);
+            string(value != null ? value.substring(shared) : null);
+        }
+    }
+
+    private record Reader(ByteBuffer buffer) {
+
+        int varint() {
+            return (int) varlong();
+        }
+
+        long varlong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        long fixedLong() {
+            return buffer.getLong();
+        }
+
+        String string() {
+            int length = varint();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(buffer.array(), buffer.position(), length - 1, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length - 1);
+            return value;
+        }
+
+        List<String> strings() {
+            int size = varint();
+            if (size == 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(Math.min(size - 1, buffer.remaining()));
+            for (int i = 0; i < size - 1; i++) {
+                values.add(string());
+            }
+            return values;
+        }
+
+        String frontCoded(String previous) {
+            int shared = varint();
+            String suffix = string();
+            return suffix != null ? previous.substring(0, shared) + suffix : null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package manga.reader.services;
+
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.MetadataStoreProperties;
+import manga.reader.dto.MangaInfoResult;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * File-backed store of scraped manga pages (details and chapter list) keyed by manga id, so what we
+ * know about a manga survives restarts and a stored page can be served instead of scraping it again.
+ * Values are {@link MangaInfoCodec} encoded in an embedded MVStore, which commits in the background.
+ */
+@Component
+public class MangaMetadataStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MangaMetadataStore.class);
+
+    private final MetadataStoreProperties properties;
+    private final MVStore store;
+    private final MVMap<String, byte[]> mangaInfo;
+
+    public MangaMetadataStore(MetadataStoreProperties properties) throws IOException {
+        this.properties = properties;
+        if (!properties.enabled()) {
+            this.store = null;
+            this.mangaInfo = null;
+            return;
+        }
+
+        if (properties.file().getParent() != null) {
+            Files.createDirectories(properties.file().getParent());
+        }
+        this.store = new MVStore.Builder()
+                .fileName(properties.file().toString())
+                .compress()
+                .open();
+        this.mangaInfo = store.openMap("manga-info");
+        log.info("Metadata store opened with {} manga from {}", mangaInfo.size(), properties.file());
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    public Optional<Stored> get(String mangaId) {
+        if (store == null) {
+            return Optional.empty();
+        }
+        byte[] bytes = mangaInfo.get(mangaId);
+        return bytes != null ? Optional.ofNullable(decode(mangaId, bytes)) : Optional.empty();
+    }
+
+    /**
+     * @return whether a stored page can be served without scraping it again
+     */
+    public boolean isFresh(Stored stored) {
+        return !stored.storedAt().plus(properties.freshFor()).isBefore(Instant.now());
+    }
+
+    /**
+     * @return whether a stored page can still be served while it is scraped again
+     */
+    public boolean isServable(Stored stored) {
+        return !stored.storedAt().plus(properties.maxStale()).isBefore(Instant.now());
+    }
+
+    public void put(String mangaId, MangaInfoResult value) {
+        if (store != null) {
+            mangaInfo.put(mangaId, MangaInfoCodec.encode(value, Instant.now()));
+        }
+    }
+
+    /**
+     * Decodes every stored manga, in key order, skipping (and dropping) any that can't be decoded.
+     */
+    public void forEach(BiConsumer<String, Stored> action) {
+        if (store == null) {
+            return;
+        }
+        for (Map.Entry<String, byte[]> entry : mangaInfo.entrySet()) {
+            Stored stored = decode(entry.getKey(), entry.getValue());
+            if (stored != null) {
+                action.accept(entry.getKey(), stored);
+            }
+        }
+    }
+
+    /**
+     * @return the decoded value, or null after dropping it if it is truncated, corrupt or of an unknown
+     * encoding, so the manga is scraped again rather than failing every read
+     */
+    private Stored decode(String mangaId, byte[] bytes) {
+        try {
+            return MangaInfoCodec.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping undecodable stored manga {}: {}", mangaId, e.getMessage());
+            mangaInfo.remove(mangaId, bytes);
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * A stored manga page and when it was scraped.
+     */
+    public record Stored(MangaInfoResult mangaInfo, Instant storedAt) {
+    }
+}
@@ -0,0 +1,481 @@
+package manga.reader.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import manga.reader.config.SearchIndexProperties;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.dto.SearchResult;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the manga we have already scraped (latest listings, manga pages and
+ * upstream search results), used to answer searches without going upstream.
+ * <p>
+ * Titles, authors and genres are indexed by word, by word prefix (autocomplete) and by padded
+ * trigrams (typo tolerance). A manga's score is the average over the query words of its best match:
+ * exact word 1, prefix 0.8, trigram overlap up to 0.6, each scaled by the field (title 1, author 0.7,
+ * genre 0.4). The index only answers when the best score reaches {@code reader.search-index.min-score}
+ * and upstream has not reported more pages for the same query than the local matches fill. Every page
+ * of a query comes from the same side: the first page decides, and later pages follow it.
+ * <p>
+ * Each term's posting list is an append-only array that searches read without locking, while updates
+ * touch only the slots of the terms a manga gained or lost.
+ */
+@Component
+public class MangaSearchIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern NON_DIGITS = Pattern.compile("\\D");
+
+    private static final String WORD = "w:";
+    private static final String PREFIX = "p:";
+    private static final String GRAM = "g:";
+    private static final int MIN_PREFIX = 2;
+    private static final int MAX_PREFIX = 16;
+
+    private static final float TITLE_WEIGHT = 1.0f;
+    private static final float AUTHOR_WEIGHT = 0.7f;
+    private static final float GENRE_WEIGHT = 0.4f;
+    private static final float PREFIX_MATCH = 0.8f;
+    private static final float TRIGRAM_MATCH = 0.6f;
+    private static final float MIN_TRIGRAM_OVERLAP = 0.5f;
+
+    private final SearchIndexProperties properties;
+    private final ConcurrentHashMap<String, Entry> documents = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Posting> postings = new ConcurrentHashMap<>();
+    // Normalized query -> last page upstream reported for it
+    private final Cache<String, Integer> upstreamTotalPages = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+    // Normalized query -> whether its first page was answered locally
+    private final Cache<String, Boolean> answeredBy = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Counter answeredLocally;
+    private final Counter passedUpstream;
+
+    public MangaSearchIndex(SearchIndexProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.answeredLocally = Counter.builder("search.index.queries").tag("outcome", "local").register(meterRegistry);
+        this.passedUpstream = Counter.builder("search.index.queries").tag("outcome", "upstream").register(meterRegistry);
+        Gauge.builder("search.index.documents", documents, Map::size).register(meterRegistry);
+        Gauge.builder("search.index.terms", postings, Map::size).register(meterRegistry);
+    }
+
+    public void addLatest(LatestMangaResult latest) {
+        for (LatestMangaResult.Manga manga : latest.results()) {
+            index(new Entry(manga.mangaID(), manga.title(), manga.img(), List.of(), List.of(), null, manga.view(), Map.of()));
+        }
+    }
+
+    public void addSearchResults(SearchResult search) {
+        PageInfo pageInfo = search.pageInfo();
+        if (pageInfo != null && pageInfo.searchKey() != null) {
+            int totalPages = pageNumber(pageInfo.totalPage());
+            if (totalPages > 0) {
+                upstreamTotalPages.put(String.join(" ", tokens(pageInfo.searchKey())), totalPages);
+            }
+        }
+        for (SearchResult.Manga manga : search.results()) {
+            List<String> authors = manga.author() == null || manga.author().isBlank() ? List.of() : List.of(manga.author());
+            index(new Entry(manga.id(), manga.title(), manga.img(), authors, List.of(), manga.update(), manga.view(), Map.of()));
+        }
+    }
+
+    public void addMangaInfo(String mangaId, MangaInfoResult mangaInfo) {
+        index(new Entry(mangaId, mangaInfo.title(), mangaInfo.img(), mangaInfo.authors(), mangaInfo.genres(),
+                mangaInfo.lastUpdate(), mangaInfo.view(), Map.of()));
+    }
+
+    /**
+     * Answers a search from the index.
+     *
+     * @return the requested page of matches, possibly empty past the last one, or empty if the query is
+     *         left to upstream: the index is not confident enough, upstream has more pages of it, or its
+     *         first page was answered upstream
+     */
+    public Optional<SearchResult> search(String query, int page) {
+        if (!properties.enabled()) {
+            return Optional.empty();
+        }
+
+        List<String> words = tokens(query);
+        String key = String.join(" ", words);
+        Boolean local = page > 1 ? answeredBy.getIfPresent(key) : null;
+        List<Match> matches = Boolean.FALSE.equals(local) || words.isEmpty() ? List.of() : matches(words);
+        int pageSize = Math.max(properties.pageSize(), 1);
+        int totalPages = (matches.size() + pageSize - 1) / pageSize;
+        if (local == null) {
+            Integer upstreamPages = upstreamTotalPages.getIfPresent(key);
+            local = !matches.isEmpty() && (upstreamPages == null || upstreamPages <= totalPages);
+            answeredBy.put(key, local);
+        }
+        if (!local || matches.isEmpty()) {
+            passedUpstream.increment();
+            return Optional.empty();
+        }
+
+        int from = Math.min((page - 1) * pageSize, matches.size());
+        List<SearchResult.Manga> results = new ArrayList<>(Math.min(pageSize, matches.size() - from));
+        for (Match match : matches.subList(from, Math.min(from + pageSize, matches.size()))) {
+            Entry entry = match.entry();
+            results.add(new SearchResult.Manga(entry.id(), entry.img(), entry.title(), String.join(", ", entry.authors()),
+                    entry.update() != null ? entry.update() : "", entry.view() != null ? entry.view() : ""));
+        }
+        answeredLocally.increment();
+        return Optional.of(new SearchResult(results, new PageInfo(String.valueOf(page), String.valueOf(totalPages), query)));
+    }
+
+    /**
+     * @return the matches reasonably close to the best one, best first, then the most viewed, or none if
+     *         the best one scores below the minimum
+     */
+    private List<Match> matches(List<String> words) {
+        Map<String, Float> scores = score(words);
+        float bestScore = 0;
+        for (float score : scores.values()) {
+            bestScore = Math.max(bestScore, score);
+        }
+        if (bestScore < properties.minScore()) {
+            return List.of();
+        }
+
+        float cutoff = (float) (properties.minScore() / 2);
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<String, Float> scored : scores.entrySet()) {
+            Entry entry = documents.get(scored.getKey());
+            if (entry != null && scored.getValue() >= cutoff) {
+                matches.add(new Match(entry, scored.getValue(), views(entry.view())));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(Match::score).reversed()
+                .thenComparing(Comparator.comparingLong(Match::views).reversed())
+                .thenComparing(match -> match.entry().title()));
+        return matches;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    private Map<String, Float> score(List<String> words) {
+        Map<String, Float> totals = new HashMap<>();
+        for (String word : words) {
+            Map<String, Float> best = new HashMap<>();
+            collect(best, postings.get(WORD + word), 1f);
+            if (word.length() >= MIN_PREFIX) {
+                collect(best, postings.get(PREFIX + word.substring(0, Math.min(word.length(), MAX_PREFIX))), PREFIX_MATCH);
+            }
+            collectTrigrams(best, word);
+            for (Map.Entry<String, Float> match : best.entrySet()) {
+                totals.merge(match.getKey(), match.getValue() / words.size(), Float::sum);
+            }
+        }
+        return totals;
+    }
+
+    private static void collect(Map<String, Float> best, Posting posting, float factor) {
+        if (posting == null) {
+            return;
+        }
+        Slots slots = posting.slots();
+        for (int i = 0; i < slots.size(); i++) {
+            String id = slots.ids()[i];
+            if (id != null) {
+                best.merge(id, slots.weights()[i] * factor, Math::max);
+            }
+        }
+    }
+
+    private void collectTrigrams(Map<String, Float> best, String word) {
+        List<String> grams = trigrams(word);
+        if (grams.size() < 3) {
+            return;
+        }
+        // id -> {grams shared with the word, highest field weight among them}
+        Map<String, float[]> overlaps = new HashMap<>();
+        for (String gram : grams) {
+            Posting posting = postings.get(GRAM + gram);
+            if (posting == null) {
+                continue;
+            }
+            Slots slots = posting.slots();
+            for (int i = 0; i < slots.size(); i++) {
+                String id = slots.ids()[i];
+                if (id == null) {
+                    continue;
+                }
+                float[] overlap = overlaps.computeIfAbsent(id, key -> new float[2]);
+                overlap[0]++;
+                overlap[1] = Math.max(overlap[1], slots.weights()[i]);
+            }
+        }
+        for (Map.Entry<String, float[]> overlap : overlaps.entrySet()) {
+            float similarity = overlap.getValue()[0] / grams.size();
+            if (similarity >= MIN_TRIGRAM_OVERLAP) {
+                best.merge(overlap.getKey(), TRIGRAM_MATCH * similarity * overlap.getValue()[1], Math::max);
+            }
+        }
+    }
+
+    private void index(Entry incoming) {
+        if (incoming.id() == null || incoming.id().isBlank() || incoming.title() == null) {
+            return;
+        }
+
+        writeLock.lock();
+        try {
+            Entry previous = documents.get(incoming.id());
+            Entry entry = withTerms(merge(previous, incoming));
+            documents.put(entry.id(), entry);
+
+            Map<String, Float> previousTerms = previous != null ? previous.terms() : Map.of();
+            for (Map.Entry<String, Float> term : entry.terms().entrySet()) {
+                if (!term.getValue().equals(previousTerms.get(term.getKey()))) {
+                    postings.computeIfAbsent(term.getKey(), key -> new Posting()).put(entry.id(), term.getValue());
+                }
+            }
+            for (String term : previousTerms.keySet()) {
+                Posting posting = postings.get(term);
+                if (posting != null && !entry.terms().containsKey(term) && posting.remove(entry.id())) {
+                    postings.remove(term);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Fills what a partial source (a listing row has no authors or genres) does not know from what
+     * was indexed before.
+     */
+    private static Entry merge(Entry previous, Entry incoming) {
+        if (previous == null) {
+            return incoming;
+        }
+        return new Entry(incoming.id(),
+                orElse(incoming.title(), previous.title()),
+                orElse(incoming.img(), previous.img()),
+                incoming.authors().isEmpty() ? previous.authors() : incoming.authors(),
+                incoming.genres().isEmpty() ? previous.genres() : incoming.genres(),
+                orElse(incoming.update(), previous.update()),
+                orElse(incoming.view(), previous.view()),
+                Map.of());
+    }
+
+    private static String orElse(String value, String fallback) {
+        return value != null && !value.isBlank() ? value : fallback;
+    }
+
+    private static Entry withTerms(Entry entry) {
+        Map<String, Float> terms = new HashMap<>();
+        addTerms(terms, entry.title(), TITLE_WEIGHT);
+        for (String author : entry.authors()) {
+            addTerms(terms, author, AUTHOR_WEIGHT);
+        }
+        for (String genre : entry.genres()) {
+            addTerms(terms, genre, GENRE_WEIGHT);
+        }
+        return new Entry(entry.id(), entry.title(), entry.img(), entry.authors(), entry.genres(), entry.update(),
+                entry.view(), Map.copyOf(terms));
+    }
+
+    private static void addTerms(Map<String, Float> terms, String text, float weight) {
+        for (String word : tokens(text)) {
+            terms.merge(WORD + word, weight, Math::max);
+            for (int length = MIN_PREFIX; length <= Math.min(word.length(), MAX_PREFIX); length++) {
+                terms.merge(PREFIX + word.substring(0, length), weight, Math::max);
+            }
+            for (String gram : trigrams(word)) {
+                terms.merge(GRAM + gram, weight, Math::max);
+            }
+        }
+    }
+
+    static List<String> tokens(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(folded.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> trigrams(String word) {
+        String padded = "$" + word + "$";
+        List<String> grams = new ArrayList<>(Math.max(padded.length() - 2, 0));
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    private static int pageNumber(String page) {
+        try {
+            return page != null ? Integer.parseInt(page.trim()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long views(String view) {
+        if (view == null) {
+            return 0;
+        }
+        String digits = NON_DIGITS.matcher(view).replaceAll("");
+        try {
+            return digits.isEmpty() ? 0 : Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private record Entry(String id, String title, String img, List<String> authors, List<String> genres,
+                         String update, String view, Map<String, Float> terms) {
+    }
+
+    private record Match(Entry entry, float score, long views) {
+    }
+
+    /**
+     * Manga ids containing a term, with the field weight they contain it with. Only written under the
+     * write lock, and read through {@link #slots()} without locking.
+     * <p>
+     * Ids are appended; a removed id leaves a null tombstone until tombstones fill half the slots and
+     * the live ids are copied to new arrays. Readers only look at the slots published to them, so the
+     * arrays are written in place except for tombstones and weight updates, which readers may see or not.
+     * Short lists are scanned for an id, longer ones keep an id to slot map.
+     */
+    private static final class Posting {
+
+        private static final int MAPPED_ABOVE = 16;
+
+        private volatile Slots slots = new Slots(new String[4], new float[4], 0);
+        private Map<String, Integer> slotOf;
+        private int live;
+
+        Slots slots() {
+            return slots;
+        }
+
+        void put(String id, float weight) {
+            Slots current = slots;
+            int slot = slotOf(current, id);
+            if (slot >= 0) {
+                current.weights()[slot] = weight;
+                return;
+            }
+            if (current.size() == current.ids().length) {
+                slots = current = copy(current, live * 2);
+                if (slotOf != null) {
+                    mapSlots();
+                }
+            }
+            current.ids()[current.size()] = id;
+            current.weights()[current.size()] = weight;
+            live++;
+            if (slotOf != null) {
+                slotOf.put(id, current.size());
+            }
+            slots = new Slots(current.ids(), current.weights(), current.size() + 1);
+            if (slotOf == null && live > MAPPED_ABOVE) {
+                mapSlots();
+            }
+        }
+
+        /**
+         * @return whether the posting is left empty, and the term should be dropped
+         */
+        boolean remove(String id) {
+            Slots current = slots;
+            int slot = slotOf(current, id);
+            if (slot < 0) {
+                return false;
+            }
+            current.ids()[slot] = null;
+            live--;
+            if (slotOf != null) {
+                slotOf.remove(id);
+            }
+            if (live > 0 && (current.size() - live) * 2 >= current.size()) {
+                slots = copy(current, Math.max(live * 2, 4));
+                slotOf = null;
+                if (live > MAPPED_ABOVE) {
+                    mapSlots();
+                }
+            }
+            return live == 0;
+        }
+
+        private int slotOf(Slots current, String id) {
+            if (slotOf != null) {
+                return slotOf.getOrDefault(id, -1);
+            }
+            for (int i = 0; i < current.size(); i++) {
+                if (id.equals(current.ids()[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void mapSlots() {
+            Slots current = slots;
+            slotOf = new HashMap<>(current.size() * 2);
+            for (int i = 0; i < current.size(); i++) {
+                if (current.ids()[i] != null) {
+                    slotOf.put(current.ids()[i], i);
+                }
+            }
+        }
+
+        /**
+         * @return the live ids moved to new arrays of {@code capacity}, dropping tombstones
+         */
+        private static Slots copy(Slots current, int capacity) {
+            String[] ids = new String[capacity];
+            float[] weights = new float[capacity];
+            int size = 0;
+            for (int i = 0; i < current.size(); i++) {
+                if (current.ids()[i] != null) {
+                    ids[size] = current.ids()[i];
+                    weights[size] = current.weights()[i];
+                    size++;
+                }
+            }
+            return new Slots(ids, weights, size);
+        }
+    }
+
+    /**
+     * The first {@code size} slots of a posting list; null ids are removed ones.
+     */
+    private record Slots(String[] ids, float[] weights, int size) {
+    }
+}
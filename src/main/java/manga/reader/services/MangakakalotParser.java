@@ -0,0 +1,285 @@
+package manga.reader.services;
+
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.dto.SearchResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts results from MangaKakalot pages.
+ * Selectors and patterns are compiled once: Jsoup parses a CSS query on every {@code select(String)}
+ * call, which on a 1,500-chapter page cost more than the matching itself. Each row is queried for its
+ * links once, and duplicates are dropped through hash sets rather than list scans.
+ * <p>
+ * The {@code *_SECTIONS} lists name the parts of a page the extraction reads. Once they have all been
+ * parsed the rest of the page is not needed, see {@link manga.reader.upstream.PartialDocumentParser}.
+ * They are plain class, id and attribute selectors: they are tested against every element as it is
+ * closed, and a descendant selector there costs more than the parse itself.
+ */
+public class MangakakalotParser {
+
+    private static final Evaluator LINKS = QueryParser.parse("a");
+    private static final Evaluator LINK_IMAGES = QueryParser.parse("a img");
+    private static final Evaluator CURRENT_PAGE = QueryParser.parse(".panel_page_number .group_page .page_select");
+    private static final Evaluator LAST_PAGE = QueryParser.parse(".panel_page_number .group_page .page_last");
+
+    private static final Evaluator LATEST_ITEMS = QueryParser.parse(".truyen-list .list-truyen-item-wrap");
+    private static final Evaluator LATEST_VIEWS = QueryParser.parse(".aye_icon");
+    private static final Evaluator LATEST_DESCRIPTION = QueryParser.parse("p");
+
+    private static final Evaluator SEARCH_ITEMS = QueryParser.parse(".daily-update .panel_story_list .story_item");
+    private static final Evaluator SEARCH_TITLE = QueryParser.parse(".story_name a");
+    private static final Evaluator SEARCH_AUTHOR = QueryParser.parse(".story_item_right span:contains(Author)");
+    private static final Evaluator SEARCH_UPDATED = QueryParser.parse(".story_item_right span:contains(Updated)");
+    private static final Evaluator SEARCH_VIEWS = QueryParser.parse(".story_item_right span:contains(View)");
+
+    private static final Evaluator INFO_THUMBNAIL = QueryParser.parse(".manga-info-top .manga-info-pic img");
+    private static final Evaluator INFO_TITLE = QueryParser.parse(".manga-info-top .manga-info-text li:nth-of-type(1) h1");
+    private static final Evaluator INFO_AUTHORS = QueryParser.parse(".manga-info-top .manga-info-text li:contains(Author) a");
+    private static final Evaluator INFO_STATUS = QueryParser.parse(".manga-info-top .manga-info-text li:nth-of-type(2)");
+    private static final Evaluator INFO_LAST_UPDATE = QueryParser.parse(".manga-info-top .manga-info-text li:nth-of-type(3)");
+    private static final Evaluator INFO_VIEWS = QueryParser.parse(".manga-info-top .manga-info-text li:nth-of-type(5)");
+    private static final Evaluator INFO_GENRES = QueryParser.parse(".manga-info-top .manga-info-text li:contains(Genres) a");
+    private static final Evaluator INFO_JSON_LD = QueryParser.parse("script[type=application/ld+json]");
+    private static final Evaluator INFO_SUMMARY = QueryParser.parse("#contentBox");
+    private static final Evaluator INFO_CHAPTER_ROWS = QueryParser.parse(".chapter .manga-info-chapter .chapter-list .row");
+    private static final Evaluator ROW_VIEWS = QueryParser.parse("span:nth-of-type(2)");
+    private static final Evaluator ROW_UPLOADED = QueryParser.parse("span:nth-of-type(3)");
+
+    private static final Evaluator CHAPTER_HEADINGS = QueryParser.parse("h1, h2");
+    private static final Evaluator CHAPTER_IMAGES = QueryParser.parse(".container-chapter-reader img");
+    private static final Evaluator CHAPTER_LINKS = QueryParser.parse("select option, .chapter-selection a");
+
+    private static final Pattern PAGE_NUMBER = Pattern.compile("page=(\\d+)");
+    private static final Pattern MANGA_PATH = Pattern.compile("/manga/", Pattern.LITERAL);
+    private static final Pattern FALLBACK_SRC = Pattern.compile("this\\.src='([^']+)'");
+    private static final Pattern CHAPTER_NUMBER = Pattern.compile("Chapter\\s+(\\d+(\\.\\d+)?)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Manga page: the info block, the summary, the rating metadata and the chapter list.
+     */
+    public static final List<Evaluator> MANGA_INFO_SECTIONS = List.of(
+            QueryParser.parse(".manga-info-top"),
+            INFO_SUMMARY,
+            INFO_JSON_LD,
+            QueryParser.parse(".manga-info-chapter"));
+
+    /**
+     * Chapter page: the reader with the page images and one chapter selector. Further selectors
+     * repeat the same chapters, which the extraction de-duplicates anyway. Only the
+     * {@code .chapter-selection} block counts, so an unrelated {@code <select>} earlier on the page
+     * does not end the parse before the reader.
+     */
+    public static final List<Evaluator> CHAPTER_SECTIONS = List.of(
+            QueryParser.parse(".container-chapter-reader"),
+            QueryParser.parse(".chapter-selection"));
+
+    private final String baseUrl;
+
+    public MangakakalotParser(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public LatestMangaResult parseLatestManga(Document doc) {
+        Elements mangaItems = doc.select(LATEST_ITEMS);
+        List<LatestMangaResult.Manga> results = new ArrayList<>(mangaItems.size());
+        for (Element item : mangaItems) {
+            Elements links = item.select(LINKS);
+            Element link = links.first();
+            String mangaId = link.attr("href").replace("/manga/", "").replace(baseUrl, "");
+            String img = item.select(LINK_IMAGES).first().attr("data-src");
+            String title = link.attr("title");
+
+            Element latestChapterTag = links.size() > 2 ? links.get(2) : null;
+            String latestChapter = latestChapterTag != null && latestChapterTag.hasAttr("title") ?
+                    latestChapterTag.attr("title") : "N/A";
+            String chapterId = latestChapterTag != null && latestChapterTag.hasAttr("href") ?
+                    latestChapterTag.attr("href").replace("/chapter/", "") : "N/A";
+
+            String view = item.select(LATEST_VIEWS).text().trim();
+            Element descriptionTag = item.selectFirst(LATEST_DESCRIPTION);
+            String description = descriptionTag != null ? descriptionTag.text().trim() : "N/A";
+
+            results.add(new LatestMangaResult.Manga(mangaId, img, title, latestChapter, chapterId, view, description));
+        }
+
+        return new LatestMangaResult(results, new PageInfo(currentPage(doc), totalPage(doc), null));
+    }
+
+    public SearchResult parseSearch(Document doc, String query) {
+        Elements items = doc.select(SEARCH_ITEMS);
+        List<SearchResult.Manga> mangaList = new ArrayList<>(items.size());
+
+        for (Element item : items) {
+            String fullUrl = item.select(LINKS).first().attr("href");
+            String mangaId = MANGA_PATH.split(fullUrl)[1];
+            String thumbnail = item.select(LINK_IMAGES).first().attr("src");
+            String title = item.select(SEARCH_TITLE).text().trim();
+
+            String author = item.select(SEARCH_AUTHOR).text().replace("Author(s) : ", "");
+            String update = item.select(SEARCH_UPDATED).text().replace("Updated : ", "");
+            String view = item.select(SEARCH_VIEWS).text().replace("View : ", "");
+
+            mangaList.add(new SearchResult.Manga(mangaId, thumbnail, title, author, update, view));
+        }
+
+        return new SearchResult(mangaList, new PageInfo(currentPage(doc), totalPage(doc), query));
+    }
+
+    public MangaInfoResult parseMangaInfo(Document doc) {
+        String thumbnail = doc.select(INFO_THUMBNAIL).attr("src");
+        String title = doc.select(INFO_TITLE).text().trim();
+        List<String> authors = trimmedTexts(doc.select(INFO_AUTHORS));
+        String status = doc.select(INFO_STATUS).text().replace("Status : ", "");
+        String lastUpdate = doc.select(INFO_LAST_UPDATE).text().replace("Last updated : ", "");
+        String view = doc.select(INFO_VIEWS).text().replace("View : ", "");
+        List<String> genres = trimmedTexts(doc.select(INFO_GENRES));
+
+        MangaInfoResult.Rating rating = new MangaInfoResult.Rating(0.0, 5, 0);
+        Element jsonLdTag = doc.selectFirst(INFO_JSON_LD);
+        if (jsonLdTag != null) {
+            try {
+                JSONObject ratingData = new JSONObject(jsonLdTag.data());
+                rating = new MangaInfoResult.Rating(ratingData.optDouble("ratingValue", 0.0), 5,
+                        ratingData.optInt("ratingCount", 0));
+            } catch (JSONException e) {
+                // Ignore parsing errors
+            }
+        }
+
+        String summary = doc.select(INFO_SUMMARY).text().trim();
+
+        Elements rows = doc.select(INFO_CHAPTER_ROWS);
+        List<MangaInfoResult.Chapter> chapters = new ArrayList<>(rows.size());
+        for (Element row : rows) {
+            Elements links = row.select(LINKS);
+            String chapterName = links.text().trim();
+            String chapterId = MANGA_PATH.split(links.attr("href"))[1];
+            String views = row.select(ROW_VIEWS).text().trim();
+            String timeUploaded = row.select(ROW_UPLOADED).text().trim();
+
+            chapters.add(new MangaInfoResult.Chapter(chapterName, chapterId, views, timeUploaded));
+        }
+
+        return new MangaInfoResult(thumbnail, title, authors, status, lastUpdate, view, genres, rating, summary, chapters);
+    }
+
+    public ChapterResult parseChapter(Document doc, String mangaId, String chapterId) {
+        String title = "";
+        for (Element heading : doc.select(CHAPTER_HEADINGS)) {
+            String text = heading.text();
+            if (text.contains(mangaId)) {
+                title = text.trim();
+                break;
+            }
+        }
+
+        // Each page keeps the mirror of its own <img>, so a missing fallback or a repeated image
+        // cannot shift the mirrors of later pages
+        Elements images = doc.select(CHAPTER_IMAGES);
+        Set<String> primary = new HashSet<>(images.size() * 2);
+        List<ChapterPage> pages = new ArrayList<>(images.size());
+        for (Element img : images) {
+            String primarySrc = img.attr("src");
+            if (!primarySrc.isEmpty() && primary.add(primarySrc)) {
+                pages.add(new ChapterPage(pages.size() + 1, primarySrc, fallbackSrc(img)));
+            }
+        }
+
+        Set<String> chapterNumbers = new LinkedHashSet<>();
+        for (Element element : doc.select(CHAPTER_LINKS)) {
+            String chapterText = element.text().trim();
+            if (chapterText.toLowerCase().contains("chapter")) {
+                Matcher matcher = CHAPTER_NUMBER.matcher(chapterText);
+                if (matcher.find()) {
+                    chapterNumbers.add(matcher.group(1));
+                }
+            }
+        }
+
+        return new ChapterResult(title, pages, sortDescending(chapterNumbers), chapterId);
+    }
+
+    /**
+     * Reads one page image as soon as it has been parsed, before the rest of the chapter page is in.
+     *
+     * @return the page, or null if the element is not a page image of the chapter reader
+     */
+    public ChapterPage parseChapterPage(Element element, int page) {
+        if (!element.nameIs("img") || !element.is(CHAPTER_IMAGES)) {
+            return null;
+        }
+        String primarySrc = element.attr("src");
+        if (primarySrc.isEmpty()) {
+            return null;
+        }
+        return new ChapterPage(page, primarySrc, fallbackSrc(element));
+    }
+
+    private static String fallbackSrc(Element img) {
+        String onerror = img.attr("onerror");
+        if (onerror.isEmpty()) {
+            return null;
+        }
+        Matcher matcher = FALLBACK_SRC.matcher(onerror);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Sorts chapter numbers highest first, parsing each number once. The sort is stable, so numbers
+     * that compare equal keep their page order.
+     */
+    private static List<String> sortDescending(Set<String> chapterNumbers) {
+        ChapterNumber[] numbers = new ChapterNumber[chapterNumbers.size()];
+        int i = 0;
+        for (String number : chapterNumbers) {
+            numbers[i++] = new ChapterNumber(Float.parseFloat(number), number);
+        }
+        Arrays.sort(numbers, Comparator.comparing(ChapterNumber::value, (a, b) -> Float.compare(b, a)));
+
+        List<String> sorted = new ArrayList<>(numbers.length);
+        for (ChapterNumber number : numbers) {
+            sorted.add(number.text());
+        }
+        return sorted;
+    }
+
+    private static List<String> trimmedTexts(Elements elements) {
+        List<String> texts = new ArrayList<>(elements.size());
+        for (Element element : elements) {
+            texts.add(element.text().trim());
+        }
+        return texts;
+    }
+
+    private static String currentPage(Document doc) {
+        return doc.select(CURRENT_PAGE).text().trim();
+    }
+
+    private static String totalPage(Document doc) {
+        String totalPageHref = doc.select(LAST_PAGE).last().attr("href");
+        Matcher pageMatcher = PAGE_NUMBER.matcher(totalPageHref);
+        return pageMatcher.find() ? pageMatcher.group(1) : "1";
+    }
+
+    private record ChapterNumber(float value, String text) {}
+}
@@ -1,326 +1,319 @@
 package manga.reader.services;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.jsoup.Jsoup;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.ParserProperties;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.ScrapeResult;
+import manga.reader.dto.SearchResult;
+import manga.reader.upstream.ScrapeTimers;
+import manga.reader.upstream.SingleFlight;
+import manga.reader.upstream.UpstreamClient;
+import manga.reader.upstream.UpstreamUrls;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriUtils;
 
 @Service
 public class MangakakalotService {
     private final String url;
-
-    public MangakakalotService() {
+    private final UpstreamClient upstreamClient;
+    private final MangakakalotParser parser;
+    private final boolean earlyTermination;
+    private final SingleFlight<String, ScrapeResult> inFlightScrapes = new SingleFlight<>();
+    private final ConcurrentHashMap<String, ChapterStream> streamingChapters = new ConcurrentHashMap<>();
+    private final ExecutorService chapterScrapes = Executors.newVirtualThreadPerTaskExecutor();
+    private final PageMetrics latestMetrics;
+    private final PageMetrics searchMetrics;
+    private final PageMetrics mangaInfoMetrics;
+    private final PageMetrics chapterMetrics;
+
+    public MangakakalotService(UpstreamClient upstreamClient, ParserProperties parserProperties, MeterRegistry meterRegistry) {
         this.url = "https://www.mangakakalot.gg";
+        this.upstreamClient = upstreamClient;
+        this.parser = new MangakakalotParser(this.url);
+        this.earlyTermination = parserProperties.earlyTermination();
+        this.latestMetrics = new PageMetrics(meterRegistry, "latest");
+        this.searchMetrics = new PageMetrics(meterRegistry, "search");
+        this.mangaInfoMetrics = new PageMetrics(meterRegistry, "manga");
+        this.chapterMetrics = new PageMetrics(meterRegistry, "chapter");
     }
 
     /**
      * Get the latest manga releases
      * @param page Page number
-     * @return Map containing results
+     * @return the listing page
      * @throws IOException if connection fails
      */
-    public Map<String, Object> latestManga(int page) throws IOException {
-        Document doc = Jsoup.connect(String.format("%s/manga-list/latest-manga?page=%d", this.url, page)).get();
-        List<Map<String, Object>> results = new ArrayList<>();
-
-        Elements mangaItems = doc.select(".truyen-list .list-truyen-item-wrap");
-        for (Element item : mangaItems) {
-            Map<String, Object> manga = new HashMap<>();
-
-            String mangaId = item.select("a").first().attr("href").replace("/manga/", "").replace(this.url, "");
-            String img = item.select("a img").first().attr("data-src");
-            String title = item.select("a").first().attr("title");
-
-            Element latestChapterTag = item.select("a").size() > 2 ? item.select("a").get(2) : null;
-            String latestChapter = latestChapterTag != null && latestChapterTag.hasAttr("title") ?
-                    latestChapterTag.attr("title") : "N/A";
-            String chapterId = latestChapterTag != null && latestChapterTag.hasAttr("href") ?
-                    latestChapterTag.attr("href").replace("/chapter/", "") : "N/A";
-
-            String view = item.select(".aye_icon").text().trim();
-            Element descriptionTag = item.select("p").first();
-            String description = descriptionTag != null ? descriptionTag.text().trim() : "N/A";
-
-            manga.put("mangaID", mangaId);
-            manga.put("img", img);
-            manga.put("title", title);
-            manga.put("latestChapter", latestChapter);
-            manga.put("chapterID", chapterId);
-            manga.put("view", view);
-            manga.put("description", description);
-
-            results.add(manga);
-        }
-
-        // Get pagination info
-        String currentPage = doc.select(".panel_page_number .group_page .page_select").text().trim();
-        String totalPageHref = doc.select(".panel_page_number .group_page .page_last").last().attr("href");
-        Pattern pagePattern = Pattern.compile("page=(\\d+)");
-        Matcher pageMatcher = pagePattern.matcher(totalPageHref);
-        String pageNumber = pageMatcher.find() ? pageMatcher.group(1) : "1";
-
-        Map<String, Object> pageInfo = new HashMap<>();
-        pageInfo.put("page", currentPage);
-        pageInfo.put("totalPage", pageNumber);
-        results.add(pageInfo);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("results", results);
-        return response;
+    public LatestMangaResult latestManga(int page) throws IOException {
+        return scrape(latestMetrics, String.format("%s/manga-list/latest-manga?page=%d", this.url, page), List.of(),
+                parser::parseLatestManga);
     }
 
     /**
      * Search for manga
      * @param query Search query
      * @param page Page number
-     * @return Map containing results
+     * @return the page of search results
      * @throws IOException if connection fails
      */
-    public Map<String, Object> search(String query, int page) throws IOException {
+    public SearchResult search(String query, int page) throws IOException {
         if (query == null || query.isEmpty()) {
             throw new IllegalArgumentException("Missing query!");
         }
 
         page = Math.max(page, 1);
-        Document doc = Jsoup.connect(String.format("%s/search/story/%s?page=%d", this.url, query, page)).get();
-
-        List<Map<String, Object>> mangaList = new ArrayList<>();
-        Elements items = doc.select(".daily-update .panel_story_list .story_item");
-
-        for (Element item : items) {
-            Map<String, Object> mangaInfo = new HashMap<>();
-
-            String fullUrl = item.select("a").first().attr("href");
-            String mangaId = fullUrl.split("/manga/")[1];
-            String thumbnail = item.select("a img").first().attr("src");
-            String title = item.select(".story_name a").text().trim();
-
-            String author = item.select(".story_item_right span:contains(Author)").text().replace("Author(s) : ", "");
-            String update = item.select(".story_item_right span:contains(Updated)").text().replace("Updated : ", "");
-            String view = item.select(".story_item_right span:contains(View)").text().replace("View : ", "");
-
-            mangaInfo.put("id", mangaId);
-            mangaInfo.put("img", thumbnail);
-            mangaInfo.put("title", title);
-            mangaInfo.put("author", author);
-            mangaInfo.put("update", update);
-            mangaInfo.put("view", view);
-
-            mangaList.add(mangaInfo);
-        }
-
-        // Get pagination info
-        String currentPage = doc.select(".panel_page_number .group_page .page_select").text().trim();
-        String totalPageHref = doc.select(".panel_page_number .group_page .page_last").last().attr("href");
-        Pattern pagePattern = Pattern.compile("page=(\\d+)");
-        Matcher pageMatcher = pagePattern.matcher(totalPageHref);
-        String pageNumber = pageMatcher.find() ? pageMatcher.group(1) : "1";
-
-        List<Map<String, Object>> pages = new ArrayList<>();
-        Map<String, Object> pageInfo = new HashMap<>();
-        pageInfo.put("page", currentPage);
-        pageInfo.put("totalPage", pageNumber);
-        pageInfo.put("searchKey", query);
-        pages.add(pageInfo);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("results", mangaList);
-        response.put("pages", pages);
-
-        return response;
+        String path = UriUtils.encodePathSegment(query, StandardCharsets.UTF_8);
+        return scrape(searchMetrics, String.format("%s/search/story/%s?page=%d", this.url, path, page), List.of(),
+                doc -> parser.parseSearch(doc, query));
     }
 
     /**
      * Get detailed information about a manga
      * @param mangaId Manga ID
-     * @return Map containing results
+     * @return details and chapter list of the manga
      * @throws IOException if connection fails
      */
-    public Map<String, Object> mangaInfo(String mangaId) throws IOException {
+    public MangaInfoResult mangaInfo(String mangaId) throws IOException {
         if (mangaId == null || mangaId.isEmpty()) {
             throw new IllegalArgumentException("Missing id!");
         }
 
-        Document doc = Jsoup.connect(String.format("%s/manga/%s", this.url, mangaId)).get();
-
-        Map<String, Object> mangaData = new HashMap<>();
-
-        String thumbnail = doc.select(".manga-info-top .manga-info-pic img").attr("src");
-        String title = doc.select(".manga-info-top .manga-info-text li:nth-of-type(1) h1").text().trim();
-
-        List<String> authors = new ArrayList<>();
-        Elements authorElements = doc.select(".manga-info-top .manga-info-text li:contains(Author) a");
-        for (Element author : authorElements) {
-            authors.add(author.text().trim());
-        }
+        return scrape(mangaInfoMetrics, String.format("%s/manga/%s", this.url, mangaId), MangakakalotParser.MANGA_INFO_SECTIONS,
+                parser::parseMangaInfo);
+    }
 
-        String status = doc.select(".manga-info-top .manga-info-text li:nth-of-type(2)").text().replace("Status : ", "");
-        String lastUpdate = doc.select(".manga-info-top .manga-info-text li:nth-of-type(3)").text().replace("Last updated : ", "");
-        String view = doc.select(".manga-info-top .manga-info-text li:nth-of-type(5)").text().replace("View : ", "");
+    /**
+     * Fetch a specific chapter of a manga. Shares the scrape of a chapter already being streamed.
+     * @param chapterPath Chapter path
+     * @return page images and chapter list
+     * @throws IOException if connection fails
+     */
+    public ChapterResult fetchChapter(String chapterPath) throws IOException {
+        return streamChapter(chapterPath).await();
+    }
 
-        List<String> genres = new ArrayList<>();
-        Elements genreElements = doc.select(".manga-info-top .manga-info-text li:contains(Genres) a");
-        for (Element genre : genreElements) {
-            genres.add(genre.text().trim());
+    /**
+     * Starts scraping a chapter, or joins the scrape of it already in flight. The scrape runs on its
+     * own virtual thread and appends each distinct page image to the returned stream as soon as it has
+     * been parsed from the incoming page; callers replay the pages on their own thread, so writing them
+     * to a slow client never holds the upstream connection or its scrape permit.
+     * @param chapterPath Chapter path
+     * @return the chapter's pages as they arrive, then the same result as {@link #fetchChapter(String)}
+     */
+    public ChapterStream streamChapter(String chapterPath) {
+        String fullUrl = String.format("%s/manga/%s", this.url, chapterPath);
+        String key = UpstreamUrls.normalize(fullUrl);
+        ChapterStream own = new ChapterStream();
+        ChapterStream existing = streamingChapters.putIfAbsent(key, own);
+        if (existing != null) {
+            return existing;
         }
-
-        // Parse rating
-        Map<String, Object> rating = new HashMap<>();
-        rating.put("score", 0.0);
-        rating.put("outOf", 5);
-        rating.put("votes", 0);
-
-        Element jsonLdTag = doc.select("script[type=application/ld+json]").first();
-        if (jsonLdTag != null) {
-            try {
-                JSONObject ratingData = new JSONObject(jsonLdTag.data());
-                rating.put("score", ratingData.optDouble("ratingValue", 0.0));
-                rating.put("votes", ratingData.optInt("ratingCount", 0));
-            } catch (JSONException e) {
-                // Ignore parsing errors
-            }
+        try {
+            chapterScrapes.execute(() -> {
+                try {
+                    own.complete(scrapeChapter(fullUrl, chapterPath, own));
+                } catch (IOException | RuntimeException e) {
+                    own.fail(e);
+                } catch (Error e) {
+                    own.fail(e);
+                    throw e;
+                } finally {
+                    streamingChapters.remove(key, own);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            streamingChapters.remove(key, own);
+            own.fail(e);
         }
+        return own;
+    }
 
-        String summary = doc.select("#contentBox").text().trim();
-
-        List<Map<String, Object>> chapters = new ArrayList<>();
-        Elements rows = doc.select(".chapter .manga-info-chapter .chapter-list .row");
-        for (Element row : rows) {
-            Map<String, Object> chapter = new HashMap<>();
-
-            String chapterName = row.select("a").text().trim();
-            String chapterIdUrl = row.select("a").attr("href");
-            String chapterId = chapterIdUrl.split("/manga/")[1];
-            String views = row.select("span:nth-of-type(2)").text().trim();
-            String timeUploaded = row.select("span:nth-of-type(3)").text().trim();
+    @PreDestroy
+    public void shutdown() {
+        chapterScrapes.shutdownNow();
+    }
 
-            chapter.put("chapterName", chapterName);
-            chapter.put("chapterID", chapterId);
-            chapter.put("views", views);
-            chapter.put("timeUploaded", timeUploaded);
+    private ChapterResult scrapeChapter(String fullUrl, String chapterPath, ChapterStream stream) throws IOException {
+        String[] parts = chapterPath.replace("chapter-", "").split("/");
+        String mangaId = parts[0];
+        String chapterId = parts.length > 1 ? parts[1] : "";
 
-            chapters.add(chapter);
+        Set<String> streamed = new HashSet<>();
+        Document document = upstreamClient.fetchDocument(fullUrl,
+                earlyTermination ? MangakakalotParser.CHAPTER_SECTIONS : List.of(), chapterMetrics.fetch(), element -> {
+                    ChapterPage page = parser.parseChapterPage(element, streamed.size() + 1);
+                    if (page != null && streamed.add(page.primaryImg())) {
+                        stream.add(page);
+                    }
+                });
+        long started = System.nanoTime();
+        try {
+            return parser.parseChapter(document, mangaId, chapterId);
+        } finally {
+            chapterMetrics.extract().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         }
-
-        mangaData.put("img", thumbnail);
-        mangaData.put("title", title);
-        mangaData.put("authors", authors);
-        mangaData.put("status", status);
-        mangaData.put("lastUpdate", lastUpdate);
-        mangaData.put("view", view);
-        mangaData.put("genres", genres);
-        mangaData.put("rating", rating);
-        mangaData.put("summary", summary);
-        mangaData.put("chapters", chapters);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("results", mangaData);
-
-        return response;
     }
 
     /**
-     * Fetch a specific chapter of a manga
-     * @param chapterPath Chapter path
-     * @return Map containing results
-     * @throws IOException if connection fails
+     * Fetches and parses an upstream page. Concurrent scrapes of the same URL share
+     * a single fetch and parse, and all callers get the same result or failure.
+     * With early termination enabled, the page is only received up to its {@code requiredSections}.
      */
-    public Map<String, Object> fetchChapter(String chapterPath) throws IOException {
-        String[] parts = chapterPath.replace("chapter-", "").split("/");
-        String mangaId = parts[0];
-        String chapterId = parts.length > 1 ? parts[1] : "";
+    @SuppressWarnings("unchecked")
+    private <T extends ScrapeResult> T scrape(PageMetrics metrics, String pageUrl, List<Evaluator> requiredSections,
+                                              DocumentParser<T> documentParser) throws IOException {
+        List<Evaluator> sections = earlyTermination ? requiredSections : List.of();
+        // A URL always maps to the same parser, hence to the same result type
+        return (T) inFlightScrapes.execute(UpstreamUrls.normalize(pageUrl), () -> {
+            Document document = upstreamClient.fetchDocument(pageUrl, sections, metrics.fetch());
+            long started = System.nanoTime();
+            try {
+                return documentParser.parse(document);
+            } finally {
+                metrics.extract().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
 
-        String fullUrl = String.format("%s/manga/%s", this.url, chapterPath);
-        Document doc = Jsoup.connect(fullUrl).get();
+    /**
+     * A chapter being scraped, with the pages parsed so far. Every reader replays all pages from the
+     * first, at its own pace; the pages are kept until the scrape is done, which bounds them by the
+     * chapter's length.
+     */
+    public static final class ChapterStream {
+
+        private final List<ChapterPage> pages = new ArrayList<>();
+        private final CompletableFuture<ChapterResult> result = new CompletableFuture<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        /**
+         * @return the chapter once the scrape completes, or its failure
+         */
+        public CompletableFuture<ChapterResult> result() {
+            return result;
+        }
 
-        String title = "";
-        Elements headings = doc.select("h1, h2");
-        for (Element heading : headings) {
-            if (heading.text().contains(mangaId)) {
-                title = heading.text().trim();
-                break;
+        /**
+         * Hands every page to {@code pages} on the calling thread: those parsed so far at once, later
+         * ones as the scrape parses them.
+         *
+         * @return the chapter, once the scrape is done and all of its pages were handed over
+         * @throws IOException if the scrape failed or the caller was interrupted
+         */
+        public ChapterResult replay(Consumer<ChapterPage> pages) throws IOException {
+            for (int next = 0; ; next++) {
+                ChapterPage page;
+                lock.lock();
+                try {
+                    while (next == this.pages.size() && !result.isDone()) {
+                        changed.await();
+                    }
+                    page = next < this.pages.size() ? this.pages.get(next) : null;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while streaming a chapter");
+                } finally {
+                    lock.unlock();
+                }
+                if (page == null) {
+                    return await();
+                }
+                pages.accept(page);
             }
         }
 
-        List<String> primary = new ArrayList<>();
-        List<String> secondary = new ArrayList<>();
-
-        Elements images = doc.select(".container-chapter-reader img");
-        for (Element img : images) {
-            String primarySrc = img.attr("src");
-            String fallbackSrc = null;
-
-            String onerror = img.attr("onerror");
-            if (!onerror.isEmpty()) {
-                Pattern pattern = Pattern.compile("this\\.src='([^']+)'");
-                Matcher matcher = pattern.matcher(onerror);
-                if (matcher.find()) {
-                    fallbackSrc = matcher.group(1);
+        /**
+         * @return the chapter once the scrape is done
+         * @throws IOException if the scrape failed or the caller was interrupted
+         */
+        public ChapterResult await() throws IOException {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a chapter");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
                 }
+                throw new IOException("Chapter scrape failed", e.getCause());
             }
+        }
 
-            if (primarySrc != null && !primarySrc.isEmpty() && !primary.contains(primarySrc)) {
-                primary.add(primarySrc);
+        private void add(ChapterPage page) {
+            lock.lock();
+            try {
+                pages.add(page);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
             }
+        }
 
-            if (fallbackSrc != null && !secondary.contains(fallbackSrc)) {
-                secondary.add(fallbackSrc);
+        private void complete(ChapterResult chapter) {
+            lock.lock();
+            try {
+                result.complete(chapter);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
 
-        List<String> chapters = new ArrayList<>();
-        Elements chapterElements = doc.select("select option, .chapter-selection a");
-
-        for (Element element : chapterElements) {
-            String chapterText = element.text().trim();
-            if (chapterText.toLowerCase().contains("chapter")) {
-                Pattern pattern = Pattern.compile("Chapter\\s+(\\d+(\\.\\d+)?)", Pattern.CASE_INSENSITIVE);
-                Matcher matcher = pattern.matcher(chapterText);
-                if (matcher.find()) {
-                    String chapterNum = matcher.group(1);
-                    if (!chapters.contains(chapterNum)) {
-                        chapters.add(chapterNum);
-                    }
-                }
+        private void fail(Throwable e) {
+            lock.lock();
+            try {
+                result.completeExceptionally(e);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
-
-        // Sort chapters in descending order
-        Collections.sort(chapters, (a, b) -> Float.compare(Float.parseFloat(b), Float.parseFloat(a)));
-
-        Map<String, Object> chapterData = new HashMap<>();
-        chapterData.put("title", title);
-        chapterData.put("primary_imgs", primary);
-        chapterData.put("secondary_imgs", secondary);
-        chapterData.put("chapters", chapters);
-        chapterData.put("currentChapter", chapterId);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("results", chapterData);
-
-        return response;
     }
 
-    public static void main(String[] args) {
-        MangakakalotService mangakakalot = new MangakakalotService();
+    /**
+     * Timers of every scrape phase of one kind of page, registered once.
+     */
+    private record PageMetrics(ScrapeTimers fetch, Timer extract) {
 
-        try {
-            Map<String, Object> res = mangakakalot.fetchChapter("a-high-school-boy-reincarnates-as-the-villainous-daughter-in-an-otome-game/chapter-3");
-            System.out.println(new JSONObject(res).toString(2));
-        } catch (Exception e) {
-            e.printStackTrace();
+        PageMetrics(MeterRegistry meterRegistry, String page) {
+            this(ScrapeTimers.register(meterRegistry, page), ScrapeTimers.phase(meterRegistry, page, "extract"));
         }
     }
+
+    @FunctionalInterface
+    private interface DocumentParser<T extends ScrapeResult> {
+        T parse(Document doc);
+    }
 }
@@ -0,0 +1,145 @@
+package manga.reader.services;
+
+import manga.reader.config.PageRangeProperties;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.dto.PageRangeResult;
+import manga.reader.dto.PageRangeResult.PageStatus;
+import manga.reader.dto.PageRangeResult.Status;
+import manga.reader.dto.SearchResult;
+import manga.reader.exception.BadRequestException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Loads a range of latest or search pages at once. Every page goes through
+ * {@link CachedMangakakalotService}, so cached, crawled and indexed pages are answered without a
+ * scrape, concurrent scrapes of one page are shared, and the pages that do reach upstream wait for
+ * a scrape bulkhead slot like any other scrape. The request waits for its pages up to a deadline
+ * and then answers with the pages it has; pages still loading finish in the background and land in
+ * the cache for the next request. Only when no page loaded does a failure become the response.
+ * The {@code ...Async} variants return the merged result's future, for the reactive stack.
+ */
+@Service
+public class PageRangeService {
+
+    private final CachedMangakakalotService mangakakalotService;
+    private final PageRangeProperties properties;
+
+    public PageRangeService(CachedMangakakalotService mangakakalotService, PageRangeProperties properties) {
+        this.mangakakalotService = mangakakalotService;
+        this.properties = properties;
+    }
+
+    public PageRangeResult<LatestMangaResult.Manga> latestManga(int from, int to) throws IOException {
+        return join(latestMangaAsync(from, to));
+    }
+
+    public PageRangeResult<SearchResult.Manga> search(String query, int from, int to) throws IOException {
+        return join(searchAsync(query, from, to));
+    }
+
+    public CompletableFuture<PageRangeResult<LatestMangaResult.Manga>> latestMangaAsync(int from, int to) {
+        validate(from, to);
+        return fanOut(from, to, mangakakalotService::latestMangaAsync,
+                LatestMangaResult::results, LatestMangaResult::pageInfo, LatestMangaResult.Manga::mangaID);
+    }
+
+    public CompletableFuture<PageRangeResult<SearchResult.Manga>> searchAsync(String query, int from, int to) {
+        validate(from, to);
+        return fanOut(from, to, page -> mangakakalotService.searchAsync(query, page),
+                SearchResult::results, SearchResult::pageInfo, SearchResult.Manga::id);
+    }
+
+    private void validate(int from, int to) {
+        if (from < 1) {
+            throw new BadRequestException("Page number must be greater than 0");
+        }
+        if (to < from) {
+            throw new BadRequestException("Last page must not be before the first page");
+        }
+        if (to - from + 1 > properties.maxPages()) {
+            throw new BadRequestException("At most " + properties.maxPages() + " pages can be requested at once");
+        }
+    }
+
+    private <R, M> CompletableFuture<PageRangeResult<M>> fanOut(int from, int to, IntFunction<CompletableFuture<R>> loader,
+                                                                Function<R, List<M>> results, Function<R, PageInfo> pageInfo,
+                                                                Function<M, String> id) {
+        List<CompletableFuture<R>> pages = new ArrayList<>(to - from + 1);
+        for (int page = from; page <= to; page++) {
+            pages.add(loader.apply(page));
+        }
+        // allOf waits for every page, failed or not; the timeout completes only this copy, never the loads
+        return CompletableFuture.allOf(pages.toArray(CompletableFuture[]::new))
+                .completeOnTimeout(null, properties.deadline().toMillis(), TimeUnit.MILLISECONDS)
+                .handle((ignored, error) -> merge(from, pages, results, pageInfo, id));
+    }
+
+    private static <R, M> PageRangeResult<M> merge(int from, List<CompletableFuture<R>> pages, Function<R, List<M>> results,
+                                                   Function<R, PageInfo> pageInfo, Function<M, String> id) {
+        List<M> merged = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        List<PageStatus> statuses = new ArrayList<>(pages.size());
+        String totalPage = null;
+        Throwable firstFailure = null;
+        for (int i = 0; i < pages.size(); i++) {
+            CompletableFuture<R> page = pages.get(i);
+            switch (page.state()) {
+                case SUCCESS -> {
+                    R result = page.resultNow();
+                    for (M manga : results.apply(result)) {
+                        if (seen.add(id.apply(manga))) {
+                            merged.add(manga);
+                        }
+                    }
+                    if (totalPage == null && pageInfo.apply(result) != null) {
+                        totalPage = pageInfo.apply(result).totalPage();
+                    }
+                    statuses.add(new PageStatus(from + i, Status.OK, null));
+                }
+                case FAILED -> {
+                    Throwable failure = unwrap(page.exceptionNow());
+                    if (firstFailure == null) {
+                        firstFailure = failure;
+                    }
+                    statuses.add(new PageStatus(from + i, Status.FAILED, failure.getMessage()));
+                }
+                case CANCELLED -> statuses.add(new PageStatus(from + i, Status.FAILED, "Cancelled"));
+                case RUNNING -> statuses.add(new PageStatus(from + i, Status.TIMEOUT, null));
+            }
+        }
+        if (firstFailure != null && statuses.stream().noneMatch(status -> status.status() == Status.OK)) {
+            throw new CompletionException(firstFailure);
+        }
+        return new PageRangeResult<>(merged, totalPage, statuses);
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+}
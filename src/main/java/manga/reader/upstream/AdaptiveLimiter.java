@@ -0,0 +1,217 @@
+package manga.reader.upstream;
+
+import manga.reader.config.BulkheadProperties;
+import manga.reader.exception.UpstreamOverloadedException;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit of one upstream bulkhead, adjusted with AIMD the way TCP adjusts its window:
+ * every quick, successful request adds {@code 1 / limit} (so the limit grows by about one per round
+ * of requests), and a failure, 429/5xx answer or slow response multiplies it by the backoff ratio.
+ * Like TCP, the decrease happens at most once per window: requests sent before the last decrease saw
+ * the same overload, so only a request sent since then can decrease the limit again.
+ * Requests beyond the limit wait in a bounded queue for at most the queue timeout and are rejected
+ * with {@link UpstreamOverloadedException} otherwise, so an overloaded upstream turns into fast 503s
+ * instead of piling up threads.
+ */
+public class AdaptiveLimiter {
+
+    private final String name;
+    private final BulkheadProperties.Bulkhead settings;
+    private final double backoffRatio;
+    private final long slowCallNanos;
+    private final Duration retryAfter;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long rejected;
+    private long backoffs;
+
+    public AdaptiveLimiter(String name, BulkheadProperties.Bulkhead settings, double backoffRatio,
+                           Duration slowCallThreshold, Duration retryAfter) {
+        this.name = name;
+        this.settings = settings;
+        this.backoffRatio = backoffRatio;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.retryAfter = retryAfter;
+        this.limit = Math.clamp(settings.initialLimit(), settings.minLimit(), settings.maxLimit());
+    }
+
+    /**
+     * Takes a slot, waiting up to the queue timeout for one.
+     *
+     * @return the slot, to be released exactly once
+     * @throws UpstreamOverloadedException if the queue is full or no slot freed up in time
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public Permit acquire() throws UpstreamOverloadedException, InterruptedIOException {
+        lock.lock();
+        try {
+            if (inFlight >= currentLimit()) {
+                if (queued >= settings.maxQueue()) {
+                    throw reject("queue is full");
+                }
+                queued++;
+                try {
+                    long remaining = settings.queueTimeout().toNanos();
+                    while (inFlight >= currentLimit()) {
+                        if (remaining <= 0) {
+                            throw reject("no slot within " + settings.queueTimeout().toMillis() + " ms");
+                        }
+                        remaining = slotFreed.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for an upstream " + name + " slot");
+                } finally {
+                    queued--;
+                }
+            }
+            inFlight++;
+            return new Permit(System.nanoTime(), backoffs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot if one is free and nobody is queued for it, without waiting.
+     *
+     * @return the slot, to be released exactly once, or null when the caller would have to wait
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (queued > 0 || inFlight >= currentLimit()) {
+                return null;
+            }
+            inFlight++;
+            return new Permit(System.nanoTime(), backoffs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether background work may use this bulkhead now: nobody is queued and more than
+     * {@code reserved} slots are free.
+     */
+    public boolean hasSpareCapacity(int reserved) {
+        lock.lock();
+        try {
+            return queued == 0 && currentLimit() - inFlight > reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Snapshot snapshot() {
+        lock.lock();
+        try {
+            return new Snapshot(currentLimit(), inFlight, queued, rejected, backoffs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Permit permit) {
+        long latency = permit.latencyNanos >= 0 ? permit.latencyNanos : System.nanoTime() - permit.startNanos;
+        lock.lock();
+        try {
+            int before = currentLimit();
+            inFlight--;
+            if (permit.ignored) {
+                // Says nothing about upstream
+            } else if (permit.overloaded || latency > slowCallNanos) {
+                if (permit.window == backoffs) {
+                    limit = Math.max(settings.minLimit(), limit * backoffRatio);
+                    backoffs++;
+                }
+            } else {
+                limit = Math.min(settings.maxLimit(), limit + 1.0 / limit);
+            }
+            slotFreed.signal();
+            if (currentLimit() > before) {
+                slotFreed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private UpstreamOverloadedException reject(String reason) {
+        rejected++;
+        return new UpstreamOverloadedException("Upstream " + name + " bulkhead is full: " + reason, retryAfter);
+    }
+
+    /**
+     * State of a bulkhead.
+     *
+     * @param limit current concurrency limit
+     * @param inFlight requests holding a slot
+     * @param queued requests waiting for a slot
+     * @param rejected requests rejected since startup
+     * @param backoffs times the limit was reduced since startup
+     */
+    public record Snapshot(int limit, int inFlight, int queued, long rejected, long backoffs) {
+    }
+
+    /**
+     * A slot of the bulkhead. Report how the request went, then release it.
+     */
+    public final class Permit {
+
+        private final long startNanos;
+        // Decreases of the limit before this request was sent
+        private final long window;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long latencyNanos = -1;
+        private volatile boolean overloaded;
+        private volatile boolean ignored;
+
+        private Permit(long startNanos, long window) {
+            this.startNanos = startNanos;
+            this.window = window;
+        }
+
+        /**
+         * Records the time to the response headers; 429 and 5xx count as upstream overload.
+         */
+        public void onResponse(int status) {
+            latencyNanos = System.nanoTime() - startNanos;
+            overloaded = status == 429 || status >= 500;
+        }
+
+        /**
+         * The request failed (timeout, connection error) and counts as upstream overload.
+         */
+        public void onFailure() {
+            overloaded = true;
+        }
+
+        /**
+         * The request was abandoned by our side and says nothing about upstream.
+         */
+        public void onCancel() {
+            ignored = true;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveLimiter.this.release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package manga.reader.upstream;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Parses HTML only as far as needed: elements are checked as they are closed, and once every
+ * required section has been closed the parser stops reading the input.
+ * The returned document holds everything up to that point, built by the same tree builder as a
+ * full parse, so queries confined to the required sections give the same result on it.
+ * Without required sections, or if some never appear, the whole input is parsed.
+ * A listener can be handed every element as soon as it is closed, before the rest of the input
+ * has been received.
+ */
+public final class PartialDocumentParser {
+
+    private PartialDocumentParser() {
+    }
+
+    public static Document parse(Reader reader, String baseUri, List<Evaluator> requiredSections) throws IOException {
+        return parse(reader, baseUri, requiredSections, null);
+    }
+
+    /**
+     * @param closedElements called with each element once it is closed, in closing order; may be null
+     */
+    public static Document parse(Reader reader, String baseUri, List<Evaluator> requiredSections,
+                                 Consumer<Element> closedElements) throws IOException {
+        try (StreamParser streamer = new StreamParser(Parser.htmlParser())) {
+            streamer.parse(reader, baseUri);
+            if (requiredSections.isEmpty() && closedElements == null) {
+                return streamer.complete();
+            }
+
+            boolean[] seen = new boolean[requiredSections.size()];
+            int remaining = seen.length;
+            Iterator<Element> elements = streamer.iterator();
+            try {
+                while ((remaining > 0 || seen.length == 0) && elements.hasNext()) {
+                    Element element = elements.next();
+                    if (closedElements != null) {
+                        closedElements.accept(element);
+                    }
+                    for (int i = 0; i < seen.length; i++) {
+                        if (!seen[i] && element.is(requiredSections.get(i))) {
+                            seen[i] = true;
+                            remaining--;
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                // The iterator wraps read failures of the underlying reader
+                throw e.getCause();
+            }
+
+            if (seen.length == 0) {
+                return streamer.complete();
+            }
+            Document document = streamer.document();
+            streamer.stop();
+            return document;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package manga.reader.upstream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers of the network phases of scraping one kind of page. All scrape phases share the
+ * {@code scrape.duration} timer, tagged with the page kind and the phase, so that a slow page can be
+ * split into time to the response headers ({@code response}), time receiving and parsing the body
+ * ({@code body}, one phase since Jsoup parses the page while it streams in), time extracting the
+ * result from the document ({@code extract}), time serializing the result to JSON ({@code serialize}) and
+ * time gzipping that JSON ({@code compress}).
+ */
+public record ScrapeTimers(Timer response, Timer body) {
+
+    public static ScrapeTimers register(MeterRegistry meterRegistry, String page) {
+        return new ScrapeTimers(phase(meterRegistry, page, "response"), phase(meterRegistry, page, "body"));
+    }
+
+    public static Timer phase(MeterRegistry meterRegistry, String page, String phase) {
+        return Timer.builder("scrape.duration")
+                .description("Time spent in one phase of scraping an upstream page")
+                .tag("page", page)
+                .tag("phase", phase)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,65 @@
+package manga.reader.upstream;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call,
+ * every caller arriving while it is in flight waits for and receives the same
+ * result or the same failure.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V execute(K key, Call<V> call) throws IOException {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V value = call.call();
+            own.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * @return number of keys currently being fetched
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+}
@@ -0,0 +1,509 @@
+package manga.reader.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import manga.reader.config.BulkheadProperties;
+import manga.reader.config.UpstreamProperties;
+import org.brotli.dec.BrotliInputStream;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import reactor.adapter.JdkFlowAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The single HTTP client every upstream request goes through.
+ * Wraps one JDK {@link HttpClient}, which keeps connections alive and pools them, negotiates
+ * HTTP/2 through ALPN where the origin supports it and multiplexes requests over it.
+ * Page scrapes are decoded (gzip, deflate, brotli) and fed to Jsoup straight from the response
+ * stream; image downloads use the {@link RestTemplate} built on the same client.
+ * Page scrapes and image downloads each go through their own {@link AdaptiveLimiter} bulkhead
+ * ({@code reader.bulkhead.*}), which caps the exchanges in flight, adapts the cap to how upstream
+ * copes, and keeps an unbounded number of virtual request threads from turning into an upstream flood.
+ */
+@Component
+public class UpstreamClient {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamClient.class);
+
+    private static final String ACCEPT_HTML = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+    private static final String ACCEPT_ENCODING = "gzip, deflate, br";
+    private static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+
+    private final UpstreamProperties properties;
+    private final HttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final Map<Bulkhead, AdaptiveLimiter> bulkheads = new LinkedHashMap<>();
+    private final Map<Bulkhead, Timer> waitTimers = new EnumMap<>(Bulkhead.class);
+    private final Map<Bulkhead, ResponseCounters> responseCounters = new EnumMap<>(Bulkhead.class);
+    private final ScrapeTimers untaggedScrapeTimers;
+
+    public UpstreamClient(UpstreamProperties properties, BulkheadProperties bulkheadProperties,
+                          MeterRegistry meterRegistry, Environment environment) {
+        this.properties = properties;
+        bulkheads.put(Bulkhead.SCRAPE, limiter("scrape", bulkheadProperties.scrape(), bulkheadProperties));
+        bulkheads.put(Bulkhead.IMAGE, limiter("image", bulkheadProperties.image(), bulkheadProperties));
+        this.untaggedScrapeTimers = ScrapeTimers.register(meterRegistry, "other");
+
+        // JVM-wide and read once by the JDK, so they can only be set as -D flags at startup
+        log.info("Upstream connection pool: jdk.httpclient.connectionPoolSize={}, jdk.httpclient.keepalive.timeout={}, "
+                        + "jdk.httpclient.keepalive.timeout.h2={}",
+                jdkSetting(POOL_SIZE_PROPERTY), jdkSetting("jdk.httpclient.keepalive.timeout"),
+                jdkSetting("jdk.httpclient.keepalive.timeout.h2"));
+
+        HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(properties.connectTimeout());
+        if (Threading.VIRTUAL.isActive(environment)) {
+            clientBuilder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        this.httpClient = clientBuilder.build();
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(properties.readTimeout());
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.restTemplate.getInterceptors().add(this::limitConcurrency);
+
+        for (Map.Entry<Bulkhead, AdaptiveLimiter> bulkhead : bulkheads.entrySet()) {
+            String name = bulkhead.getKey().tag();
+            AdaptiveLimiter limiter = bulkhead.getValue();
+            Gauge.builder("upstream.limit", limiter, l -> l.snapshot().limit())
+                    .description("Current adaptive concurrency limit")
+                    .tag("bulkhead", name)
+                    .register(meterRegistry);
+            Gauge.builder("upstream.requests.in.flight", limiter, l -> l.snapshot().inFlight())
+                    .tag("bulkhead", name)
+                    .register(meterRegistry);
+            Gauge.builder("upstream.requests.pending", limiter, l -> l.snapshot().queued())
+                    .description("Requests waiting for an upstream slot")
+                    .tag("bulkhead", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("upstream.requests.rejected", limiter, l -> l.snapshot().rejected())
+                    .description("Requests answered with 503 because the bulkhead was full")
+                    .tag("bulkhead", name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("upstream.limit.backoffs", limiter, l -> l.snapshot().backoffs())
+                    .tag("bulkhead", name)
+                    .register(meterRegistry);
+            waitTimers.put(bulkhead.getKey(), Timer.builder("upstream.wait")
+                    .description("Time waiting for an upstream slot")
+                    .tag("bulkhead", name)
+                    .register(meterRegistry));
+            responseCounters.put(bulkhead.getKey(), new ResponseCounters(meterRegistry, name));
+        }
+        Gauge.builder("upstream.connections.idle.max", () -> Integer.getInteger(POOL_SIZE_PROPERTY, 0))
+                .description("Idle keep-alive connections the JDK client keeps, 0 for no limit")
+                .register(meterRegistry);
+        Gauge.builder("upstream.timeout.connect", properties, p -> p.connectTimeout().toMillis() / 1000.0)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("upstream.timeout.read", properties, p -> p.readTimeout().toMillis() / 1000.0)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Template for binary downloads (images). Shares the pooled client and timeouts, and goes through
+     * the image bulkhead.
+     */
+    public RestTemplate restTemplate() {
+        return restTemplate;
+    }
+
+    /**
+     * Fetches an HTML page and parses it while it is being received.
+     *
+     * @throws HttpStatusException if upstream answers with a non-2xx status
+     * @throws IOException if the page cannot be fetched
+     */
+    public Document fetchDocument(String url) throws IOException {
+        return fetchDocument(url, List.of());
+    }
+
+    /**
+     * Fetches an HTML page and stops receiving it once all {@code requiredSections} have been parsed,
+     * see {@link PartialDocumentParser}. Closing the body early resets the HTTP/2 stream, or drops
+     * the connection over HTTP/1.1. Pages without a declared charset are always read in full so that
+     * Jsoup can detect it.
+     *
+     * @throws HttpStatusException if upstream answers with a non-2xx status
+     * @throws IOException if the page cannot be fetched
+     */
+    public Document fetchDocument(String url, List<Evaluator> requiredSections) throws IOException {
+        return fetchDocument(url, requiredSections, untaggedScrapeTimers);
+    }
+
+    /**
+     * Same as {@link #fetchDocument(String, List)}, recording the response and body phases in the given timers.
+     */
+    public Document fetchDocument(String url, List<Evaluator> requiredSections, ScrapeTimers timers) throws IOException {
+        return fetchDocument(url, requiredSections, timers, null);
+    }
+
+    /**
+     * Same as {@link #fetchDocument(String, List, ScrapeTimers)}, handing every element to
+     * {@code closedElements} as soon as it has been parsed from the incoming body. A page without a
+     * declared charset is parsed in full first, then its elements are handed over in document order.
+     */
+    public Document fetchDocument(String url, List<Evaluator> requiredSections, ScrapeTimers timers,
+                                  Consumer<Element> closedElements) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(UpstreamUrls.toUri(url))
+                .timeout(properties.readTimeout())
+                .header(HttpHeaders.USER_AGENT, properties.userAgent())
+                .header(HttpHeaders.ACCEPT, ACCEPT_HTML)
+                .header(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING)
+                .GET()
+                .build();
+
+        AdaptiveLimiter.Permit permit = acquire(Bulkhead.SCRAPE);
+        try {
+            long sent = System.nanoTime();
+            HttpResponse<InputStream> response;
+            try {
+                response = send(request);
+            } catch (IOException e) {
+                onFailure(permit, e);
+                responseCounters.get(Bulkhead.SCRAPE).failed();
+                throw e;
+            }
+            long received = System.nanoTime();
+            timers.response().record(received - sent, TimeUnit.NANOSECONDS);
+            permit.onResponse(response.statusCode());
+            responseCounters.get(Bulkhead.SCRAPE).status(response.statusCode());
+            try (InputStream body = decode(response)) {
+                int status = response.statusCode();
+                if (status < 200 || status >= 300) {
+                    throw new HttpStatusException("HTTP error fetching URL", status, url);
+                }
+                String charset = charset(response);
+                if (charset == null || (requiredSections.isEmpty() && closedElements == null)) {
+                    Document document = Jsoup.parse(body, charset, response.uri().toString());
+                    if (closedElements != null) {
+                        document.getAllElements().forEach(closedElements);
+                    }
+                    return document;
+                }
+                return PartialDocumentParser.parse(new InputStreamReader(body, charset), response.uri().toString(),
+                        requiredSections, closedElements);
+            } finally {
+                timers.body().record(System.nanoTime() - received, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * Sends an image request without blocking the calling thread, for the reactive stack. The response
+     * body is the JDK client's publisher, so upstream is only read as fast as the subscriber requests
+     * buffers. The image bulkhead slot is taken without waiting when one is free (otherwise the wait
+     * happens on a bounded elastic thread, not the event loop) and released once the body completes,
+     * fails or is cancelled. The body must therefore always be subscribed.
+     *
+     * @param url image URL
+     * @param headers request headers
+     * @param bufferFactory factory wrapping the received buffers, normally the response's
+     */
+    public Mono<StreamedResponse> stream(String url, HttpHeaders headers, DataBufferFactory bufferFactory) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(UpstreamUrls.toUri(url))
+                .timeout(properties.readTimeout())
+                .GET();
+        headers.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+        HttpRequest request = builder.build();
+
+        return acquireWithoutBlocking(Bulkhead.IMAGE).flatMap(permit -> Mono
+                .fromFuture(() -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofPublisher()))
+                .doOnCancel(() -> {
+                    permit.onCancel();
+                    permit.release();
+                })
+                .doOnError(e -> {
+                    if (e instanceof IOException ioException) {
+                        onFailure(permit, ioException);
+                    }
+                    responseCounters.get(Bulkhead.IMAGE).failed();
+                    permit.release();
+                })
+                .map(response -> {
+                    permit.onResponse(response.statusCode());
+                    responseCounters.get(Bulkhead.IMAGE).status(response.statusCode());
+                    HttpHeaders responseHeaders = new HttpHeaders();
+                    response.headers().map().forEach(responseHeaders::addAll);
+                    Flux<DataBuffer> body = JdkFlowAdapter.flowPublisherToFlux(response.body())
+                            .concatMapIterable(Function.<List<ByteBuffer>>identity())
+                            .map(bufferFactory::wrap)
+                            .doFinally(signal -> {
+                                if (signal == SignalType.CANCEL) {
+                                    permit.onCancel();
+                                }
+                                permit.release();
+                            });
+                    return new StreamedResponse(HttpStatusCode.valueOf(response.statusCode()), responseHeaders, body);
+                }));
+    }
+
+    /**
+     * Whether background work may use a bulkhead now: nobody is waiting for a slot
+     * and more than {@code reserved} slots are free.
+     */
+    public boolean hasSpareCapacity(Bulkhead bulkhead, int reserved) {
+        return bulkheads.get(bulkhead).hasSpareCapacity(reserved);
+    }
+
+    /**
+     * @return the state of each bulkhead, by name
+     */
+    public Map<String, AdaptiveLimiter.Snapshot> bulkheads() {
+        Map<String, AdaptiveLimiter.Snapshot> snapshots = new LinkedHashMap<>();
+        bulkheads.forEach((bulkhead, limiter) -> snapshots.put(bulkhead.tag(), limiter.snapshot()));
+        return snapshots;
+    }
+
+    @PreDestroy
+    public void close() {
+        httpClient.shutdownNow();
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+        }
+    }
+
+    private ClientHttpResponse limitConcurrency(org.springframework.http.HttpRequest request, byte[] body,
+                                                ClientHttpRequestExecution execution) throws IOException {
+        AdaptiveLimiter.Permit permit = acquire(Bulkhead.IMAGE);
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            int status = response.getStatusCode().value();
+            permit.onResponse(status);
+            responseCounters.get(Bulkhead.IMAGE).status(status);
+            return new PermitReleasingResponse(response, permit);
+        } catch (IOException e) {
+            onFailure(permit, e);
+            responseCounters.get(Bulkhead.IMAGE).failed();
+            permit.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    private AdaptiveLimiter.Permit acquire(Bulkhead bulkhead) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return bulkheads.get(bulkhead).acquire();
+        } finally {
+            waitTimers.get(bulkhead).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Mono<AdaptiveLimiter.Permit> acquireWithoutBlocking(Bulkhead bulkhead) {
+        return Mono.defer(() -> {
+            AdaptiveLimiter.Permit permit = bulkheads.get(bulkhead).tryAcquire();
+            if (permit != null) {
+                waitTimers.get(bulkhead).record(0, TimeUnit.NANOSECONDS);
+                return Mono.just(permit);
+            }
+            return Mono.fromCallable(() -> acquire(bulkhead)).subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    private static void onFailure(AdaptiveLimiter.Permit permit, IOException e) {
+        // Our own interrupt, not an upstream timeout. The JDK request factory reports an interrupted
+        // exchange as a plain IOException, so the thread's flag is checked as well
+        if ((e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+                || Thread.currentThread().isInterrupted()) {
+            permit.onCancel();
+        } else {
+            permit.onFailure();
+        }
+    }
+
+    private static AdaptiveLimiter limiter(String name, BulkheadProperties.Bulkhead settings, BulkheadProperties properties) {
+        return new AdaptiveLimiter(name, settings, properties.backoffRatio(), properties.slowCallThreshold(),
+                properties.retryAfter());
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse("").trim().toLowerCase(Locale.ROOT);
+        InputStream body = response.body();
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            case "br" -> new BrotliInputStream(body);
+            default -> body;
+        };
+    }
+
+    private static String charset(HttpResponse<?> response) {
+        try {
+            Charset charset = response.headers().firstValue(HttpHeaders.CONTENT_TYPE)
+                    .map(MediaType::parseMediaType)
+                    .map(MediaType::getCharset)
+                    .orElse(null);
+            // null lets Jsoup detect the charset from the BOM or meta tags
+            return charset != null ? charset.name() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String jdkSetting(String property) {
+        String value = System.getProperty(property);
+        return value != null ? value : "(JDK default)";
+    }
+
+    /**
+     * Gives the bulkhead slot back once the response body has been consumed and closed.
+     */
+    private static final class PermitReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final AdaptiveLimiter.Permit permit;
+
+        private PermitReleasingResponse(ClientHttpResponse delegate, AdaptiveLimiter.Permit permit) {
+            this.delegate = delegate;
+            this.permit = permit;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * An upstream response whose body is still being received.
+     *
+     * @param status upstream status
+     * @param headers upstream response headers
+     * @param body body buffers, read from upstream on demand
+     */
+    public record StreamedResponse(HttpStatusCode status, HttpHeaders headers, Flux<DataBuffer> body) {
+    }
+
+    /**
+     * {@code upstream.responses} of one bulkhead by status code, {@code error} when no response arrived.
+     * Counters are registered once per status and reused, so counting costs a map lookup.
+     */
+    private static final class ResponseCounters {
+
+        private final MeterRegistry meterRegistry;
+        private final String bulkhead;
+        private final Map<Integer, Counter> byStatus = new ConcurrentHashMap<>();
+        private final Counter failures;
+
+        private ResponseCounters(MeterRegistry meterRegistry, String bulkhead) {
+            this.meterRegistry = meterRegistry;
+            this.bulkhead = bulkhead;
+            this.failures = counter("error");
+        }
+
+        void status(int status) {
+            Counter counter = byStatus.get(status);
+            if (counter == null) {
+                counter = byStatus.computeIfAbsent(status, code -> counter(Integer.toString(code)));
+            }
+            counter.increment();
+        }
+
+        void failed() {
+            failures.increment();
+        }
+
+        private Counter counter(String status) {
+            return Counter.builder("upstream.responses")
+                    .description("Upstream responses by status")
+                    .tag("bulkhead", bulkhead)
+                    .tag("status", status)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Kinds of upstream traffic, each limited separately.
+     */
+    public enum Bulkhead {
+        SCRAPE, IMAGE;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
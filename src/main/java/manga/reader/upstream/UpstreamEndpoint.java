@@ -0,0 +1,27 @@
+package manga.reader.upstream;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/upstream}: current limit, in-flight and queued requests, rejections and
+ * backoffs of each upstream bulkhead.
+ */
+@Component
+@Endpoint(id = "upstream")
+public class UpstreamEndpoint {
+
+    private final UpstreamClient upstreamClient;
+
+    public UpstreamEndpoint(UpstreamClient upstreamClient) {
+        this.upstreamClient = upstreamClient;
+    }
+
+    @ReadOperation
+    public Map<String, AdaptiveLimiter.Snapshot> bulkheads() {
+        return upstreamClient.bulkheads();
+    }
+}
@@ -0,0 +1,92 @@
+package manga.reader.upstream;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+public final class UpstreamUrls {
+
+    private UpstreamUrls() {
+    }
+
+    /**
+     * Converts a URL as found in scraped pages or request parameters into a URI,
+     * quoting characters such as spaces that are not legal in a URI.
+     */
+    public static URI toUri(String url) {
+        String trimmed = url.trim();
+        try {
+            return new URI(trimmed);
+        } catch (URISyntaxException e) {
+            try {
+                return quoted(trimmed);
+            } catch (URISyntaxException invalid) {
+                throw new IllegalArgumentException("Invalid upstream URL: " + url, invalid);
+            }
+        }
+    }
+
+    /**
+     * Splits a URL into its components and lets the multi-argument {@link URI} constructor quote
+     * each of them.
+     */
+    private static URI quoted(String url) throws URISyntaxException {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0) {
+            throw new URISyntaxException(url, "Expected an absolute URL");
+        }
+        String rest = url.substring(schemeEnd + 3);
+        String fragment = null;
+        int fragmentStart = rest.indexOf('#');
+        if (fragmentStart >= 0) {
+            fragment = rest.substring(fragmentStart + 1);
+            rest = rest.substring(0, fragmentStart);
+        }
+        String query = null;
+        int queryStart = rest.indexOf('?');
+        if (queryStart >= 0) {
+            query = rest.substring(queryStart + 1);
+            rest = rest.substring(0, queryStart);
+        }
+        int pathStart = rest.indexOf('/');
+        String authority = pathStart >= 0 ? rest.substring(0, pathStart) : rest;
+        String path = pathStart >= 0 ? rest.substring(pathStart) : "";
+        return new URI(url.substring(0, schemeEnd), authority, path, query, fragment);
+    }
+
+    /**
+     * Normalizes an upstream URL so that equivalent spellings share one key:
+     * lower-cased scheme and host, default ports and fragments dropped.
+     * URLs that cannot be parsed are returned trimmed.
+     */
+    public static String normalize(String url) {
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return trimmed;
+            }
+
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+
+            StringBuilder normalized = new StringBuilder(trimmed.length())
+                    .append(scheme).append("://")
+                    .append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (port != -1) {
+                normalized.append(':').append(port);
+            }
+            normalized.append(path);
+            if (uri.getRawQuery() != null) {
+                normalized.append('?').append(uri.getRawQuery());
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package manga.reader.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.HttpCacheProperties;
+import manga.reader.config.JsonProperties;
+import manga.reader.config.ResponseBytesProperties;
+import manga.reader.config.ScrapeResultCompressionAdvice;
+import manga.reader.config.ScrapeResultETags;
+import manga.reader.config.ScrapeResultHttpMessageConverter;
+import manga.reader.config.SerializedScrapeResults;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.exception.GlobalExceptionHandler;
+import manga.reader.services.CachedMangakakalotService;
+import manga.reader.services.ChapterBundleService;
+import manga.reader.services.ChapterPrefetcher;
+import manga.reader.services.PageRangeService;
+import org.brotli.dec.BrotliInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class MangaControllerTests {
+
+	private final CachedMangakakalotService mangakakalotService = mock(CachedMangakakalotService.class);
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final SerializedScrapeResults serializedResults = new SerializedScrapeResults(objectMapper,
+			new JsonProperties(true), new ResponseBytesProperties(DataSize.ofBytes(256), true, 9),
+			new SimpleMeterRegistry());
+	private final MockMvc mockMvc = MockMvcBuilders
+			.standaloneSetup(new MangaController(mangakakalotService, mock(ChapterPrefetcher.class), mock(ChapterBundleService.class),
+					mock(PageRangeService.class),
+					new ScrapeResultETags(serializedResults),
+					new HttpCacheProperties(Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(1),
+							Duration.ofDays(1), Duration.ofMinutes(1), false), objectMapper))
+			.setMessageConverters(new ScrapeResultHttpMessageConverter(serializedResults), new MappingJackson2HttpMessageConverter())
+			.setControllerAdvice(new GlobalExceptionHandler(), new ScrapeResultCompressionAdvice(serializedResults))
+			.build();
+
+	@Test
+	void answersMatchingIfNoneMatchWithNotModified() throws Exception {
+		when(mangakakalotService.mangaInfo("one-piece")).thenReturn(new MangaInfoResult("cover.jpg", "One Piece",
+				List.of("Oda Eiichiro"), "Ongoing", "Jun-01-2025", "1,000", List.of("Action"),
+				new MangaInfoResult.Rating(4.5, 5, 120), "Pirates.", List.of()));
+
+		MvcResult first = mockMvc.perform(get("/api/mangas/one-piece"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, private, stale-while-revalidate=60"))
+				.andReturn();
+		String eTag = first.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).startsWith("\"").endsWith("\"");
+
+		mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, eTag))
+				.andExpect(content().string(""));
+		mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void servesPrecompressedJsonToClientsAcceptingGzip() throws Exception {
+		List<MangaInfoResult.Chapter> chapters = new ArrayList<>();
+		for (int i = 1; i <= 50; i++) {
+			chapters.add(new MangaInfoResult.Chapter("Chapter " + i, "one-piece/chapter-" + i, "10", "Jun-01-2025"));
+		}
+		MangaInfoResult mangaInfo = new MangaInfoResult("cover.jpg", "One Piece", List.of("Oda Eiichiro"), "Ongoing",
+				"Jun-01-2025", "1,000", List.of("Action"), new MangaInfoResult.Rating(4.5, 5, 120), "Pirates.", chapters);
+		// As the manga cache does when it loads the result
+		serializedResults.keep(mangaInfo);
+		when(mangakakalotService.mangaInfo("one-piece")).thenReturn(mangaInfo);
+
+		MvcResult identity = mockMvc.perform(get("/api/mangas/one-piece"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+				.andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+				.andReturn();
+		String json = identity.getResponse().getContentAsString();
+		String identityTag = identity.getResponse().getHeader(HttpHeaders.ETAG);
+
+		MvcResult gzipped = mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.ACCEPT_ENCODING, "br;q=0.5, gzip"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+				.andReturn();
+		byte[] body = gzipped.getResponse().getContentAsByteArray();
+		assertThat(gzipped.getResponse().getContentLength()).isEqualTo(body.length).isLessThan(json.length());
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(json);
+		}
+		// Both encodings come from the same bytes, serialized once
+		assertThat(serializedResults.of(mangaInfo).gzip()).isEqualTo(body);
+
+		// Each coding has its own strong validator, and a 304 only revalidates the coding it was issued for
+		String gzipTag = gzipped.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(gzipTag).isEqualTo(identityTag.substring(0, identityTag.length() - 1) + "-gzip\"");
+		mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+						.header(HttpHeaders.IF_NONE_MATCH, gzipTag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+		mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.IF_NONE_MATCH, gzipTag))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, identityTag));
+
+		// Brotli is preferred on a tie and carries its own tag too
+		MvcResult brotli = mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "br"))
+				.andExpect(header().string(HttpHeaders.ETAG, identityTag.substring(0, identityTag.length() - 1) + "-br\""))
+				.andReturn();
+		try (BrotliInputStream in = new BrotliInputStream(new ByteArrayInputStream(brotli.getResponse().getContentAsByteArray()))) {
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(json);
+		}
+		mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.ACCEPT_ENCODING, "br")
+						.header(HttpHeaders.IF_NONE_MATCH, gzipTag))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void servesResultsThatWereNotKeptAsPlainJson() throws Exception {
+		List<MangaInfoResult.Chapter> chapters = new ArrayList<>();
+		for (int i = 1; i <= 50; i++) {
+			chapters.add(new MangaInfoResult.Chapter("Chapter " + i, "one-piece/chapter-" + i, "10", "Jun-01-2025"));
+		}
+		MangaInfoResult mangaInfo = new MangaInfoResult("cover.jpg", "One Piece", List.of("Oda Eiichiro"), "Ongoing",
+				"Jun-01-2025", "1,000", List.of("Action"), new MangaInfoResult.Rating(4.5, 5, 120), "Pirates.", chapters);
+		when(mangakakalotService.mangaInfo("one-piece")).thenReturn(mangaInfo);
+
+		mockMvc.perform(get("/api/mangas/one-piece").header(HttpHeaders.ACCEPT_ENCODING, "gzip, br"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+				.andExpect(header().doesNotExist(HttpHeaders.VARY))
+				.andExpect(header().exists(HttpHeaders.ETAG));
+		assertThat(serializedResults.weight(mangaInfo)).isZero();
+	}
+
+	@Test
+	void streamsChapterPagesAsNdjsonOrServerSentEvents() throws Exception {
+		when(mangakakalotService.streamChapter(eq("one-piece/chapter-2"), any())).thenAnswer(invocation -> {
+			List<ChapterPage> pages = List.of(new ChapterPage(1, "https://a.example/1.jpg", "https://b.example/1.jpg"),
+					new ChapterPage(2, "https://a.example/2.jpg", null));
+			pages.forEach(invocation.<Consumer<ChapterPage>>getArgument(1));
+			return new ChapterResult("one-piece chapter 2", pages, List.of("2", "1"), "2");
+		});
+
+		mockMvc.perform(get("/api/mangas/chapter/one-piece/chapter-2/stream"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+				.andExpect(content().string("""
+						{"page":1,"primary_img":"https://a.example/1.jpg","secondary_img":"https://b.example/1.jpg"}
+						{"page":2,"primary_img":"https://a.example/2.jpg","secondary_img":null}
+						{"title":"one-piece chapter 2","pages":2,"chapters":["2","1"],"currentChapter":"2"}
+						"""));
+
+		mockMvc.perform(get("/api/mangas/chapter/one-piece/chapter-2/stream").header(HttpHeaders.ACCEPT, "text/event-stream"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, "text/event-stream"))
+				.andExpect(content().string(startsWith("""
+						event: page
+						data: {"page":1,"primary_img":"https://a.example/1.jpg","secondary_img":"https://b.example/1.jpg"}
+
+						event: page
+						""")));
+	}
+
+	@Test
+	void streamedChapterWithoutPagesIsNotFound() throws Exception {
+		when(mangakakalotService.streamChapter(eq("one-piece/chapter-404"), any()))
+				.thenReturn(new ChapterResult("", List.of(), List.of(), "404"));
+
+		mockMvc.perform(get("/api/mangas/chapter/one-piece/chapter-404/stream").header(HttpHeaders.ACCEPT, "text/event-stream"))
+				.andExpect(status().isNotFound());
+	}
+}
@@ -0,0 +1,122 @@
+package manga.reader.controllers;
+
+import manga.reader.config.SerializedScrapeResults;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.jwt.JwtUtil;
+import manga.reader.services.CachedMangakakalotService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+		"spring.main.web-application-type=reactive",
+		"reader.crawler.enabled=false",
+		"reader.metadata-store.enabled=false",
+		"reader.response-bytes.compress-above=0B"
+})
+@AutoConfigureWebTestClient
+class ReactiveMangaControllerTests {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	@Autowired
+	private SerializedScrapeResults serializedResults;
+
+	@MockitoBean
+	private CachedMangakakalotService mangakakalotService;
+
+	@Test
+	void servesTheSameJsonAndConditionalRequestsAsTheServletStack() {
+		MangaInfoResult mangaInfo = new MangaInfoResult("cover.jpg", "One Piece", List.of("Oda Eiichiro"), "Ongoing",
+				"Jun-01-2025", "1,000", List.of("Action"), new MangaInfoResult.Rating(4.5, 5, 120), "Pirates.", List.of());
+		// As the manga cache does when it loads the result
+		serializedResults.keep(mangaInfo);
+		when(mangakakalotService.mangaInfoAsync("one-piece")).thenReturn(CompletableFuture.completedFuture(mangaInfo));
+		String token = "Bearer " + jwtUtil.generateToken("reader", "READER");
+
+		String eTag = webTestClient.get().uri("/api/mangas/one-piece")
+				.header(HttpHeaders.AUTHORIZATION, token)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.results.title").isEqualTo("One Piece")
+				.jsonPath("$.results.rating.score").isEqualTo(4.5)
+				.returnResult()
+				.getResponseHeaders().getETag();
+		assertThat(eTag).startsWith("\"").endsWith("\"");
+
+		webTestClient.get().uri("/api/mangas/one-piece")
+				.header(HttpHeaders.AUTHORIZATION, token)
+				.header(HttpHeaders.IF_NONE_MATCH, eTag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		webTestClient.get().uri("/api/mangas/one-piece")
+				.header(HttpHeaders.AUTHORIZATION, token)
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+				.expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+				.expectHeader().valueEquals(HttpHeaders.ETAG, eTag.substring(0, eTag.length() - 1) + "-gzip\"");
+	}
+
+	@Test
+	void streamsChapterPagesAsServerSentEvents() throws Exception {
+		when(mangakakalotService.streamChapter(eq("one-piece/chapter-2"), any())).thenAnswer(invocation -> {
+			ChapterPage page = new ChapterPage(1, "https://a.example/1.jpg", null);
+			invocation.<Consumer<ChapterPage>>getArgument(1).accept(page);
+			return new ChapterResult("one-piece chapter 2", List.of(page), List.of("2"), "2");
+		});
+
+		webTestClient.get().uri("/api/mangas/chapter/one-piece/chapter-2/stream")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtUtil.generateToken("reader", "READER"))
+				.header(HttpHeaders.ACCEPT, "text/event-stream")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType("text/event-stream")
+				.expectBody(String.class).isEqualTo("""
+						event: page
+						data: {"page":1,"primary_img":"https://a.example/1.jpg","secondary_img":null}
+
+						event: chapter
+						data: {"title":"one-piece chapter 2","pages":1,"chapters":["2"],"currentChapter":"2"}
+
+						""");
+	}
+
+	@Test
+	void rejectsMissingTokensAndMapsErrorsLikeTheServletStack() {
+		webTestClient.get().uri("/api/mangas/one-piece")
+				.exchange()
+				.expectStatus().isForbidden();
+
+		webTestClient.get().uri("/api/mangas/?page=0")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtUtil.generateToken("reader", "READER"))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Page number must be greater than 0")
+				.jsonPath("$.path").isEqualTo("/api/mangas/");
+	}
+}
@@ -0,0 +1,83 @@
+package manga.reader.jwt;
+
+import manga.reader.config.JwtProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtUtilTests {
+
+	private final SettableClock clock = new SettableClock();
+
+	@Test
+	void rejectsACachedTokenOnceItExpires() {
+		JwtUtil jwtUtil = new JwtUtil(new JwtProperties(100), clock);
+		String token = jwtUtil.generateToken("reader", "reader");
+
+		assertThat(jwtUtil.verify(token)).hasValueSatisfying(verified -> {
+			assertThat(verified.username()).isEqualTo("reader");
+			assertThat(verified.authorities()).extracting(Object::toString).containsExactly("READER");
+		});
+		assertThat(jwtUtil.cachedTokens()).isEqualTo(1);
+
+		// The cache only drops the entry on its own schedule, past expiry the lookup still refuses it
+		clock.advance(Duration.ofMinutes(2));
+		assertThat(jwtUtil.verify(token)).isEmpty();
+	}
+
+	@Test
+	void neverCachesTamperedOrExpiredTokens() {
+		JwtUtil jwtUtil = new JwtUtil(new JwtProperties(100), clock);
+		String token = jwtUtil.generateToken("reader", "reader");
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+		assertThat(jwtUtil.verify(tampered)).isEmpty();
+		assertThat(jwtUtil.verify("not a token")).isEmpty();
+		clock.advance(Duration.ofMinutes(2));
+		assertThat(jwtUtil.verify(token)).isEmpty();
+		assertThat(jwtUtil.cachedTokens()).isZero();
+	}
+
+	@Test
+	void verifiesEveryCallWithoutACache() {
+		JwtUtil jwtUtil = new JwtUtil(new JwtProperties(0), clock);
+		String token = jwtUtil.generateToken("reader", "reader");
+
+		assertThat(jwtUtil.verify(token)).isPresent();
+		assertThat(jwtUtil.verify(token)).isPresent();
+		assertThat(jwtUtil.cachedTokens()).isZero();
+
+		clock.advance(Duration.ofMinutes(2));
+		assertThat(jwtUtil.verify(token)).isEmpty();
+	}
+
+	private static final class SettableClock extends Clock {
+
+		private volatile Instant now = Instant.now();
+
+		void advance(Duration duration) {
+			now = now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package manga.reader.services;
+
+import manga.reader.config.BundleProperties;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.services.HotImageStore.HotImage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChapterBundleServiceTests {
+
+	private final ImageDownloadService imageDownloadService = mock(ImageDownloadService.class);
+
+	@Test
+	void writesPagesInOrderWhateverOrderTheyArriveIn() throws Exception {
+		CountDownLatch lastPageFetched = new CountDownLatch(1);
+		when(imageDownloadService.downloadImage(anyString(), anyString())).thenAnswer(invocation -> {
+			String url = invocation.getArgument(0);
+			if (url.endsWith("/1.jpg")) {
+				assertThat(lastPageFetched.await(5, TimeUnit.SECONDS)).isTrue();
+			}
+			if (url.endsWith("/3.jpg")) {
+				lastPageFetched.countDown();
+			}
+			return image(url);
+		});
+
+		Map<String, String> entries = bundle(8, chapter(3, false));
+
+		assertThat(entries).containsExactly(
+				Map.entry("001.jpg", "https://img.example/1.jpg"),
+				Map.entry("002.jpg", "https://img.example/2.jpg"),
+				Map.entry("003.jpg", "https://img.example/3.jpg"));
+	}
+
+	@Test
+	void takesAFailedPageFromItsOwnMirror() throws Exception {
+		when(imageDownloadService.downloadImage(anyString(), anyString())).thenAnswer(invocation -> {
+			String url = invocation.getArgument(0);
+			if (url.equals("https://img.example/2.jpg")) {
+				throw new IOException("Upstream returned HTTP 404");
+			}
+			return image(url);
+		});
+
+		Map<String, String> entries = bundle(8, chapter(3, true));
+
+		assertThat(entries).containsExactly(
+				Map.entry("001.jpg", "https://img.example/1.jpg"),
+				Map.entry("002.jpg", "https://mirror.example/2.jpg"),
+				Map.entry("003.jpg", "https://img.example/3.jpg"));
+	}
+
+	@Test
+	void listsPagesNeitherMirrorHasInMissingTxt() throws Exception {
+		when(imageDownloadService.downloadImage(anyString(), anyString())).thenAnswer(invocation -> {
+			String url = invocation.getArgument(0);
+			if (url.endsWith("/2.jpg")) {
+				throw new IOException("Upstream returned HTTP 404");
+			}
+			return image(url);
+		});
+
+		Map<String, String> entries = bundle(8, chapter(3, true));
+
+		assertThat(entries).containsOnlyKeys("001.jpg", "003.jpg", "MISSING.txt");
+		assertThat(new ArrayList<>(entries.keySet())).last().isEqualTo("MISSING.txt");
+		assertThat(entries.get("MISSING.txt")).isEqualTo("Pages that could not be downloaded: [2]\n");
+	}
+
+	@Test
+	void fetchesAtMostTheWindowAheadOfTheWrittenPage() throws Exception {
+		Set<String> started = ConcurrentHashMap.newKeySet();
+		CountDownLatch secondPageStarted = new CountDownLatch(1);
+		CountDownLatch firstPageReleased = new CountDownLatch(1);
+		when(imageDownloadService.downloadImage(anyString(), anyString())).thenAnswer(invocation -> {
+			String url = invocation.getArgument(0);
+			started.add(url);
+			if (url.endsWith("/1.jpg")) {
+				assertThat(firstPageReleased.await(5, TimeUnit.SECONDS)).isTrue();
+			}
+			if (url.endsWith("/2.jpg")) {
+				secondPageStarted.countDown();
+			}
+			return image(url);
+		});
+
+		ChapterResult chapter = chapter(6, false);
+		Thread bundling = Thread.ofVirtual().start(() -> {
+			try {
+				bundle(2, chapter);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		// While page 1 is outstanding only the window's two pages are being fetched
+		assertThat(secondPageStarted.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(100);
+		assertThat(started).containsExactlyInAnyOrder("https://img.example/1.jpg", "https://img.example/2.jpg");
+
+		firstPageReleased.countDown();
+		assertThat(bundling.join(Duration.ofSeconds(5))).isTrue();
+		assertThat(started).hasSize(6);
+	}
+
+	private Map<String, String> bundle(int window, ChapterResult chapter) throws IOException {
+		ChapterBundleService bundles = new ChapterBundleService(imageDownloadService,
+				new BundleProperties(window, Duration.ofSeconds(5)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bundles.writeBundle(chapter, out);
+
+		Map<String, String> entries = new LinkedHashMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+				entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		return entries;
+	}
+
+	private static ChapterResult chapter(int pages, boolean mirrored) {
+		List<ChapterPage> chapterPages = new ArrayList<>();
+		for (int page = 1; page <= pages; page++) {
+			chapterPages.add(new ChapterPage(page, "https://img.example/" + page + ".jpg",
+					mirrored ? "https://mirror.example/" + page + ".jpg" : null));
+		}
+		return new ChapterResult("Chapter", chapterPages, List.of(), "1");
+	}
+
+	// Each page's body is the URL it was fetched from
+	private static HotImage image(String url) {
+		return HotImage.onHeap(url.getBytes(StandardCharsets.UTF_8), "image/jpeg");
+	}
+}
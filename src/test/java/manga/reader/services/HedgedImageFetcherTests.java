@@ -0,0 +1,84 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.HedgingProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HedgedImageFetcherTests {
+
+	private static final String PRIMARY = "https://img-a.example/1.jpg";
+	private static final String SECONDARY = "https://img-b.example/1.jpg";
+
+	private final ImageMirrors mirrors = new ImageMirrors();
+	private final HedgedImageFetcher fetcher = new HedgedImageFetcher(
+			new HedgingProperties(true, 0.9, Duration.ofMillis(10), Duration.ofMillis(20), 2, Duration.ofMinutes(1)),
+			mirrors, new SimpleMeterRegistry());
+
+	HedgedImageFetcherTests() {
+		mirrors.register(PRIMARY, SECONDARY);
+	}
+
+	@AfterEach
+	void tearDown() {
+		fetcher.shutdown();
+	}
+
+	@Test
+	void slowPrimaryIsHedgedAndCancelled() throws Exception {
+		CountDownLatch primaryCancelled = new CountDownLatch(1);
+		CountDownLatch primaryDiscarded = new CountDownLatch(1);
+		String body = fetcher.fetch(PRIMARY, url -> {
+			if (url.equals(PRIMARY)) {
+				try {
+					Thread.sleep(10_000);
+				} catch (InterruptedException e) {
+					primaryCancelled.countDown();
+				}
+				return "primary";
+			}
+			return "secondary";
+		}, discarded -> {
+			if (discarded.equals("primary")) {
+				primaryDiscarded.countDown();
+			}
+		});
+
+		assertThat(body).isEqualTo("secondary");
+		assertThat(primaryCancelled.await(5, TimeUnit.SECONDS)).isTrue();
+		// The cancelled request still returned a result, which is handed back for release
+		assertThat(primaryDiscarded.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void failingHostIsSkippedOnceItsBreakerOpens() throws Exception {
+		List<String> requested = new CopyOnWriteArrayList<>();
+		HedgedImageFetcher.Fetch<String> fetch = url -> {
+			requested.add(url);
+			if (url.startsWith("https://img-a.example/")) {
+				throw new IOException("connection reset");
+			}
+			return "secondary";
+		};
+
+		assertThat(fetcher.fetch(PRIMARY, fetch)).isEqualTo("secondary");
+		assertThat(fetcher.fetch(PRIMARY, fetch)).isEqualTo("secondary");
+		requested.clear();
+		assertThat(fetcher.fetch(PRIMARY, fetch)).isEqualTo("secondary");
+		assertThat(requested).containsExactly(SECONDARY);
+
+		// Without a mirror there is nothing to skip to, so the host is still asked
+		assertThatThrownBy(() -> fetcher.fetch("https://img-a.example/2.jpg", fetch))
+				.isInstanceOf(IOException.class);
+	}
+}
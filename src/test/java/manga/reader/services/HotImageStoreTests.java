@@ -0,0 +1,158 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.HotImageProperties;
+import manga.reader.services.HotImageStore.HotImage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HotImageStoreTests {
+
+	// Four 16 byte chunks in two slabs
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final HotImageStore store = new HotImageStore(new HotImageProperties(true, DataSize.ofBytes(64),
+			DataSize.ofBytes(32), DataSize.ofBytes(16), DataSize.ofBytes(64)), meterRegistry);
+
+	@Test
+	void servesStoredImagesFromDirectBuffers() {
+		byte[] body = image(40, 'a');
+		store.put("a", body, "image/jpeg").close();
+
+		try (HotImage image = store.get("a")) {
+			assertThat(image.isOffHeap()).isTrue();
+			assertThat(image.size()).isEqualTo(40);
+			assertThat(image.contentType()).isEqualTo("image/jpeg");
+			assertThat(image.buffers()).hasSize(3).allMatch(ByteBuffer::isDirect);
+			assertThat(image.toByteArray()).isEqualTo(body);
+		}
+		assertThat(store.get("missing")).isNull();
+		assertThat(meterRegistry.get("images.hot.used").gauge().value()).isEqualTo(48);
+	}
+
+	@Test
+	void evictsImagesNotReadSinceTheClockLastPassed() {
+		store.put("a", image(32, 'a'), null).close();
+		store.put("b", image(32, 'b'), null).close();
+		store.get("a").close();
+
+		store.put("c", image(32, 'c'), null).close();
+
+		assertThat(store.get("b")).isNull();
+		try (HotImage a = store.get("a"); HotImage c = store.get("c")) {
+			assertThat(a.toByteArray()).isEqualTo(image(32, 'a'));
+			assertThat(c.toByteArray()).isEqualTo(image(32, 'c'));
+		}
+		assertThat(meterRegistry.get("images.hot.evictions").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void evictedImagesKeepTheirMemoryUntilTheLastReaderCloses() {
+		HotImage reading = store.put("a", image(64, 'a'), null);
+
+		try (HotImage b = store.put("b", image(32, 'b'), null)) {
+			// a left the index, but its chunks are still being sent, so b stays on the heap
+			assertThat(b.isOffHeap()).isFalse();
+			assertThat(b.toByteArray()).isEqualTo(image(32, 'b'));
+		}
+		assertThat(store.get("a")).isNull();
+		assertThat(reading.toByteArray()).isEqualTo(image(64, 'a'));
+
+		reading.close();
+		try (HotImage b = store.put("b", image(32, 'b'), null)) {
+			assertThat(b.isOffHeap()).isTrue();
+		}
+	}
+
+	@Test
+	void receivesImagesOfKnownLengthStraightIntoChunks() throws Exception {
+		try (HotImage image = store.receive("a", new ByteArrayInputStream(image(40, 'a')), 40, "image/png")) {
+			assertThat(image.isOffHeap()).isTrue();
+			assertThat(image.contentType()).isEqualTo("image/png");
+			assertThat(image.toByteArray()).isEqualTo(image(40, 'a'));
+		}
+		// Already stored, so the body is not read
+		InputStream unread = new ByteArrayInputStream(image(40, 'x'));
+		try (HotImage image = store.receive("a", unread, 40, null)) {
+			assertThat(image.toByteArray()).isEqualTo(image(40, 'a'));
+		}
+		assertThat(unread.available()).isEqualTo(40);
+		assertThat(store.receive("large", new ByteArrayInputStream(image(65, 'l')), 65, null)).isNull();
+	}
+
+	@Test
+	void freesTheChunksOfBodiesShorterOrLongerThanAnnounced() {
+		assertThatThrownBy(() -> store.receive("short", new ByteArrayInputStream(image(20, 's')), 40, null))
+				.isInstanceOf(EOFException.class);
+		assertThatThrownBy(() -> store.receive("long", new ByteArrayInputStream(image(41, 'l')), 40, null))
+				.isInstanceOf(IOException.class);
+
+		assertThat(store.get("short")).isNull();
+		assertThat(store.get("long")).isNull();
+		assertThat(meterRegistry.get("images.hot.used").gauge().value()).isZero();
+	}
+
+	@Test
+	void loadsFilesIntoChunksAndReadsThemBackAsAStream(@TempDir Path directory) throws Exception {
+		Path file = Files.write(directory.resolve("blob"), image(40, 'f'));
+
+		try (HotImage image = store.load("f", file, "image/webp")) {
+			assertThat(image.isOffHeap()).isTrue();
+			assertThat(image.contentType()).isEqualTo("image/webp");
+			assertThat(image.inputStream().readAllBytes()).isEqualTo(image(40, 'f'));
+		}
+		try (HotImage image = store.get("f")) {
+			InputStream in = image.inputStream();
+			assertThat(in.read()).isEqualTo('f');
+			assertThat(in.readNBytes(100)).hasSize(39);
+			assertThat(in.read()).isEqualTo(-1);
+		}
+		assertThat(store.load("large", Files.write(directory.resolve("large"), image(65, 'l')), null)).isNull();
+	}
+
+	@Test
+	void sharedHandlesKeepTheImageAfterTheOriginalIsClosed() {
+		HotImage shared;
+		try (HotImage image = store.put("a", image(64, 'a'), null)) {
+			shared = image.share();
+		}
+		store.put("b", image(32, 'b'), null).close();
+
+		// a was evicted to make room for b, its chunks are still held by the shared handle
+		assertThat(store.get("a")).isNull();
+		assertThat(shared.toByteArray()).isEqualTo(image(64, 'a'));
+		assertThat(meterRegistry.get("images.hot.used").gauge().value()).isEqualTo(64);
+		shared.close();
+		assertThat(meterRegistry.get("images.hot.used").gauge().value()).isZero();
+	}
+
+	@Test
+	void closedHandlesRefuseToHandOutTheirBytes() {
+		HotImage offHeap = store.put("a", image(40, 'a'), null);
+		HotImage onHeap = store.put("large", image(65, 'l'), null);
+		offHeap.close();
+		onHeap.close();
+
+		assertThatThrownBy(offHeap::buffers).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(offHeap::toByteArray).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(onHeap::buffers).isInstanceOf(IllegalStateException.class);
+	}
+
+	private static byte[] image(int size, char fill) {
+		byte[] body = new byte[size];
+		Arrays.fill(body, (byte) fill);
+		return body;
+	}
+}
@@ -0,0 +1,66 @@
+package manga.reader.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import manga.reader.config.ImageCacheProperties;
+import manga.reader.services.ImageDiskCache.CachedImage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageDiskCacheTests {
+
+	@TempDir
+	Path directory;
+
+	private ImageDiskCache cache;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		cache = new ImageDiskCache(new ImageCacheProperties(true, directory, DataSize.ofBytes(100),
+				Duration.ofDays(1), Duration.ofDays(7)), new ObjectMapper());
+		cache.load();
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedImagesOverTheCap() throws Exception {
+		store("a", 40, 'a');
+		store("b", 40, 'b');
+		cache.lookup("a");
+
+		store("c", 40, 'c');
+
+		assertThat(cache.lookup("b")).isNull();
+		assertThat(cache.lookup("a")).isNotNull();
+		assertThat(cache.lookup("c")).isNotNull();
+	}
+
+	@Test
+	void keepsAnImageLargerThanTheCapUntilTheNextStore() throws Exception {
+		store("a", 40, 'a');
+
+		CachedImage large = store("large", 150, 'l');
+
+		assertThat(Files.size(large.path())).isEqualTo(150);
+		assertThat(cache.lookup("large")).isEqualTo(large);
+		assertThat(cache.lookup("a")).isNull();
+
+		store("b", 40, 'b');
+		assertThat(cache.lookup("large")).isNull();
+		assertThat(large.path()).doesNotExist();
+	}
+
+	private CachedImage store(String url, int size, char fill) throws Exception {
+		byte[] body = new byte[size];
+		Arrays.fill(body, (byte) fill);
+		return cache.store(url, new ByteArrayInputStream(body), "image/jpeg", null, null);
+	}
+}
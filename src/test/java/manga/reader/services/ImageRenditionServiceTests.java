@@ -0,0 +1,78 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.RenditionProperties;
+import manga.reader.services.HotImageStore.HotImage;
+import manga.reader.services.ImageRenditionService.Format;
+import manga.reader.services.ImageRenditionService.Quality;
+import manga.reader.services.ImageRenditionService.Rendition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageRenditionServiceTests {
+
+	private static final String URL = "https://img.example/cover.png";
+
+	private final ImageDownloadService imageDownloadService = mock(ImageDownloadService.class);
+	private final ImageRenditionService renditions = new ImageRenditionService(
+			new RenditionProperties(true, List.of(150, 300), 1, 4, DataSize.ofMegabytes(8), Duration.ofDays(1), 50_000_000),
+			imageDownloadService, new SimpleMeterRegistry());
+
+	@AfterEach
+	void tearDown() {
+		renditions.shutdown();
+	}
+
+	@Test
+	void scalesDownToTheNextWidthStepAndCachesTheRendition() throws Exception {
+		when(imageDownloadService.downloadImage(URL, "ref")).thenReturn(HotImage.onHeap(png(1200, 800), "image/png"));
+
+		Rendition thumbnail = renditions.render(URL, "ref", 200, Format.JPEG, Quality.LOW);
+		assertThat(thumbnail.contentType()).isEqualTo("image/jpeg");
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumbnail.body()));
+		assertThat(decoded.getWidth()).isEqualTo(300);
+		assertThat(decoded.getHeight()).isEqualTo(200);
+
+		assertThat(renditions.render(URL, "ref", 250, Format.JPEG, Quality.LOW)).isSameAs(thumbnail);
+		verify(imageDownloadService, times(1)).downloadImage(URL, "ref");
+	}
+
+	@Test
+	void neverScalesUpAndFallsBackToJpegWithoutAWebpWriter() throws Exception {
+		when(imageDownloadService.downloadImage(URL, "ref")).thenReturn(HotImage.onHeap(png(100, 50), "image/png"));
+
+		Rendition rendition = renditions.render(URL, "ref", 150, Format.WEBP, null);
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(rendition.body()));
+		assertThat(decoded.getWidth()).isEqualTo(100);
+		if (!ImageIO.getImageWritersByFormatName("webp").hasNext()) {
+			assertThat(rendition.contentType()).isEqualTo("image/jpeg");
+		}
+	}
+
+	private static byte[] png(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,66 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.CrawlerProperties;
+import manga.reader.config.SearchIndexProperties;
+import manga.reader.config.SerializedScrapeResults;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.upstream.UpstreamClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LatestMangaCrawlerTests {
+
+	private final MangakakalotService mangakakalotService = mock(MangakakalotService.class);
+	private final UpstreamClient upstreamClient = mock(UpstreamClient.class);
+	private final LatestMangaCrawler crawler = new LatestMangaCrawler(
+			new CrawlerProperties(true, 3, Duration.ZERO, 0, Duration.ofMinutes(15)), mangakakalotService,
+			new MangaSearchIndex(new SearchIndexProperties(true, 0.6, 20), new SimpleMeterRegistry()),
+			upstreamClient, mock(SerializedScrapeResults.class), new SimpleMeterRegistry());
+
+	@Test
+	void stopsAtTheFirstUnchangedEntryAndMovesChangedEntriesToTheFront() throws Exception {
+		when(upstreamClient.hasSpareCapacity(any(), anyInt())).thenReturn(true);
+		when(mangakakalotService.latestManga(1)).thenReturn(page(manga("a", 10), manga("b", 5)));
+		when(mangakakalotService.latestManga(2)).thenReturn(page(manga("c", 7), manga("d", 3)));
+		when(mangakakalotService.latestManga(3)).thenReturn(page(manga("e", 1)));
+		crawler.crawlOnce();
+
+		assertThat(ids(crawler.page(2).orElseThrow())).containsExactly("c", "d");
+		assertThat(crawler.page(4)).isEmpty();
+
+		when(mangakakalotService.latestManga(1)).thenReturn(page(manga("c", 8), manga("a", 10)));
+		when(mangakakalotService.latestManga(2)).thenThrow(new AssertionError("crawl should have stopped"));
+		crawler.crawlOnce();
+
+		assertThat(ids(crawler.page(1).orElseThrow())).containsExactly("c", "a");
+		assertThat(ids(crawler.page(2).orElseThrow())).containsExactly("b", "d");
+		assertThat(ids(crawler.page(3).orElseThrow())).containsExactly("e");
+		assertThat(crawler.page(1).orElseThrow().results().getFirst().latestChapter()).isEqualTo("Chapter 8");
+		verify(mangakakalotService, never()).latestManga(4);
+	}
+
+	private static LatestMangaResult page(LatestMangaResult.Manga... manga) {
+		return new LatestMangaResult(Arrays.asList(manga), new PageInfo("1", "3", null));
+	}
+
+	private static LatestMangaResult.Manga manga(String id, int chapter) {
+		return new LatestMangaResult.Manga(id, id + ".jpg", "Manga " + id, "Chapter " + chapter, "chapter-" + chapter, "1", "");
+	}
+
+	private static List<String> ids(LatestMangaResult page) {
+		return page.results().stream().map(LatestMangaResult.Manga::mangaID).toList();
+	}
+}
@@ -0,0 +1,113 @@
+package manga.reader.services;
+
+import manga.reader.config.MetadataStoreProperties;
+import manga.reader.dto.MangaInfoResult;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MangaMetadataStoreTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void storedMangaSurviveReopening() throws Exception {
+		MangaInfoResult mangaInfo = onePiece();
+		MetadataStoreProperties properties = properties();
+
+		MangaMetadataStore store = new MangaMetadataStore(properties);
+		store.put("one-piece", mangaInfo);
+		store.close();
+
+		MangaMetadataStore reopened = new MangaMetadataStore(properties);
+		MangaMetadataStore.Stored stored = reopened.get("one-piece").orElseThrow();
+		assertThat(stored.mangaInfo()).isEqualTo(mangaInfo);
+		assertThat(reopened.isFresh(stored)).isTrue();
+		assertThat(reopened.get("naruto")).isEmpty();
+		reopened.close();
+
+		// Front-coded chapter rows take a few bytes each
+		assertThat(MangaInfoCodec.encode(mangaInfo, stored.storedAt())).hasSizeLessThan(mangaInfo.chapters().size() * 25);
+	}
+
+	@Test
+	void undecodableMangaAreDroppedAsMissing() throws Exception {
+		MetadataStoreProperties properties = properties();
+		byte[] encoded = MangaInfoCodec.encode(onePiece(), Instant.now());
+		try (MVStore raw = new MVStore.Builder().fileName(properties.file().toString()).compress().open()) {
+			MVMap<String, byte[]> map = raw.openMap("manga-info");
+			map.put("berserk", new byte[] { 99 });
+			map.put("naruto", Arrays.copyOf(encoded, encoded.length / 2));
+			map.put("one-piece", encoded);
+		}
+
+		MangaMetadataStore store = new MangaMetadataStore(properties);
+		List<String> visited = new ArrayList<>();
+		store.forEach((mangaId, stored) -> visited.add(mangaId));
+		assertThat(visited).containsExactly("one-piece");
+		assertThat(store.get("berserk")).isEmpty();
+
+		store.put("berserk", onePiece());
+		assertThat(store.get("berserk")).isPresent();
+		assertThat(store.get("naruto")).isEmpty();
+		store.close();
+	}
+
+	@Test
+	void decodesTheFirstEncoding() {
+		Instant storedAt = Instant.ofEpochMilli(1_700_000_000_000L);
+		MangaInfoResult.Rating rating = new MangaInfoResult.Rating(4.5, 5, 120);
+		ByteArrayOutputStream v1 = new ByteArrayOutputStream();
+		varlong(v1, 1);
+		varlong(v1, storedAt.toEpochMilli());
+		for (int i = 0; i < 7; i++) {
+			v1.write(0);
+		}
+		varlong(v1, 1);
+		varlong(v1, Double.doubleToRawLongBits(rating.score()));
+		varlong(v1, rating.outOf());
+		varlong(v1, rating.votes());
+		v1.write(0);
+		v1.write(0);
+
+		MangaMetadataStore.Stored stored = MangaInfoCodec.decode(v1.toByteArray());
+		assertThat(stored.storedAt()).isEqualTo(storedAt);
+		assertThat(stored.mangaInfo().rating()).isEqualTo(rating);
+		assertThat(stored.mangaInfo().chapters()).isEmpty();
+	}
+
+	private MetadataStoreProperties properties() {
+		return new MetadataStoreProperties(true, directory.resolve("metadata.mv.db"), Duration.ofMinutes(10),
+				Duration.ofDays(30));
+	}
+
+	private static MangaInfoResult onePiece() {
+		List<MangaInfoResult.Chapter> chapters = new ArrayList<>();
+		for (int i = 1100; i > 0; i--) {
+			chapters.add(new MangaInfoResult.Chapter("Chapter " + i, "one-piece/chapter-" + i, String.valueOf(i * 10), "Jun-01-2025"));
+		}
+		return new MangaInfoResult("https://a.example/cover.jpg", "One Piece", List.of("Oda Eiichiro"),
+				"Ongoing", "Jun-01-2025", "1,000", List.of("Action", "Comédie"), new MangaInfoResult.Rating(4.5, 5, 120),
+				"Pirates.", chapters);
+	}
+
+	private static void varlong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+}
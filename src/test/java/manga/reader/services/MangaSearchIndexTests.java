@@ -0,0 +1,99 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.SearchIndexProperties;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.dto.SearchResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MangaSearchIndexTests {
+
+	private final MangaSearchIndex index = new MangaSearchIndex(new SearchIndexProperties(true, 0.6, 20), new SimpleMeterRegistry());
+
+	@BeforeEach
+	void indexSomeManga() {
+		index.addLatest(new LatestMangaResult(List.of(
+				new LatestMangaResult.Manga("one-piece", "op.jpg", "One Piece", "Chapter 1100", "chapter-1100", "900,000", ""),
+				new LatestMangaResult.Manga("one-punch-man", "opm.jpg", "One-Punch Man", "Chapter 200", "chapter-200", "500,000", ""),
+				new LatestMangaResult.Manga("pokemon", "pk.jpg", "Pokémon Adventures", "Chapter 600", "chapter-600", "10,000", "")),
+				new PageInfo("1", "1", null)));
+		index.addMangaInfo("one-piece", new MangaInfoResult("op.jpg", "One Piece", List.of("Oda Eiichiro"), "Ongoing",
+				"Jun-01-2025", "900,000", List.of("Action"), null, "", List.of()));
+	}
+
+	@Test
+	void ranksExactMatchesFirstAndFillsKnownDetails() {
+		SearchResult result = index.search("one piece", 1).orElseThrow();
+
+		assertThat(result.results()).extracting(SearchResult.Manga::id).first().isEqualTo("one-piece");
+		assertThat(result.results().getFirst().author()).isEqualTo("Oda Eiichiro");
+		assertThat(index.search("oda", 1)).hasValueSatisfying(
+				found -> assertThat(found.results()).extracting(SearchResult.Manga::id).containsExactly("one-piece"));
+	}
+
+	@Test
+	void matchesPrefixesTyposAndAccents() {
+		assertThat(index.search("one pun", 1).orElseThrow().results().getFirst().id()).isEqualTo("one-punch-man");
+		assertThat(index.search("pokemon adventrues", 1).orElseThrow().results().getFirst().id()).isEqualTo("pokemon");
+	}
+
+	@Test
+	void leavesQueriesUpstreamHasMorePagesOfToUpstream() {
+		assertThat(index.search("one piece", 1).orElseThrow().pageInfo().totalPage()).isEqualTo("1");
+
+		index.addSearchResults(new SearchResult(List.of(new SearchResult.Manga("one-piece", "op.jpg", "One Piece",
+				"Oda Eiichiro", "", "900,000")), new PageInfo("1", "7", "One  Piece")));
+
+		assertThat(index.search("one piece", 1)).isEmpty();
+		assertThat(index.search("one piece", 2)).isEmpty();
+	}
+
+	@Test
+	void answersEveryPageOfAQueryFromTheSameSide() {
+		// Past the local matches a locally answered query gets empty pages rather than upstream ones
+		assertThat(index.search("one piece", 2)).hasValueSatisfying(page -> {
+			assertThat(page.results()).isEmpty();
+			assertThat(page.pageInfo()).isEqualTo(new PageInfo("2", "1", "one piece"));
+		});
+
+		// Page 1 went upstream; upstream's results are indexed, yet page 2 goes upstream too
+		assertThat(index.search("berserk", 1)).isEmpty();
+		index.addSearchResults(new SearchResult(List.of(new SearchResult.Manga("berserk", "b.jpg", "Berserk",
+				"Miura Kentaro", "", "1,000")), new PageInfo("1", "1", "berserk")));
+		assertThat(index.search("berserk", 2)).isEmpty();
+		assertThat(index.search("berserk", 1)).isPresent();
+	}
+
+	@Test
+	void followsMangaThatChangeTerms() {
+		for (int i = 0; i < 100; i++) {
+			index.addMangaInfo("manga-" + i, new MangaInfoResult("", "Gintama " + i, List.of(), "", "", "", List.of(),
+					null, "", List.of()));
+		}
+		for (int i = 0; i < 100; i += 2) {
+			index.addMangaInfo("manga-" + i, new MangaInfoResult("", "Bleach " + i, List.of(), "", "", "", List.of(),
+					null, "", List.of()));
+		}
+
+		List<SearchResult.Manga> found = new ArrayList<>();
+		for (int page = 1; page <= 3; page++) {
+			found.addAll(index.search("gintama", page).orElseThrow().results());
+		}
+		assertThat(found).extracting(SearchResult.Manga::id).hasSize(50)
+				.allSatisfy(id -> assertThat(Integer.parseInt(id.substring("manga-".length())) % 2).isEqualTo(1));
+		assertThat(index.search("bleach", 1).orElseThrow().pageInfo().totalPage()).isEqualTo("3");
+	}
+
+	@Test
+	void leavesUnknownQueriesToUpstream() {
+		assertThat(index.search("berserk", 1)).isEmpty();
+	}
+}
@@ -0,0 +1,173 @@
+package manga.reader.services;
+
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.dto.MangaInfoResult;
+import manga.reader.upstream.PartialDocumentParser;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Evaluator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MangakakalotParserTests {
+
+	private static final String BASE_URL = "https://www.mangakakalot.gg";
+
+	private static final String CHAPTER_PAGE = """
+			<html><body>
+			<h1>one-piece chapter 2</h1>
+			<div class="chapter-selection"><select>
+			<option>Chapter 1</option><option>Chapter 10</option><option>Chapter 2.5</option><option>Chapter 2</option>
+			</select></div>
+			<div class="container-chapter-reader">
+			<img src="https://a.example/1.jpg" onerror="this.onerror=null;this.src='https://b.example/1.jpg';">
+			<img src="https://a.example/2.jpg" onerror="this.onerror=null;this.src='https://b.example/2.jpg';">
+			<img src="https://a.example/1.jpg" onerror="this.onerror=null;this.src='https://b.example/1.jpg';">
+			</div>
+			<div class="chapter-selection"><select><option>Chapter 1</option><option>Chapter 10</option></select></div>
+			<div class="comments">""" + "<p>comment</p>".repeat(50) + """
+			</div></body></html>
+			""";
+
+	private static final String MANGA_INFO_PAGE = """
+			<html><head>
+			<script type="application/ld+json">{"ratingValue": 4.5, "ratingCount": 120}</script>
+			</head><body>
+			<div class="manga-info-top">
+			<div class="manga-info-pic"><img src="https://a.example/cover.jpg"></div>
+			<ul class="manga-info-text">
+			<li><h1>One Piece</h1></li>
+			<li>Status : Ongoing</li>
+			<li>Last updated : Jun-01-2025</li>
+			<li>Author(s) : <a href="/author/oda">Oda Eiichiro</a></li>
+			<li>View : 1,000</li>
+			<li>Genres : <a href="/genre/action">Action</a>, <a href="/genre/comedy">Comedy</a></li>
+			</ul></div>
+			<div id="contentBox">Pirates.</div>
+			<div class="chapter"><div class="manga-info-chapter"><div class="chapter-list">
+			<div class="row"><span><a href="https://www.mangakakalot.gg/manga/one-piece/chapter-2">Chapter 2</a></span><span>20</span><span>Jun-01-2025</span></div>
+			<div class="row"><span><a href="https://www.mangakakalot.gg/manga/one-piece/chapter-1">Chapter 1</a></span><span>10</span><span>May-01-2025</span></div>
+			</div></div></div>
+			<div class="footer">""" + "<p>footer</p>".repeat(50) + """
+			</div></body></html>
+			""";
+
+	private final MangakakalotParser parser = new MangakakalotParser(BASE_URL);
+
+	@Test
+	void parseChapterDeduplicatesImagesAndSortsChapters() {
+		ChapterResult chapter = parser.parseChapter(Jsoup.parse(CHAPTER_PAGE, BASE_URL), "one-piece", "2");
+
+		assertThat(chapter.title()).isEqualTo("one-piece chapter 2");
+		assertThat(chapter.primaryImgs()).containsExactly("https://a.example/1.jpg", "https://a.example/2.jpg");
+		assertThat(chapter.secondaryImgs()).containsExactly("https://b.example/1.jpg", "https://b.example/2.jpg");
+		assertThat(chapter.chapters()).containsExactly("10", "2.5", "2", "1");
+		assertThat(chapter.currentChapter()).isEqualTo("2");
+	}
+
+	@Test
+	void parseChapterPairsEachPageWithTheMirrorOfItsOwnImage() {
+		ChapterResult chapter = parser.parseChapter(Jsoup.parse("""
+				<html><body><div class="container-chapter-reader">
+				<img src="https://a.example/1.jpg">
+				<img src="https://a.example/2.jpg" onerror="this.src='https://b.example/2.jpg';">
+				<img src="https://a.example/2.jpg" onerror="this.src='https://b.example/2.jpg';">
+				<img src="https://a.example/3.jpg" onerror="this.src='https://b.example/3.jpg';">
+				</div></body></html>
+				""", BASE_URL), "one-piece", "2");
+
+		assertThat(chapter.pages()).containsExactly(
+				new ChapterPage(1, "https://a.example/1.jpg", null),
+				new ChapterPage(2, "https://a.example/2.jpg", "https://b.example/2.jpg"),
+				new ChapterPage(3, "https://a.example/3.jpg", "https://b.example/3.jpg"));
+		assertThat(chapter.secondaryImgs()).containsExactly("https://b.example/2.jpg", "https://b.example/3.jpg");
+	}
+
+	@Test
+	void parseMangaInfoReadsEveryChapterRow() {
+		MangaInfoResult mangaInfo = parser.parseMangaInfo(Jsoup.parse(MANGA_INFO_PAGE, BASE_URL));
+
+		assertThat(mangaInfo.title()).isEqualTo("One Piece");
+		assertThat(mangaInfo.authors()).containsExactly("Oda Eiichiro");
+		assertThat(mangaInfo.genres()).containsExactly("Action", "Comedy");
+		assertThat(mangaInfo.rating()).isEqualTo(new MangaInfoResult.Rating(4.5, 5, 120));
+		assertThat(mangaInfo.chapters()).containsExactly(
+				new MangaInfoResult.Chapter("Chapter 2", "one-piece/chapter-2", "20", "Jun-01-2025"),
+				new MangaInfoResult.Chapter("Chapter 1", "one-piece/chapter-1", "10", "May-01-2025"));
+	}
+
+	@Test
+	void partialParseGivesTheSameResultsAsAFullParse() throws IOException {
+		assertThat(parser.parseChapter(partialParse(CHAPTER_PAGE, MangakakalotParser.CHAPTER_SECTIONS), "one-piece", "2"))
+				.isEqualTo(parser.parseChapter(Jsoup.parse(CHAPTER_PAGE, BASE_URL), "one-piece", "2"));
+		assertThat(parser.parseMangaInfo(partialParse(MANGA_INFO_PAGE, MangakakalotParser.MANGA_INFO_SECTIONS)))
+				.isEqualTo(parser.parseMangaInfo(Jsoup.parse(MANGA_INFO_PAGE, BASE_URL)));
+
+		Document partial = partialParse(CHAPTER_PAGE, MangakakalotParser.CHAPTER_SECTIONS);
+		assertThat(partial.select(".comments p")).isEmpty();
+	}
+
+	@Test
+	void partialParseDoesNotStopAtAnUnrelatedSelect() throws IOException {
+		String html = """
+				<html><body>
+				<select name="language"><option>English</option></select>
+				<h1>one-piece chapter 2</h1>
+				<div class="container-chapter-reader">
+				<img src="https://a.example/1.jpg" onerror="this.src='https://b.example/1.jpg';">
+				</div>
+				<div class="chapter-selection"><select><option>Chapter 1</option><option>Chapter 2</option></select></div>
+				</body></html>
+				""";
+
+		ChapterResult chapter = parser.parseChapter(partialParse(html, MangakakalotParser.CHAPTER_SECTIONS), "one-piece", "2");
+
+		assertThat(chapter.primaryImgs()).containsExactly("https://a.example/1.jpg");
+		assertThat(chapter.chapters()).containsExactly("2", "1");
+	}
+
+	@Test
+	void chapterPagesAreHandedOverBeforeTheRestOfThePageIsRead() throws IOException {
+		StringBuilder html = new StringBuilder("<html><body><div class=\"container-chapter-reader\">");
+		for (int i = 1; i <= 200; i++) {
+			html.append("<img src=\"https://a.example/").append(i).append(".jpg\" onerror=\"this.src='https://b.example/")
+					.append(i).append(".jpg';\">");
+		}
+		html.append("</div></body></html>");
+		int[] read = {0};
+		Reader reader = new StringReader(html.toString()) {
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				int count = super.read(buffer, offset, Math.min(length, 256));
+				read[0] += Math.max(count, 0);
+				return count;
+			}
+		};
+
+		List<ChapterPage> pages = new ArrayList<>();
+		List<Integer> readAtPage = new ArrayList<>();
+		PartialDocumentParser.parse(reader, BASE_URL, MangakakalotParser.CHAPTER_SECTIONS, element -> {
+			ChapterPage page = parser.parseChapterPage(element, pages.size() + 1);
+			if (page != null) {
+				pages.add(page);
+				readAtPage.add(read[0]);
+			}
+		});
+
+		assertThat(pages).hasSize(200);
+		assertThat(pages.get(0)).isEqualTo(new ChapterPage(1, "https://a.example/1.jpg", "https://b.example/1.jpg"));
+		assertThat(readAtPage.get(0)).isLessThan(html.length() / 4);
+	}
+
+	private static Document partialParse(String html, List<Evaluator> sections) throws IOException {
+		return PartialDocumentParser.parse(new StringReader(html), BASE_URL, sections);
+	}
+}
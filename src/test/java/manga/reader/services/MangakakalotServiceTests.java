@@ -0,0 +1,125 @@
+package manga.reader.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manga.reader.config.ParserProperties;
+import manga.reader.dto.ChapterPage;
+import manga.reader.dto.ChapterResult;
+import manga.reader.services.MangakakalotService.ChapterStream;
+import manga.reader.upstream.UpstreamClient;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MangakakalotServiceTests {
+
+	private static final String CHAPTER = """
+			<div class="container-chapter-reader">
+			  <img src="https://img.example/1.jpg">
+			  <img src="https://img.example/2.jpg">
+			</div>
+			""";
+
+	private final UpstreamClient upstreamClient = mock(UpstreamClient.class);
+	private final MangakakalotService service = new MangakakalotService(upstreamClient, new ParserProperties(true),
+			new SimpleMeterRegistry());
+	// Holds the scrape after its first page until released
+	private final CountDownLatch secondPage = new CountDownLatch(1);
+
+	@AfterEach
+	void tearDown() {
+		service.shutdown();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void concurrentStreamsOfAChapterShareOneScrape() throws Exception {
+		scrapeInTwoSteps();
+
+		List<ChapterPage> first = new CopyOnWriteArrayList<>();
+		CountDownLatch firstPage = new CountDownLatch(1);
+		ChapterStream stream = service.streamChapter("one-piece/chapter-1");
+		CompletableFuture<ChapterResult> streamed = CompletableFuture.supplyAsync(() -> replay(stream, page -> {
+			first.add(page);
+			firstPage.countDown();
+		}));
+		assertThat(firstPage.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// Joins while the scrape is underway: gets the page parsed so far, then the rest
+		List<ChapterPage> second = new CopyOnWriteArrayList<>();
+		ChapterStream joined = service.streamChapter("one-piece/chapter-1");
+		assertThat(joined).isSameAs(stream);
+		CompletableFuture<ChapterResult> replayed = CompletableFuture.supplyAsync(() -> replay(joined, second::add));
+
+		secondPage.countDown();
+		ChapterResult chapter = streamed.get(5, TimeUnit.SECONDS);
+		assertThat(replayed.get(5, TimeUnit.SECONDS)).isSameAs(chapter);
+		assertThat(first).extracting(ChapterPage::primaryImg)
+				.containsExactly("https://img.example/1.jpg", "https://img.example/2.jpg");
+		assertThat(second).isEqualTo(first);
+		verify(upstreamClient, times(1)).fetchDocument(anyString(), anyList(), any(), any(Consumer.class));
+	}
+
+	@Test
+	void aSlowReaderDoesNotHoldTheScrape() throws Exception {
+		scrapeInTwoSteps();
+		secondPage.countDown();
+
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch clientWritten = new CountDownLatch(1);
+		ChapterStream stream = service.streamChapter("one-piece/chapter-1");
+		CompletableFuture<ChapterResult> streamed = CompletableFuture.supplyAsync(() -> replay(stream, page -> {
+			reading.countDown();
+			try {
+				clientWritten.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// The client is still writing its first page, the scrape is done regardless
+		assertThat(stream.result().get(5, TimeUnit.SECONDS).primaryImgs()).hasSize(2);
+		assertThat(streamed).isNotDone();
+		clientWritten.countDown();
+		assertThat(streamed.get(5, TimeUnit.SECONDS).primaryImgs()).hasSize(2);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void scrapeInTwoSteps() throws Exception {
+		when(upstreamClient.fetchDocument(anyString(), anyList(), any(), any(Consumer.class))).thenAnswer(invocation -> {
+			Consumer<Element> elements = invocation.getArgument(3);
+			Document document = Jsoup.parse(CHAPTER);
+			List<Element> images = document.select("img");
+			elements.accept(images.get(0));
+			assertThat(secondPage.await(5, TimeUnit.SECONDS)).isTrue();
+			elements.accept(images.get(1));
+			return document;
+		});
+	}
+
+	private static ChapterResult replay(ChapterStream stream, Consumer<ChapterPage> pages) {
+		try {
+			return stream.replay(pages);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
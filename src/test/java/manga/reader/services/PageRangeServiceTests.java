@@ -0,0 +1,61 @@
+package manga.reader.services;
+
+import manga.reader.config.PageRangeProperties;
+import manga.reader.dto.LatestMangaResult;
+import manga.reader.dto.PageInfo;
+import manga.reader.dto.PageRangeResult;
+import manga.reader.dto.PageRangeResult.PageStatus;
+import manga.reader.dto.PageRangeResult.Status;
+import manga.reader.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PageRangeServiceTests {
+
+	private final CachedMangakakalotService mangakakalotService = mock(CachedMangakakalotService.class);
+	private final PageRangeService pageRangeService = new PageRangeService(mangakakalotService,
+			new PageRangeProperties(4, Duration.ofMillis(200)));
+
+	@Test
+	void mergesLoadedPagesAndReportsSlowAndFailedOnes() throws Exception {
+		when(mangakakalotService.latestMangaAsync(1)).thenReturn(CompletableFuture.completedFuture(page(1, "a", "b")));
+		when(mangakakalotService.latestMangaAsync(2)).thenReturn(CompletableFuture.completedFuture(page(2, "b", "c")));
+		when(mangakakalotService.latestMangaAsync(3)).thenReturn(new CompletableFuture<>());
+		when(mangakakalotService.latestMangaAsync(4)).thenReturn(CompletableFuture.failedFuture(new IOException("reset")));
+
+		PageRangeResult<LatestMangaResult.Manga> result = pageRangeService.latestManga(1, 4);
+
+		assertThat(result.results()).extracting(LatestMangaResult.Manga::mangaID).containsExactly("a", "b", "c");
+		assertThat(result.totalPage()).isEqualTo("9");
+		assertThat(result.pages()).containsExactly(
+				new PageStatus(1, Status.OK, null),
+				new PageStatus(2, Status.OK, null),
+				new PageStatus(3, Status.TIMEOUT, null),
+				new PageStatus(4, Status.FAILED, "reset"));
+	}
+
+	@Test
+	void failsOnlyWhenNoPageLoadedAndBoundsTheRange() {
+		when(mangakakalotService.latestMangaAsync(1)).thenReturn(CompletableFuture.failedFuture(new IOException("reset")));
+		when(mangakakalotService.latestMangaAsync(2)).thenReturn(new CompletableFuture<>());
+
+		assertThatThrownBy(() -> pageRangeService.latestManga(1, 2)).isInstanceOf(IOException.class).hasMessage("reset");
+		assertThatThrownBy(() -> pageRangeService.latestManga(1, 5)).isInstanceOf(BadRequestException.class);
+		assertThatThrownBy(() -> pageRangeService.latestManga(3, 2)).isInstanceOf(BadRequestException.class);
+	}
+
+	private static LatestMangaResult page(int page, String... ids) {
+		return new LatestMangaResult(Arrays.stream(ids)
+				.map(id -> new LatestMangaResult.Manga(id, "", id, "", "", "", ""))
+				.toList(), new PageInfo(Integer.toString(page), "9", null));
+	}
+}
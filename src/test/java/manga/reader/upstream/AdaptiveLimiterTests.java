@@ -0,0 +1,57 @@
+package manga.reader.upstream;
+
+import manga.reader.config.BulkheadProperties;
+import manga.reader.exception.UpstreamOverloadedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveLimiterTests {
+
+	private final AdaptiveLimiter limiter = new AdaptiveLimiter("scrape",
+			new BulkheadProperties.Bulkhead(4, 2, 8, 0, Duration.ofMillis(10)), 0.5, Duration.ofSeconds(5), Duration.ofSeconds(3));
+
+	@Test
+	void rejectsBeyondTheLimitAndBacksOffOnOverload() throws Exception {
+		AdaptiveLimiter.Permit[] permits = new AdaptiveLimiter.Permit[4];
+		for (int i = 0; i < permits.length; i++) {
+			permits[i] = limiter.acquire();
+		}
+		assertThatThrownBy(limiter::acquire)
+				.isInstanceOfSatisfying(UpstreamOverloadedException.class,
+						e -> assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(3)));
+
+		permits[0].onResponse(503);
+		permits[0].release();
+		permits[0].release();
+		assertThat(limiter.snapshot()).isEqualTo(new AdaptiveLimiter.Snapshot(2, 3, 0, 1, 1));
+
+		for (int i = 1; i < permits.length; i++) {
+			permits[i].onResponse(200);
+			permits[i].release();
+		}
+		assertThat(limiter.snapshot().inFlight()).isZero();
+		assertThat(limiter.snapshot().limit()).isEqualTo(3);
+	}
+
+	@Test
+	void backsOffOncePerWindowOfRequests() throws Exception {
+		AdaptiveLimiter.Permit first = limiter.acquire();
+		AdaptiveLimiter.Permit second = limiter.acquire();
+
+		first.onFailure();
+		first.release();
+		second.onResponse(503);
+		second.release();
+		// Both were sent before the first decrease, so they count as one overload
+		assertThat(limiter.snapshot()).isEqualTo(new AdaptiveLimiter.Snapshot(2, 0, 0, 0, 1));
+
+		AdaptiveLimiter.Permit third = limiter.acquire();
+		third.onResponse(429);
+		third.release();
+		assertThat(limiter.snapshot()).isEqualTo(new AdaptiveLimiter.Snapshot(2, 0, 0, 0, 2));
+	}
+}
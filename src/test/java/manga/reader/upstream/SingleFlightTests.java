@@ -0,0 +1,122 @@
+package manga.reader.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTests {
+
+	private static final int JOINERS = 4;
+
+	private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+	private final AtomicInteger calls = new AtomicInteger();
+	private final CountDownLatch callStarted = new CountDownLatch(1);
+	private final CountDownLatch callReleased = new CountDownLatch(1);
+
+	@Test
+	void concurrentCallersShareOneCall() throws Exception {
+		List<CompletableFuture<String>> results = callConcurrently(() -> "page");
+
+		for (CompletableFuture<String> result : results) {
+			assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("page");
+		}
+		assertThat(calls).hasValue(1);
+		assertThat(singleFlight.inFlight()).isZero();
+
+		// Once completed the key is free: the next caller runs the call again
+		assertThat(singleFlight.execute("one-piece", () -> "again")).isEqualTo("again");
+	}
+
+	@Test
+	void joinedCallersGetTheSameFailure() throws Exception {
+		IOException failure = new IOException("Upstream returned HTTP 503");
+		List<CompletableFuture<String>> results = callConcurrently(() -> {
+			throw failure;
+		});
+
+		for (CompletableFuture<String> result : results) {
+			assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.cause().isSameAs(failure);
+		}
+		assertThat(calls).hasValue(1);
+		assertThat(singleFlight.inFlight()).isZero();
+
+		// A failure is not remembered either
+		assertThat(singleFlight.execute("one-piece", () -> "recovered")).isEqualTo("recovered");
+	}
+
+	/**
+	 * Runs {@code call} once for the key while {@link #JOINERS} more callers arrive, and releases it
+	 * once they all wait on it.
+	 *
+	 * @return the results of the first caller and the joiners
+	 */
+	private List<CompletableFuture<String>> callConcurrently(SingleFlight.Call<String> call) throws Exception {
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		List<Thread> joiners = new CopyOnWriteArrayList<>();
+		results.add(execute(executor, () -> {
+			calls.incrementAndGet();
+			callStarted.countDown();
+			awaitRelease();
+			return call.call();
+		}, null));
+		assertThat(callStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+		for (int i = 0; i < JOINERS; i++) {
+			results.add(execute(executor, () -> {
+				calls.incrementAndGet();
+				return "not shared";
+			}, joiners));
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (joiners.size() < JOINERS || !joiners.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+		assertThat(singleFlight.inFlight()).isEqualTo(1);
+
+		callReleased.countDown();
+		executor.shutdown();
+		return results;
+	}
+
+	private void awaitRelease() throws IOException {
+		try {
+			assertThat(callReleased.await(5, TimeUnit.SECONDS)).isTrue();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private CompletableFuture<String> execute(ExecutorService executor, SingleFlight.Call<String> call, List<Thread> threads) {
+		CompletableFuture<String> result = new CompletableFuture<>();
+		executor.execute(() -> {
+			if (threads != null) {
+				threads.add(Thread.currentThread());
+			}
+			try {
+				result.complete(singleFlight.execute("one-piece", call));
+			} catch (Exception e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+}
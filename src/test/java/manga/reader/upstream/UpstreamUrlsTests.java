@@ -0,0 +1,24 @@
+package manga.reader.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamUrlsTests {
+
+	@Test
+	void quotesCharactersThatAreNotLegalInAUri() {
+		assertThat(UpstreamUrls.toUri(" https://img.example:8443/chapter 1/page[2].jpg?size=a b#top "))
+				.isEqualTo(URI.create("https://img.example:8443/chapter%201/page%5B2%5D.jpg?size=a%20b#top"));
+		assertThat(UpstreamUrls.toUri("https://img.example/1.jpg")).isEqualTo(URI.create("https://img.example/1.jpg"));
+	}
+
+	@Test
+	void rejectsUrlsWithoutAScheme() {
+		assertThatThrownBy(() -> UpstreamUrls.toUri("img.example/page 1.jpg"))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}